@@ -0,0 +1,123 @@
+package gate.creole.morph;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * <p>
+ * Title: CaseFolding.java
+ * </p>
+ * <p>
+ * Description: Lower cases the words of a case insensitive morpher one
+ * character at a time, while they are read, rather than copying every word
+ * with {@link String#toLowerCase()}. Only ASCII words are folded this way:
+ * their lower case form has the same length and does not depend on the
+ * context of the characters, so folding them gives exactly what
+ * {@link String#toLowerCase()} gives, except in the Turkish, Azerbaijani and
+ * Lithuanian locales, where every word is left to
+ * {@link String#toLowerCase()}.
+ * </p>
+ */
+final class CaseFolding {
+
+	/** the word has no upper case character */
+	static final int LOWER_CASE = 0;
+
+	/** the word has upper case characters, all of them ASCII */
+	static final int FOLDABLE = 1;
+
+	/** the word must be lower cased by {@link String#toLowerCase()} */
+	static final int NOT_FOLDABLE = 2;
+
+	private CaseFolding() {
+	}
+
+	/**
+	 * @return {@link #LOWER_CASE}, {@link #FOLDABLE} or {@link #NOT_FOLDABLE}
+	 */
+	static int classify(String word) {
+		int kind = LOWER_CASE;
+		for (int i = 0; i < word.length(); i++) {
+			char ch = word.charAt(i);
+			if (ch >= 0x80) {
+				return NOT_FOLDABLE;
+			}
+			if (ch >= 'A' && ch <= 'Z') {
+				kind = FOLDABLE;
+			}
+		}
+		if (kind == FOLDABLE && hasSpecialCasing(Locale.getDefault())) {
+			return NOT_FOLDABLE;
+		}
+		return kind;
+	}
+
+	/**
+	 * @return true if {@link String#toLowerCase()} lower cases some ASCII
+	 *         characters differently in the locale
+	 */
+	private static boolean hasSpecialCasing(Locale locale) {
+		String language = locale.getLanguage();
+		return language.equals("tr") || language.equals("az")
+				|| language.equals("lt");
+	}
+
+	/**
+	 * @return the character in lower case if it is an ASCII upper case letter
+	 */
+	static char fold(char ch) {
+		return ch >= 'A' && ch <= 'Z' ? (char) (ch + ('a' - 'A')) : ch;
+	}
+
+	/**
+	 * @return the first <tt>length</tt> characters of the ASCII word in lower
+	 *         case followed by suffix, built in the buffer of the result
+	 */
+	static String lowerCase(String word, int length, String suffix,
+			MorphResult result) {
+		int suffixLength = suffix.length();
+		byte[] buffer = result.buffer(length + suffixLength);
+		for (int i = 0; i < length; i++) {
+			buffer[i] = (byte) fold(word.charAt(i));
+		}
+		for (int i = 0; i < suffixLength; i++) {
+			char ch = suffix.charAt(i);
+			if (ch >= 0x100) {
+				// the suffix of the rule does not fit in ISO-8859-1
+				return new String(buffer, 0, length, StandardCharsets.ISO_8859_1)
+						+ suffix;
+			}
+			buffer[length + i] = (byte) ch;
+		}
+		return new String(buffer, 0, length + suffixLength,
+				StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * @return a view of the ASCII word in lower case, for the regular
+	 *         expressions of the rules
+	 */
+	static CharSequence lowerCaseView(final String word) {
+		return new CharSequence() {
+			@Override
+			public int length() {
+				return word.length();
+			}
+
+			@Override
+			public char charAt(int index) {
+				return fold(word.charAt(index));
+			}
+
+			@Override
+			public CharSequence subSequence(int start, int end) {
+				return toString().substring(start, end);
+			}
+
+			@Override
+			public String toString() {
+				return word.toLowerCase(Locale.ROOT);
+			}
+		};
+	}
+}
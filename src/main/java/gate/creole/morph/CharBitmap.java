@@ -0,0 +1,222 @@
+package gate.creole.morph;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Title: CharBitmap.java
+ * </p>
+ * <p>
+ * Description: Immutable set of characters, such as the value of a
+ * {@link CharacterSet} or {@link CharacterRange} variable. The ASCII and
+ * Latin-1 characters, which make up nearly every word the rules are applied
+ * to, are tested with one bit of a 256 bit map held in four <tt>long</tt>s,
+ * and the rest of the BMP with a binary search of the sorted ranges of the
+ * set. The set is built from its ranges, so that a wide range costs no more
+ * than a narrow one.
+ * </p>
+ */
+public final class CharBitmap {
+
+	/** number of characters held in the bitmap */
+	private static final int BITMAP_SIZE = 256;
+
+	private final long[] bitmap = new long[BITMAP_SIZE / Long.SIZE];
+
+	/** first character of each range, sorted, disjoint and non adjacent */
+	private final char[] lows;
+
+	/** last character of each range */
+	private final char[] highs;
+
+	private final int size;
+
+	/**
+	 * @param from
+	 *            one end of each range
+	 * @param to
+	 *            the other end of each range
+	 * @param count
+	 *            number of ranges, which can overlap and come in any order
+	 */
+	private CharBitmap(char[] from, char[] to, int count) {
+		// the ranges above the bitmap, as low << 16 | high so that they sort
+		// by their low end
+		int[] upper = new int[count];
+		int upperCount = 0;
+		for (int i = 0; i < count; i++) {
+			int low = Math.min(from[i], to[i]);
+			int high = Math.max(from[i], to[i]);
+			for (; low <= high && low < BITMAP_SIZE; low++) {
+				bitmap[low >>> 6] |= 1L << low;
+			}
+			if (low <= high) {
+				upper[upperCount++] = low << 16 | high;
+			}
+		}
+		Arrays.sort(upper, 0, upperCount);
+
+		char[] lows = new char[BITMAP_SIZE / 2 + upperCount];
+		char[] highs = new char[lows.length];
+		int ranges = 0;
+		int size = 0;
+		for (int ch = 0; ch < BITMAP_SIZE; ch++) {
+			if (containsInBitmap(ch)) {
+				size++;
+				if (ranges > 0 && highs[ranges - 1] == ch - 1) {
+					highs[ranges - 1] = (char) ch;
+				} else {
+					lows[ranges] = (char) ch;
+					highs[ranges++] = (char) ch;
+				}
+			}
+		}
+		for (int i = 0; i < upperCount; i++) {
+			int low = upper[i] >>> 16;
+			int high = upper[i] & 0xFFFF;
+			if (ranges > 0 && low <= highs[ranges - 1] + 1) {
+				if (high > highs[ranges - 1]) {
+					size += high - highs[ranges - 1];
+					highs[ranges - 1] = (char) high;
+				}
+			} else {
+				size += high - low + 1;
+				lows[ranges] = (char) low;
+				highs[ranges++] = (char) high;
+			}
+		}
+		this.lows = Arrays.copyOf(lows, ranges);
+		this.highs = Arrays.copyOf(highs, ranges);
+		this.size = size;
+	}
+
+	/**
+	 * @return the set of the characters of the string
+	 */
+	public static CharBitmap of(CharSequence chars) {
+		char[] members = new char[chars.length()];
+		for (int i = 0; i < members.length; i++) {
+			members[i] = chars.charAt(i);
+		}
+		return new CharBitmap(members, members, members.length);
+	}
+
+	/**
+	 * @param from
+	 *            one end of each range
+	 * @param to
+	 *            the other end of each range, which is included
+	 * @param count
+	 *            number of ranges, which can overlap and come in any order
+	 * @return the set of the characters of the ranges
+	 */
+	public static CharBitmap ofRanges(char[] from, char[] to, int count) {
+		return new CharBitmap(from, to, count);
+	}
+
+	private boolean containsInBitmap(int ch) {
+		return (bitmap[ch >>> 6] & 1L << ch) != 0;
+	}
+
+	public boolean contains(char ch) {
+		if (ch < BITMAP_SIZE) {
+			return containsInBitmap(ch);
+		}
+		int low = 0;
+		int high = lows.length - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (ch < lows[middle]) {
+				high = middle - 1;
+			} else if (ch > highs[middle]) {
+				low = middle + 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if every character of the text is in the set
+	 */
+	public boolean containsAll(CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (!contains(text.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the first character of the set that is not less than from, or
+	 *         -1 if there is none, to go through the set in order
+	 */
+	public int nextMember(int from) {
+		for (int ch = from; ch < BITMAP_SIZE; ch = (ch | (Long.SIZE - 1)) + 1) {
+			long word = bitmap[ch >>> 6] & -1L << ch;
+			if (word != 0) {
+				return (ch & -Long.SIZE) + Long.numberOfTrailingZeros(word);
+			}
+		}
+		for (int i = 0; i < lows.length; i++) {
+			if (highs[i] >= from && highs[i] >= BITMAP_SIZE) {
+				return Math.max(Math.max(from, BITMAP_SIZE), lows[i]);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the number of characters in the set
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of ranges of the set
+	 */
+	public int getRangeCount() {
+		return lows.length;
+	}
+
+	/**
+	 * @return the first character of the range; the ranges are sorted,
+	 *         disjoint and non adjacent
+	 */
+	public char getLow(int range) {
+		return lows[range];
+	}
+
+	/**
+	 * @return the last character of the range
+	 */
+	public char getHigh(int range) {
+		return highs[range];
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof CharBitmap
+				&& Arrays.equals(lows, ((CharBitmap) obj).lows)
+				&& Arrays.equals(highs, ((CharBitmap) obj).highs);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(lows) + Arrays.hashCode(highs);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < lows.length; i++) {
+			sb.append(lows[i]);
+			if (highs[i] != lows[i])
+				sb.append('-').append(highs[i]);
+		}
+		return sb.append(']').toString();
+	}
+}
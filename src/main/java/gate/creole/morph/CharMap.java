@@ -7,54 +7,59 @@ public class CharMap {
 
 	private FSMState[] itemsObjs = null;
 
+	private int itemsCount = 0;
+
 	private char[] adjitemsKeys = null;
 
 	private FSMState[] adjitemsObjs = null;
 
+	private int adjitemsCount = 0;
+
 	
 	/**
-	 * resize the containers by one leavaing empty elemant at position 'index'
+	 * make room for one more element at position 'index', doubling the
+	 * containers when they are full
 	 */
 	private void resizeCHILD(int index) {
-		int newsz = itemsKeys.length + 1;
-		char[] tempKeys = new char[newsz];
-		FSMState[] tempObjs = new FSMState[newsz];
-
-		int i;
-		for (i = 0; i < index; i++) {
-			tempKeys[i] = itemsKeys[i];
-			tempObjs[i] = itemsObjs[i];
-		}
-		for (i = index + 1; i < newsz; i++) {
-			tempKeys[i] = itemsKeys[i - 1];
-			tempObjs[i] = itemsObjs[i - 1];
+		if (itemsCount == itemsKeys.length) {
+			itemsKeys = Arrays.copyOf(itemsKeys, itemsCount * 2);
+			itemsObjs = Arrays.copyOf(itemsObjs, itemsCount * 2);
 		}
-
-		itemsKeys = tempKeys;
-		itemsObjs = tempObjs;
+		System.arraycopy(itemsKeys, index, itemsKeys, index + 1, itemsCount - index);
+		System.arraycopy(itemsObjs, index, itemsObjs, index + 1, itemsCount - index);
+		itemsCount++;
 	} // resize
 
 	/**
-	 * resize the containers by one leavaing empty elemant at position 'index'
+	 * make room for one more element at position 'index', doubling the
+	 * containers when they are full
 	 */
 	private void resizeADJ(int index) {
-		int newsz = adjitemsKeys.length + 1;
-		char[] tempKeys = new char[newsz];
-		FSMState[] tempObjs = new FSMState[newsz];
+		if (adjitemsCount == adjitemsKeys.length) {
+			adjitemsKeys = Arrays.copyOf(adjitemsKeys, adjitemsCount * 2);
+			adjitemsObjs = Arrays.copyOf(adjitemsObjs, adjitemsCount * 2);
+		}
+		System.arraycopy(adjitemsKeys, index, adjitemsKeys, index + 1,
+				adjitemsCount - index);
+		System.arraycopy(adjitemsObjs, index, adjitemsObjs, index + 1,
+				adjitemsCount - index);
+		adjitemsCount++;
+	} // resize
 
-		int i;
-		for (i = 0; i < index; i++) {
-			tempKeys[i] = adjitemsKeys[i];
-			tempObjs[i] = adjitemsObjs[i];
+	/**
+	 * shrink the containers to their number of elements, called once by
+	 * {@link Interpret} when the FSM is built and before it is shared
+	 */
+	public void trimToSize() {
+		if (itemsKeys != null && itemsKeys.length != itemsCount) {
+			itemsKeys = Arrays.copyOf(itemsKeys, itemsCount);
+			itemsObjs = Arrays.copyOf(itemsObjs, itemsCount);
 		}
-		for (i = index + 1; i < newsz; i++) {
-			tempKeys[i] = adjitemsKeys[i - 1];
-			tempObjs[i] = adjitemsObjs[i - 1];
+		if (adjitemsKeys != null && adjitemsKeys.length != adjitemsCount) {
+			adjitemsKeys = Arrays.copyOf(adjitemsKeys, adjitemsCount);
+			adjitemsObjs = Arrays.copyOf(adjitemsObjs, adjitemsCount);
 		}
-
-		adjitemsKeys = tempKeys;
-		adjitemsObjs = tempObjs;
-	} // resize
+	}
 
 	/**
 	 * get the object from the map using the char key
@@ -63,14 +68,14 @@ public class CharMap {
 		if(type == FSMState.CHILD_STATE) {
 			if (itemsKeys == null)
 				return null;
-			int index = Arrays.binarySearch(itemsKeys, key);
+			int index = Arrays.binarySearch(itemsKeys, 0, itemsCount, key);
 			if (index < 0)
 				return null;
 			return itemsObjs[index];
 		} else {
 			if (adjitemsKeys == null)
 				return null;
-			int index = Arrays.binarySearch(adjitemsKeys, key);
+			int index = Arrays.binarySearch(adjitemsKeys, 0, adjitemsCount, key);
 			if (index < 0)
 				return null;
 			return adjitemsObjs[index];
@@ -87,9 +92,10 @@ public class CharMap {
 				itemsKeys[0] = key;
 				itemsObjs = new FSMState[1];
 				itemsObjs[0] = value;
+				itemsCount = 1;
 				return value;
 			}// if first time
-			int index = Arrays.binarySearch(itemsKeys, key);
+			int index = Arrays.binarySearch(itemsKeys, 0, itemsCount, key);
 			if (index < 0) {
 				index = ~index;
 				resizeCHILD(index);
@@ -103,9 +109,10 @@ public class CharMap {
 				adjitemsKeys[0] = key;
 				adjitemsObjs = new FSMState[1];
 				adjitemsObjs[0] = value;
+				adjitemsCount = 1;
 				return value;
 			}// if first time
-			int index = Arrays.binarySearch(adjitemsKeys, key);
+			int index = Arrays.binarySearch(adjitemsKeys, 0, adjitemsCount, key);
 			if (index < 0) {
 				index = ~index;
 				resizeADJ(index);
@@ -116,11 +123,23 @@ public class CharMap {
 		}
 	} // put
 
+	/**
+	 * @return the sorted keys of the CHILD transitions, null if there are
+	 *         none; a copy if the map was not trimmed, so that reading a map
+	 *         never changes it
+	 */
 	public char[] getItemsKeys() {
-		return itemsKeys;
+		if (itemsKeys == null || itemsKeys.length == itemsCount)
+			return itemsKeys;
+		return Arrays.copyOf(itemsKeys, itemsCount);
 	}
 
+	/**
+	 * @return the sorted keys of the ADJ transitions, null if there are none
+	 */
 	public char[] getAdjitemsKeys() {
-		return adjitemsKeys;
+		if (adjitemsKeys == null || adjitemsKeys.length == adjitemsCount)
+			return adjitemsKeys;
+		return Arrays.copyOf(adjitemsKeys, adjitemsCount);
 	}
 }
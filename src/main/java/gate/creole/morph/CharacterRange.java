@@ -1,7 +1,5 @@
 package gate.creole.morph;
 
-import java.util.Arrays;
-
 /**
  * <p>Title: </p>
  * <p>Description: </p>
@@ -13,7 +11,7 @@ import java.util.Arrays;
 
 public class CharacterRange extends Variable {
 
-  private char [] varChars;
+  private CharBitmap varChars;
 
   /**
    * Constructor
@@ -28,11 +26,7 @@ public class CharacterRange extends Variable {
    */
   @Override
   public boolean hasNext() {
-    if(pointer<varChars.length) {
-      return true;
-    } else {
-      return false;
-    }
+    return varChars.nextMember(pointer)>=0;
   }
 
   /**
@@ -41,9 +35,11 @@ public class CharacterRange extends Variable {
    */
   @Override
   public String next() {
-    if(pointer<varChars.length) {
-      pointer++;
-      return ""+varChars[pointer-1];
+    // the pointer is the character to start looking from
+    int next = varChars.nextMember(pointer);
+    if(next>=0) {
+      pointer = next+1;
+      return String.valueOf((char)next);
     } else {
       return null;
     }
@@ -63,27 +59,19 @@ public class CharacterRange extends Variable {
     // lets process the varValue
     // remove the [- and ] from the varValue
     varValue = varValue.substring(2,varValue.length()-1);
-    // we need to find the sets
-    String characters = "";
-    for(int i=0; i<varValue.length();i = i + 3) {
-      String set = varValue.substring(i,i+3);
-      char startWith = set.charAt(0);
-      char endWith = set.charAt(2);
-      if(startWith>endWith) {
-        char temp = startWith;
-        startWith = endWith;
-        endWith = temp;
-      }
-      for(int j=startWith;j<=endWith;j++) {
-        // if it is already present no need to add it
-        if(characters.indexOf((char)j)<0) {
-          characters = characters + (char)(j);
-        }
-      }
+    // we need to find the sets, every one of them is of the form a-z
+    if(varValue.length()%3!=0) {
+      return false;
+    }
+    int count = varValue.length()/3;
+    char[] startWith = new char[count];
+    char[] endWith = new char[count];
+    for(int i=0; i<count;i++) {
+      startWith[i] = varValue.charAt(i*3);
+      endWith[i] = varValue.charAt(i*3+2);
     }
-    // convert it into the character array and sort it
-    this.varChars = characters.toCharArray();
-    Arrays.sort(this.varChars);
+    // the ranges go straight into the bitmap, whatever their width
+    this.varChars = CharBitmap.ofRanges(startWith, endWith, count);
 
     // now we need to convert the varValue into the proper pattern
     // simply remove the second character (i.e. '-')
@@ -91,6 +79,13 @@ public class CharacterRange extends Variable {
     return true;
   }
 
+  /**
+   * @return the characters of the ranges
+   */
+  public CharBitmap getCharacters() {
+    return varChars;
+  }
+
   /**
    * A method that tells if the characters of the provided value are
    * from the character range only
@@ -101,12 +96,7 @@ public class CharacterRange extends Variable {
    */
   @Override
   public boolean contains(String value) {
-    for(int i=0;i<value.length();i++) {
-      if(Arrays.binarySearch(this.varChars,value.charAt(i))<0) {
-        return false;
-      }
-    }
-    return true;
+    return varChars.containsAll(value);
   }
 
 }
\ No newline at end of file
@@ -1,7 +1,5 @@
 package gate.creole.morph;
 
-import java.util.Arrays;
-
 /**
  * <p>Title: </p>
  * <p>Description: </p>
@@ -13,7 +11,7 @@ import java.util.Arrays;
 
 public class CharacterSet extends Variable {
 
-  private char [] varChars;
+  private CharBitmap varChars;
   /**
    * Constructor
    */
@@ -27,11 +25,7 @@ public class CharacterSet extends Variable {
    */
   @Override
   public boolean hasNext() {
-    if(pointer<varChars.length) {
-      return true;
-    } else {
-      return false;
-    }
+    return varChars.nextMember(pointer)>=0;
   }
 
   /**
@@ -40,9 +34,11 @@ public class CharacterSet extends Variable {
    */
   @Override
   public String next() {
-    if(pointer<varChars.length) {
-      pointer++;
-      return ""+varChars[pointer-1];
+    // the pointer is the character to start looking from
+    int next = varChars.nextMember(pointer);
+    if(next>=0) {
+      pointer = next+1;
+      return String.valueOf((char)next);
     } else {
       return null;
     }
@@ -59,14 +55,20 @@ public class CharacterSet extends Variable {
     this.varName = varName;
     this.varValue = varValue;
     // here the varValue would be in the following format
-    // [abcdefg] // we need to sort it, so that while searching it will be
-    // easier and faster to perform the binary search
+    // [abcdefg] // we keep the characters in a bitmap, so that searching
+    // them takes a single test
     varValue = varValue.substring(1,varValue.length()-1);
-    this.varChars = varValue.toCharArray();
-    Arrays.sort(this.varChars);
+    this.varChars = CharBitmap.of(varValue);
     return true;
   }
 
+  /**
+   * @return the characters of the set
+   */
+  public CharBitmap getCharacters() {
+    return varChars;
+  }
+
   /**
    * A method that tells if the characters of the provided value are
    * from the characterSet only
@@ -77,11 +79,6 @@ public class CharacterSet extends Variable {
    */
   @Override
   public boolean contains(String value) {
-    for(int i=0;i<value.length();i++) {
-      if(Arrays.binarySearch(this.varChars,value.charAt(i))<0) {
-        return false;
-      }
-    }
-    return true;
+    return varChars.containsAll(value);
   }
 }
\ No newline at end of file
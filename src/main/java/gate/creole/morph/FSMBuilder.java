@@ -0,0 +1,442 @@
+package gate.creole.morph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * Title: FSMBuilder.java
+ * </p>
+ * <p>
+ * Description: Builds the {@link FSMState} graph walked by {@link Interpret}
+ * straight from the {@link PatternNode} trees of the rules. Every node
+ * becomes a piece of the FSM without a start state of its own: the
+ * transitions entering it, the states at which it ends and whether it
+ * matches the empty word. A sequence links the end states of a node to the
+ * entering transitions of the next one and a repetition links its end states
+ * to its own entering transitions, so that the FSM needs no empty
+ * transitions. A word reaches a state holding the RHS of a rule if and only
+ * if the pattern of the rule matches the whole word.
+ * </p>
+ * <p>
+ * The rules share the states of the common prefixes of their top level
+ * sequences, the strings of an alternation being followed character by
+ * character, and the strings of an alternation nested in a rule share the
+ * states of their common prefixes. A shared state is only entered by the
+ * transitions that created it, so it is reached by the same words in every
+ * rule using it.
+ * </p>
+ */
+class FSMBuilder {
+
+	/**
+	 * Classes of at least this many characters, such as the values of the
+	 * variables, get a single class transition instead of one transition per
+	 * character.
+	 */
+	static final int MIN_CLASS_TRANSITION_SIZE = 2;
+
+	/** number of states created so far, used to number them */
+	private int stateCount = 0;
+
+	private final FSMState root = newState();
+
+	/**
+	 * The states reached at the end of the words matched by a prefix of the
+	 * top level sequences of the rules
+	 */
+	private static class Position {
+		final int id;
+
+		final List<FSMState> states;
+
+		Position(int id, List<FSMState> states) {
+			this.id = id;
+			this.states = states;
+		}
+	}
+
+	private final Position start = new Position(0,
+			Collections.singletonList(root));
+
+	private int positionCount = 1;
+
+	/**
+	 * A node of the top level sequence of a rule, read from a given position
+	 */
+	private static class Prefix {
+		final int from;
+
+		final PatternNode node;
+
+		Prefix(int from, PatternNode node) {
+			this.from = from;
+			this.node = node;
+		}
+
+		@Override
+		public int hashCode() {
+			return from * 31 + node.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Prefix))
+				return false;
+			Prefix other = (Prefix) obj;
+			return from == other.from && node.equals(other.node);
+		}
+	}
+
+	/** position reached by reading a node from another position */
+	private final Map<Prefix, Position> prefixes = new HashMap<Prefix, Position>();
+
+	/**
+	 * A transition entering a piece of the FSM, on a character or on any
+	 * character of a class
+	 */
+	private static class Edge {
+		final char ch;
+
+		/** null for a transition on ch */
+		final CharBitmap chars;
+
+		final FSMState target;
+
+		Edge(char ch, CharBitmap chars, FSMState target) {
+			this.ch = ch;
+			this.chars = chars;
+			this.target = target;
+		}
+	}
+
+	/**
+	 * The FSM of a node, without its start state
+	 */
+	private static class Piece {
+		final List<Edge> entries = new ArrayList<Edge>();
+
+		final List<FSMState> ends = new ArrayList<FSMState>();
+
+		boolean nullable;
+	}
+
+	/**
+	 * @return the initial state of the FSM of the rules added so far
+	 */
+	FSMState getInitialState() {
+		return root;
+	}
+
+	/**
+	 * @return the number of states, which are numbered from 0 in the order
+	 *         they were created, see {@link FSMState#getIndex()}
+	 */
+	int getStateCount() {
+		return stateCount;
+	}
+
+	/**
+	 * Adds the rule, whose RHS is added to the states at which its pattern
+	 * ends. The rules must be added in the order of their pattern indexes,
+	 * so that the RHS lists of the states stay sorted.
+	 */
+	void addRule(PatternNode lhs, RHS rhs) {
+		Position position = start;
+		for (PatternNode item : topLevelItems(lhs)) {
+			position = read(position, item);
+		}
+		for (FSMState st : position.states) {
+			st.addRHS(rhs);
+		}
+	}
+
+	/**
+	 * @return the position reached by reading the node from the given one
+	 */
+	private Position read(Position from, PatternNode node) {
+		Prefix prefix = new Prefix(from.id, node);
+		Position to = prefixes.get(prefix);
+		if (to != null) {
+			return to;
+		}
+		if (node instanceof PatternNode.Literal
+				&& ((PatternNode.Literal) node).getText().length() == 1) {
+			// most of the items are single characters, which need a single
+			// new state
+			char ch = ((PatternNode.Literal) node).getText().charAt(0);
+			FSMState st = newState();
+			for (FSMState fromState : from.states) {
+				put(fromState, ch, st);
+			}
+			to = new Position(positionCount++, Collections.singletonList(st));
+			prefixes.put(prefix, to);
+			return to;
+		}
+		Set<FSMState> states = newStateSet();
+		List<String> words = strings(node);
+		if (words != null) {
+			// the strings go through the positions of the single characters,
+			// which the other rules starting with the same strings share
+			for (String word : words) {
+				Position end = from;
+				for (int i = 0; i < word.length(); i++) {
+					end = read(end, new PatternNode.Literal(word.substring(i,
+							i + 1)));
+				}
+				states.addAll(end.states);
+			}
+		} else {
+			Piece piece = build(node);
+			link(from.states, piece.entries);
+			states.addAll(piece.ends);
+			if (piece.nullable) {
+				states.addAll(from.states);
+			}
+		}
+		to = new Position(positionCount++, new ArrayList<FSMState>(states));
+		prefixes.put(prefix, to);
+		return to;
+	}
+
+	/**
+	 * @return the strings matched by the node if it is an alternation of
+	 *         strings, null otherwise
+	 */
+	private static List<String> strings(PatternNode node) {
+		if (!(node instanceof PatternNode.Alternation)) {
+			return null;
+		}
+		List<String> words = new ArrayList<String>();
+		for (PatternNode alt : ((PatternNode.Alternation) node)
+				.getAlternatives()) {
+			if (!(alt instanceof PatternNode.Literal)) {
+				return null;
+			}
+			words.add(((PatternNode.Literal) alt).getText());
+		}
+		return words;
+	}
+
+	/**
+	 * @return the FSM of the node, made of new states only
+	 */
+	private Piece build(PatternNode node) {
+		if (node instanceof PatternNode.Literal) {
+			return literals(Collections.singletonList(((PatternNode.Literal) node)
+					.getText()));
+		} else if (node instanceof PatternNode.CharClass) {
+			PatternNode.CharClass cc = (PatternNode.CharClass) node;
+			Piece piece = new Piece();
+			FSMState st = newState();
+			addEntries(piece.entries, cc, st);
+			piece.ends.add(st);
+			return piece;
+		} else if (node instanceof PatternNode.Sequence) {
+			Piece piece = empty();
+			for (PatternNode item : ((PatternNode.Sequence) node).getItems()) {
+				piece = concatenate(piece, build(item));
+			}
+			return piece;
+		} else if (node instanceof PatternNode.Alternation) {
+			Piece piece = new Piece();
+			List<String> words = new ArrayList<String>();
+			for (PatternNode alt : ((PatternNode.Alternation) node)
+					.getAlternatives()) {
+				if (alt instanceof PatternNode.Literal) {
+					words.add(((PatternNode.Literal) alt).getText());
+				} else {
+					union(piece, build(alt));
+				}
+			}
+			if (!words.isEmpty()) {
+				union(piece, literals(words));
+			}
+			return piece;
+		} else {
+			PatternNode.Repeat repeat = (PatternNode.Repeat) node;
+			Piece piece = empty();
+			if (repeat.getMax() == PatternNode.UNBOUNDED) {
+				for (int i = 1; i < repeat.getMin(); i++) {
+					piece = concatenate(piece, build(repeat.getNode()));
+				}
+				Piece loop = build(repeat.getNode());
+				link(loop.ends, loop.entries);
+				loop.nullable |= repeat.getMin() == 0;
+				return concatenate(piece, loop);
+			}
+			for (int i = 0; i < repeat.getMax(); i++) {
+				Piece copy = build(repeat.getNode());
+				copy.nullable |= i >= repeat.getMin();
+				piece = concatenate(piece, copy);
+			}
+			return piece;
+		}
+	}
+
+	/**
+	 * @return the FSM of a set of strings, as a tree sharing the states of
+	 *         their common prefixes
+	 */
+	private Piece literals(List<String> words) {
+		Piece piece = new Piece();
+		Map<Character, FSMState> firsts = new LinkedHashMap<Character, FSMState>();
+		Set<FSMState> ends = newStateSet();
+		for (String word : words) {
+			if (word.length() == 0) {
+				piece.nullable = true;
+				continue;
+			}
+			FSMState st = firsts.get(word.charAt(0));
+			if (st == null) {
+				st = newState();
+				firsts.put(word.charAt(0), st);
+				piece.entries.add(new Edge(word.charAt(0), null, st));
+			}
+			for (int i = 1; i < word.length(); i++) {
+				FSMState next = st.next(word.charAt(i), FSMState.CHILD_STATE);
+				if (next == null) {
+					next = newState();
+					st.put(word.charAt(i), next, FSMState.CHILD_STATE);
+				}
+				st = next;
+			}
+			if (ends.add(st)) {
+				piece.ends.add(st);
+			}
+		}
+		return piece;
+	}
+
+	private static Piece empty() {
+		Piece piece = new Piece();
+		piece.nullable = true;
+		return piece;
+	}
+
+	/**
+	 * @return the FSM of the first piece followed by the second one
+	 */
+	private Piece concatenate(Piece first, Piece second) {
+		link(first.ends, second.entries);
+		Piece piece = new Piece();
+		piece.entries.addAll(first.entries);
+		if (first.nullable) {
+			piece.entries.addAll(second.entries);
+		}
+		piece.ends.addAll(second.ends);
+		if (second.nullable) {
+			piece.ends.addAll(first.ends);
+		}
+		piece.nullable = first.nullable && second.nullable;
+		return piece;
+	}
+
+	/**
+	 * Adds the entries and the ends of the other piece to the piece.
+	 */
+	private static void union(Piece piece, Piece other) {
+		piece.entries.addAll(other.entries);
+		piece.ends.addAll(other.ends);
+		piece.nullable |= other.nullable;
+	}
+
+	/**
+	 * Adds the transitions entering the state on the characters of the
+	 * class: a single class transition, or one per character for the
+	 * smallest classes.
+	 */
+	private static void addEntries(List<Edge> entries, PatternNode.CharClass cc,
+			FSMState target) {
+		int size = 0;
+		char[] lows = new char[cc.getRangeCount()];
+		char[] highs = new char[lows.length];
+		for (int i = 0; i < lows.length; i++) {
+			lows[i] = cc.getLow(i);
+			highs[i] = cc.getHigh(i);
+			size += highs[i] - lows[i] + 1;
+		}
+		if (size >= MIN_CLASS_TRANSITION_SIZE) {
+			CharBitmap chars = CharBitmap.ofRanges(lows, highs, lows.length);
+			entries.add(new Edge((char) 0, chars, target));
+			return;
+		}
+		for (int i = 0; i < cc.getRangeCount(); i++) {
+			for (int ch = cc.getLow(i); ch <= cc.getHigh(i); ch++) {
+				entries.add(new Edge((char) ch, null, target));
+			}
+		}
+	}
+
+	/**
+	 * Adds the transitions from every one of the states.
+	 */
+	private static void link(List<FSMState> froms, List<Edge> entries) {
+		for (FSMState from : froms) {
+			for (Edge edge : entries) {
+				if (edge.chars != null) {
+					from.putClass(edge.chars, edge.target, FSMState.CHILD_STATE);
+				} else {
+					put(from, edge.ch, edge.target);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds a transition on the character. The transition function holds one
+	 * state per character and type, so the further states reached on the
+	 * same character are added as classes of one character.
+	 */
+	private static void put(FSMState from, char ch, FSMState target) {
+		FSMState child = from.next(ch, FSMState.CHILD_STATE);
+		if (child == null) {
+			from.put(ch, target, FSMState.CHILD_STATE);
+		} else if (child != target) {
+			FSMState adjacent = from.next(ch, FSMState.ADJ_STATE);
+			if (adjacent == null) {
+				from.put(ch, target, FSMState.ADJ_STATE);
+			} else if (adjacent != target) {
+				from.putClass(CharBitmap.of(String.valueOf(ch)), target,
+						FSMState.CHILD_STATE);
+			}
+		}
+	}
+
+	private FSMState newState() {
+		return new FSMState(stateCount++);
+	}
+
+	private static Set<FSMState> newStateSet() {
+		return Collections
+				.newSetFromMap(new IdentityHashMap<FSMState, Boolean>());
+	}
+
+	/**
+	 * @return the nodes of the top level sequence of the pattern, with the
+	 *         literals split into single characters
+	 */
+	private static List<PatternNode> topLevelItems(PatternNode lhs) {
+		List<PatternNode> nodes = lhs instanceof PatternNode.Sequence ? ((PatternNode.Sequence) lhs)
+				.getItems()
+				: Collections.singletonList(lhs);
+		List<PatternNode> items = new ArrayList<PatternNode>();
+		for (PatternNode node : nodes) {
+			if (node instanceof PatternNode.Literal) {
+				String text = ((PatternNode.Literal) node).getText();
+				for (int i = 0; i < text.length(); i++) {
+					items.add(new PatternNode.Literal(text.substring(i, i + 1)));
+				}
+			} else {
+				items.add(node);
+			}
+		}
+		return items;
+	}
+}
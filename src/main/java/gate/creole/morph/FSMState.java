@@ -1,6 +1,8 @@
 package gate.creole.morph; 
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 public class FSMState {
@@ -9,6 +11,20 @@ public class FSMState {
 	public static final byte ADJ_STATE = 1;
 	private int index = 0;
 	private List<RHS> rhses = new ArrayList<RHS>();
+
+	/**
+	 * The transitions on any character of a class, such as the value of a
+	 * variable, tried after the exact characters of the transition function.
+	 * A state has a handful of them at most, so they are kept in parallel
+	 * arrays and scanned.
+	 */
+	private CharBitmap[] classChars = null;
+
+	private FSMState[] classTargets = null;
+
+	private byte[] classTypes = null;
+
+	private int classCount = 0;
 	
 	public FSMState(int index) {
 		this.index = index;
@@ -26,12 +42,88 @@ public class FSMState {
 		transitionFunction.put(chr, state, type);
 	}
 
+	/**
+	 * Adds a transition on any character of the class, unless there already
+	 * is the same one.
+	 */
+	public void putClass(CharBitmap chars, FSMState state, byte type) {
+		for (int i = 0; i < classCount; i++) {
+			if (classTargets[i] == state && classTypes[i] == type
+					&& classChars[i].equals(chars))
+				return;
+		}
+		if (classChars == null) {
+			classChars = new CharBitmap[1];
+			classTargets = new FSMState[1];
+			classTypes = new byte[1];
+		} else if (classCount == classChars.length) {
+			classChars = Arrays.copyOf(classChars, classCount * 2);
+			classTargets = Arrays.copyOf(classTargets, classCount * 2);
+			classTypes = Arrays.copyOf(classTypes, classCount * 2);
+		}
+		classChars[classCount] = chars;
+		classTargets[classCount] = state;
+		classTypes[classCount] = type;
+		classCount++;
+	}
+
+	/**
+	 * Adds the states reached on ch to the collection: those of the exact
+	 * character first, then those of the classes holding it.
+	 */
+	public void addNext(char ch, Collection<FSMState> states) {
+		FSMState chState = transitionFunction.get(ch, CHILD_STATE);
+		if (chState != null)
+			states.add(chState);
+		FSMState adState = transitionFunction.get(ch, ADJ_STATE);
+		if (adState != null)
+			states.add(adState);
+		for (int i = 0; i < classCount; i++) {
+			if (classChars[i].contains(ch))
+				states.add(classTargets[i]);
+		}
+	}
+
+	public int getClassCount() {
+		return classCount;
+	}
+
+	public CharBitmap getClassChars(int i) {
+		return classChars[i];
+	}
+
+	public FSMState getClassTarget(int i) {
+		return classTargets[i];
+	}
+
+	public byte getClassType(int i) {
+		return classTypes[i];
+	}
+
+	/**
+	 * Shrinks the transitions to their number, once the FSM is built.
+	 */
+	public void trimToSize() {
+		transitionFunction.trimToSize();
+		if (classChars != null && classChars.length != classCount) {
+			classChars = Arrays.copyOf(classChars, classCount);
+			classTargets = Arrays.copyOf(classTargets, classCount);
+			classTypes = Arrays.copyOf(classTypes, classCount);
+		}
+	}
+
 	public List<RHS> getRHSes() {
 		return rhses;
 	}
 
+	/**
+	 * Adds the RHS unless it was the last one added. The rules add their RHS
+	 * to all their final states before the next rule is read, so checking
+	 * the last RHS is enough to keep the list free of duplicates without
+	 * scanning the RHSes of the other rules.
+	 */
 	public void addRHS(RHS rhs) {
-		if(!rhses.contains(rhs))
+		if(rhses.isEmpty() || rhses.get(rhses.size() - 1) != rhs)
 			rhses.add(rhs);
 	}
 
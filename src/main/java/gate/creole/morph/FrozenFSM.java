@@ -0,0 +1,670 @@
+package gate.creole.morph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Title: FrozenFSM.java
+ * </p>
+ * <p>
+ * Description: The {@link FSMState} graph of the rules frozen into primitive
+ * tables shared by all the states, which {@link Interpret} walks as a
+ * non-deterministic automaton when the rules are not compiled into a
+ * {@link MorphAutomaton}. The states are numbered from
+ * {@link #INITIAL_STATE}. The transitions of a state are sorted, disjoint
+ * ranges of characters, each leading to a sorted list of states, so that the
+ * CHILD, ADJ and class transitions of an {@link FSMState} on a character are
+ * a single binary search. The transitions of state <tt>s</tt> are the
+ * entries from <tt>transitionOffsets[s]</tt> to
+ * <tt>transitionOffsets[s + 1]</tt> of the range tables, and the pattern
+ * indexes of its rules, in increasing order, the entries from
+ * <tt>ruleOffsets[s]</tt> to <tt>ruleOffsets[s + 1]</tt> of the rule table.
+ * Instances are immutable once built.
+ * </p>
+ */
+final class FrozenFSM {
+
+	static final int INITIAL_STATE = 0;
+
+	/** first transition of every state, followed by the number of transitions */
+	private final int[] transitionOffsets;
+
+	private final char[] transitionLows;
+
+	private final char[] transitionHighs;
+
+	/** first target of every transition, followed by the number of targets */
+	private final int[] targetOffsets;
+
+	private final int[] targets;
+
+	/** first rule of every state, followed by the number of rules */
+	private final int[] ruleOffsets;
+
+	private final int[] ruleTable;
+
+	private FrozenFSM(int[] transitionOffsets, char[] transitionLows,
+			char[] transitionHighs, int[] targetOffsets, int[] targets,
+			int[] ruleOffsets, int[] ruleTable) {
+		this.transitionOffsets = transitionOffsets;
+		this.transitionLows = transitionLows;
+		this.transitionHighs = transitionHighs;
+		this.targetOffsets = targetOffsets;
+		this.targets = targets;
+		this.ruleOffsets = ruleOffsets;
+		this.ruleTable = ruleTable;
+	}
+
+	/**
+	 * Freezes the FSM reachable from the given state, which becomes
+	 * {@link #INITIAL_STATE}. The states of the FSM must have distinct
+	 * indexes from 0 to <tt>stateCount - 1</tt>, as {@link FSMBuilder}
+	 * numbers them.
+	 */
+	static FrozenFSM freeze(FSMState initialState, int stateCount) {
+		int[] ids = new int[stateCount];
+		Arrays.fill(ids, -1);
+		List<FSMState> states = new ArrayList<FSMState>();
+		ids[initialState.getIndex()] = 0;
+		states.add(initialState);
+
+		int[] transitionOffsets = new int[1];
+		CharList lows = new CharList();
+		CharList highs = new CharList();
+		IntList targetOffsets = new IntList();
+		IntList targets = new IntList();
+		int[] ruleOffsets = new int[1];
+		IntList ruleTable = new IntList();
+
+		Edges edges = new Edges();
+		for (int s = 0; s < states.size(); s++) {
+			FSMState st = states.get(s);
+			if (s + 1 >= transitionOffsets.length) {
+				transitionOffsets = Arrays.copyOf(transitionOffsets,
+						transitionOffsets.length * 2 + 1);
+				ruleOffsets = Arrays.copyOf(ruleOffsets, ruleOffsets.length * 2 + 1);
+			}
+
+			edges.clear();
+			CharMap map = st.getTransitionFunction();
+			for (byte type : new byte[] { FSMState.CHILD_STATE,
+					FSMState.ADJ_STATE }) {
+				char[] keys = type == FSMState.CHILD_STATE ? map.getItemsKeys()
+						: map.getAdjitemsKeys();
+				for (int j = 0; keys != null && j < keys.length; j++) {
+					edges.add(keys[j], keys[j], id(map.get(keys[j], type), ids,
+							states));
+				}
+			}
+			for (int j = 0; j < st.getClassCount(); j++) {
+				CharBitmap chars = st.getClassChars(j);
+				int target = id(st.getClassTarget(j), ids, states);
+				for (int r = 0; r < chars.getRangeCount(); r++) {
+					edges.add(chars.getLow(r), chars.getHigh(r), target);
+				}
+			}
+			edges.addTransitions(lows, highs, targetOffsets, targets);
+			transitionOffsets[s + 1] = lows.size();
+
+			for (RHS rhs : st.getRHSes()) {
+				ruleTable.add(rhs.getPatternIndex());
+			}
+			Arrays.sort(ruleTable.values, ruleOffsets[s], ruleTable.size());
+			ruleOffsets[s + 1] = ruleTable.size();
+		}
+		targetOffsets.add(targets.size());
+
+		return new FrozenFSM(Arrays.copyOf(transitionOffsets, states.size() + 1),
+				lows.toArray(), highs.toArray(), targetOffsets.toArray(), targets
+						.toArray(), Arrays.copyOf(ruleOffsets, states.size() + 1),
+				ruleTable.toArray()).mergeEquivalentStates();
+	}
+
+	/**
+	 * Merges the states with the same rules whose transitions on every
+	 * character lead to the same states, such as the ends of the literals of
+	 * the rules sharing a suffix. Merged states are reached by the words of
+	 * both, from which the same words lead to the same rules, so a word still
+	 * reaches a rule if and only if its pattern matches the word. The states
+	 * are compared by their transitions to the merged states, the states
+	 * found last in the FSM first so that most of them are compared once
+	 * their targets are merged, until no more states are merged.
+	 */
+	private FrozenFSM mergeEquivalentStates() {
+		int stateCount = getStateCount();
+		// the merged states form trees standing for their roots, a state
+		// being added below the root of the first state it is equivalent to
+		int[] merged = new int[stateCount];
+		for (int s = 0; s < stateCount; s++) {
+			merged[s] = s;
+		}
+		// the states compared so far in an open addressing table, by the hash
+		// of their signature
+		int[] table = new int[Integer.highestOneBit(stateCount * 2 + 1) * 2];
+		int mask = table.length - 1;
+		int[] hashes = new int[stateCount];
+		IntList signature = new IntList();
+		IntList other = new IntList();
+		IntList reached = new IntList();
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			Arrays.fill(table, -1);
+			for (int s = stateCount - 1; s >= 0; s--) {
+				if (merged[s] != s) {
+					continue;
+				}
+				signature(s, merged, signature, reached);
+				int hash = 0;
+				for (int i = 0; i < signature.size(); i++) {
+					hash = 31 * hash + signature.get(i);
+				}
+				hash *= 0x9E3779B9;
+				hash ^= hash >>> 16;
+				hashes[s] = hash;
+				int slot = hash & mask;
+				for (; table[slot] >= 0; slot = (slot + 1) & mask) {
+					int root = table[slot];
+					if (hashes[root] == hash) {
+						signature(root, merged, other, reached);
+						if (signature.equals(other)) {
+							merged[s] = root;
+							changed = true;
+							break;
+						}
+					}
+				}
+				if (merged[s] == s) {
+					table[slot] = s;
+				}
+			}
+		}
+		for (int s = 0; s < stateCount; s++) {
+			merged[s] = root(merged, s);
+		}
+
+		// the merged states are numbered again from the initial state
+		int[] ids = new int[stateCount];
+		Arrays.fill(ids, -1);
+		IntList agenda = new IntList();
+		ids[merged[INITIAL_STATE]] = 0;
+		agenda.add(merged[INITIAL_STATE]);
+		int[] newTransitionOffsets = new int[stateCount + 1];
+		CharList lows = new CharList();
+		CharList highs = new CharList();
+		IntList newTargetOffsets = new IntList();
+		IntList newTargets = new IntList();
+		int[] newRuleOffsets = new int[stateCount + 1];
+		IntList newRuleTable = new IntList();
+		Edges edges = new Edges();
+		for (int n = 0; n < agenda.size(); n++) {
+			int s = agenda.get(n);
+			edges.clear();
+			for (int i = transitionOffsets[s]; i < transitionOffsets[s + 1]; i++) {
+				for (int t = targetOffsets[i]; t < targetOffsets[i + 1]; t++) {
+					int target = merged[targets[t]];
+					if (ids[target] < 0) {
+						ids[target] = agenda.size();
+						agenda.add(target);
+					}
+					edges.add(transitionLows[i], transitionHighs[i], ids[target]);
+				}
+			}
+			edges.addTransitions(lows, highs, newTargetOffsets, newTargets);
+			newTransitionOffsets[n + 1] = lows.size();
+			for (int pos = ruleOffsets[s]; pos < ruleOffsets[s + 1]; pos++) {
+				newRuleTable.add(ruleTable[pos]);
+			}
+			newRuleOffsets[n + 1] = newRuleTable.size();
+		}
+		newTargetOffsets.add(newTargets.size());
+		return new FrozenFSM(Arrays.copyOf(newTransitionOffsets,
+				agenda.size() + 1), lows.toArray(), highs.toArray(),
+				newTargetOffsets.toArray(), newTargets.toArray(), Arrays.copyOf(
+						newRuleOffsets, agenda.size() + 1), newRuleTable.toArray());
+	}
+
+	/**
+	 * Stores the rules of the state followed by its transitions, with the
+	 * roots of the merged states they lead to.
+	 */
+	private void signature(int state, int[] merged, IntList signature,
+			IntList reached) {
+		signature.clear();
+		signature.add(ruleOffsets[state + 1] - ruleOffsets[state]);
+		for (int pos = ruleOffsets[state]; pos < ruleOffsets[state + 1]; pos++) {
+			signature.add(ruleTable[pos]);
+		}
+		for (int i = transitionOffsets[state]; i < transitionOffsets[state + 1]; i++) {
+			reached.clear();
+			for (int t = targetOffsets[i]; t < targetOffsets[i + 1]; t++) {
+				reached.add(root(merged, targets[t]));
+			}
+			Arrays.sort(reached.values, 0, reached.size());
+			signature.add(transitionLows[i]);
+			signature.add(transitionHighs[i]);
+			for (int j = 0; j < reached.size(); j++) {
+				if (j == 0 || reached.get(j) != reached.get(j - 1)) {
+					signature.add(reached.get(j));
+				}
+			}
+			signature.add(-1);
+		}
+	}
+
+	/**
+	 * @return the root of the tree of the merged states holding the state,
+	 *         shortening the path to it on the way
+	 */
+	private static int root(int[] merged, int state) {
+		while (merged[state] != state) {
+			merged[state] = merged[merged[state]];
+			state = merged[state];
+		}
+		return state;
+	}
+
+	private static int id(FSMState st, int[] ids, List<FSMState> states) {
+		int id = ids[st.getIndex()];
+		if (id < 0) {
+			id = states.size();
+			ids[st.getIndex()] = id;
+			states.add(st);
+		}
+		return id;
+	}
+
+	int getStateCount() {
+		return transitionOffsets.length - 1;
+	}
+
+	int getTransitionCount() {
+		return transitionLows.length;
+	}
+
+	/**
+	 * @return the transition of the state on the character, or -1 if there
+	 *         is none
+	 */
+	int findTransition(int state, char ch) {
+		int low = transitionOffsets[state];
+		int high = transitionOffsets[state + 1] - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (ch > transitionHighs[mid]) {
+				low = mid + 1;
+			} else if (ch < transitionLows[mid]) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return position in the target table of the first state the transition
+	 *         leads to
+	 */
+	int getTargetStart(int transition) {
+		return targetOffsets[transition];
+	}
+
+	/**
+	 * @return position in the target table after the last state the
+	 *         transition leads to
+	 */
+	int getTargetEnd(int transition) {
+		return targetOffsets[transition + 1];
+	}
+
+	int getTarget(int position) {
+		return targets[position];
+	}
+
+	/**
+	 * @return position in the rule table of the first rule of the state
+	 */
+	int getRuleStart(int state) {
+		return ruleOffsets[state];
+	}
+
+	/**
+	 * @return position in the rule table after the last rule of the state
+	 */
+	int getRuleEnd(int state) {
+		return ruleOffsets[state + 1];
+	}
+
+	/**
+	 * @return the pattern index of the rule at the given position of the rule
+	 *         table
+	 */
+	int getRule(int position) {
+		return ruleTable[position];
+	}
+
+	/**
+	 * Reads the word from the initial state, in lower case if foldCase is
+	 * true, see {@link CaseFolding#fold(char)}, and stops as soon as no state
+	 * is reached.
+	 *
+	 * @param walk
+	 *            receives the states reached at the end of the word
+	 * @return the number of states reached
+	 */
+	int walk(String word, boolean foldCase, Walk walk) {
+		walk.reset(getStateCount());
+		walk.current[0] = INITIAL_STATE;
+		int count = 1;
+		for (int i = 0; i < word.length() && count > 0; i++) {
+			char ch = word.charAt(i);
+			if (foldCase) {
+				ch = CaseFolding.fold(ch);
+			}
+			int stamp = walk.nextStamp();
+			int reached = 0;
+			for (int j = 0; j < count; j++) {
+				int transition = findTransition(walk.current[j], ch);
+				if (transition < 0) {
+					continue;
+				}
+				for (int t = targetOffsets[transition]; t < targetOffsets[transition + 1]; t++) {
+					int target = targets[t];
+					if (walk.marks[target] != stamp) {
+						walk.marks[target] = stamp;
+						walk.next[reached++] = target;
+					}
+				}
+			}
+			int[] swap = walk.current;
+			walk.current = walk.next;
+			walk.next = swap;
+			count = reached;
+		}
+		walk.count = count;
+		return count;
+	}
+
+	/**
+	 * Stores in the walk the pattern indexes of the rules of the states it
+	 * reached, in increasing order and without duplicates, see
+	 * {@link Walk#getRule(int)}.
+	 *
+	 * @return the number of rules
+	 */
+	int collectRules(Walk walk) {
+		int size = 0;
+		for (int i = 0; i < walk.count; i++) {
+			int state = walk.current[i];
+			int end = ruleOffsets[state + 1];
+			if (size + end - ruleOffsets[state] > walk.rules.length) {
+				walk.rules = Arrays.copyOf(walk.rules, Math.max(
+						walk.rules.length * 2, size + end - ruleOffsets[state]));
+			}
+			for (int pos = ruleOffsets[state]; pos < end; pos++) {
+				walk.rules[size++] = ruleTable[pos];
+			}
+		}
+		Arrays.sort(walk.rules, 0, size);
+		int unique = 0;
+		for (int i = 0; i < size; i++) {
+			if (unique == 0 || walk.rules[i] != walk.rules[unique - 1]) {
+				walk.rules[unique++] = walk.rules[i];
+			}
+		}
+		return unique;
+	}
+
+	/**
+	 * Estimates the size of the tables on the heap.
+	 */
+	long estimateHeapSize() {
+		return HeapSize.object(7 * HeapSize.REFERENCE)
+				+ HeapSize.array(transitionOffsets.length, 4)
+				+ HeapSize.array(transitionLows.length, 2)
+				+ HeapSize.array(transitionHighs.length, 2)
+				+ HeapSize.array(targetOffsets.length, 4)
+				+ HeapSize.array(targets.length, 4)
+				+ HeapSize.array(ruleOffsets.length, 4)
+				+ HeapSize.array(ruleTable.length, 4);
+	}
+
+	/**
+	 * The sets of states of a walk of the automaton, reused from one word to
+	 * the next. The states of a set are marked with the stamp of the set
+	 * rather than cleared, so that starting a set costs nothing.
+	 */
+	static final class Walk {
+		int[] current = new int[0];
+
+		int[] next = new int[0];
+
+		/** stamp of the last set every state was added to */
+		int[] marks = new int[0];
+
+		private int stamp;
+
+		/** number of states reached by the last walk, see {@link #getState(int)} */
+		int count;
+
+		/** the rules of the states reached, see {@link #getRule(int)} */
+		int[] rules = new int[16];
+
+		void reset(int stateCount) {
+			if (marks.length < stateCount) {
+				current = new int[stateCount];
+				next = new int[stateCount];
+				marks = new int[stateCount];
+				stamp = 0;
+			}
+		}
+
+		int nextStamp() {
+			if (++stamp == 0) {
+				Arrays.fill(marks, 0);
+				stamp = 1;
+			}
+			return stamp;
+		}
+
+		/**
+		 * @return the i-th state reached by the last walk
+		 */
+		int getState(int i) {
+			return current[i];
+		}
+
+		/**
+		 * @return the pattern index of the i-th rule stored by
+		 *         {@link FrozenFSM#collectRules(Walk)}
+		 */
+		int getRule(int i) {
+			return rules[i];
+		}
+	}
+
+	/**
+	 * The transitions of a state while it is frozen: its edges are split at
+	 * every character where an edge starts or ends, so that each piece leads
+	 * to the same states for all its characters.
+	 */
+	private static final class Edges {
+		private int[] lows = new int[16];
+
+		private int[] highs = new int[16];
+
+		private int[] edgeTargets = new int[16];
+
+		private int size;
+
+		private final IntList bounds = new IntList();
+
+		private final IntList pieceTargets = new IntList();
+
+		void clear() {
+			size = 0;
+		}
+
+		void add(char low, char high, int target) {
+			if (size == lows.length) {
+				lows = Arrays.copyOf(lows, size * 2);
+				highs = Arrays.copyOf(highs, size * 2);
+				edgeTargets = Arrays.copyOf(edgeTargets, size * 2);
+			}
+			lows[size] = low;
+			highs[size] = high;
+			edgeTargets[size] = target;
+			size++;
+		}
+
+		/**
+		 * Adds the transitions of the edges, merging the adjacent pieces
+		 * leading to the same states.
+		 */
+		void addTransitions(CharList transitionLows, CharList transitionHighs,
+				IntList targetOffsets, IntList targets) {
+			bounds.clear();
+			for (int i = 0; i < size; i++) {
+				bounds.add(lows[i]);
+				bounds.add(highs[i] + 1);
+			}
+			Arrays.sort(bounds.values, 0, bounds.size());
+			int first = transitionLows.size();
+			int previous = -1;
+			for (int b = 0; b + 1 < bounds.size(); b++) {
+				int low = bounds.get(b);
+				int high = bounds.get(b + 1) - 1;
+				if (high < low) {
+					continue;
+				}
+				pieceTargets.clear();
+				for (int i = 0; i < size; i++) {
+					if (lows[i] <= low && low <= highs[i]) {
+						pieceTargets.add(edgeTargets[i]);
+					}
+				}
+				if (pieceTargets.size() == 0) {
+					previous = -1;
+					continue;
+				}
+				Arrays.sort(pieceTargets.values, 0, pieceTargets.size());
+				int unique = 1;
+				for (int i = 1; i < pieceTargets.size(); i++) {
+					if (pieceTargets.get(i) != pieceTargets.get(unique - 1)) {
+						pieceTargets.set(unique++, pieceTargets.get(i));
+					}
+				}
+				if (previous >= first && transitionHighs.get(previous) == low - 1
+						&& sameTargets(targets, targetOffsets.get(previous), unique)) {
+					transitionHighs.set(previous, (char) high);
+					continue;
+				}
+				previous = transitionLows.size();
+				transitionLows.add((char) low);
+				transitionHighs.add((char) high);
+				targetOffsets.add(targets.size());
+				for (int i = 0; i < unique; i++) {
+					targets.add(pieceTargets.get(i));
+				}
+			}
+		}
+
+		private boolean sameTargets(IntList targets, int start, int count) {
+			if (targets.size() - start != count) {
+				return false;
+			}
+			for (int i = 0; i < count; i++) {
+				if (targets.get(start + i) != pieceTargets.get(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Growable array of ints.
+	 */
+	private static final class IntList {
+		int[] values = new int[16];
+
+		private int size;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		void clear() {
+			size = 0;
+		}
+
+		int get(int index) {
+			return values[index];
+		}
+
+		void set(int index, int value) {
+			values[index] = value;
+		}
+
+		int size() {
+			return size;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+
+		/**
+		 * @return true if the other list holds the same values
+		 */
+		boolean equals(IntList other) {
+			if (size != other.size) {
+				return false;
+			}
+			for (int i = 0; i < size; i++) {
+				if (values[i] != other.values[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Growable array of chars.
+	 */
+	private static final class CharList {
+		private char[] values = new char[16];
+
+		private int size;
+
+		void add(char value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		char get(int index) {
+			return values[index];
+		}
+
+		void set(int index, char value) {
+			values[index] = value;
+		}
+
+		int size() {
+			return size;
+		}
+
+		char[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package gate.creole.morph;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rough heap size estimates for the data structures of the morpher, assuming
+ * a 64 bit JVM with compressed references and 8 byte object alignment.
+ */
+final class HeapSize {
+
+	static final int OBJECT_HEADER = 12;
+
+	static final int ARRAY_HEADER = 16;
+
+	static final int REFERENCE = 4;
+
+	private HeapSize() {
+	}
+
+	static long align(long size) {
+		return (size + 7) & ~7L;
+	}
+
+	static long object(int fieldBytes) {
+		return align(OBJECT_HEADER + fieldBytes);
+	}
+
+	static long array(int length, int elementSize) {
+		return align(ARRAY_HEADER + (long) length * elementSize);
+	}
+
+	/**
+	 * Estimates the size of the {@link FSMState} graph reachable from the
+	 * given state: the states, their {@link CharMap}s with the key and target
+	 * arrays, and their RHS lists. The RHS objects are not counted.
+	 */
+	static long fsmGraph(FSMState initialState) {
+		Map<FSMState, Boolean> seen = new IdentityHashMap<FSMState, Boolean>();
+		List<FSMState> agenda = new ArrayList<FSMState>();
+		agenda.add(initialState);
+		seen.put(initialState, Boolean.TRUE);
+		long size = 0;
+		for (int i = 0; i < agenda.size(); i++) {
+			FSMState st = agenda.get(i);
+			CharMap map = st.getTransitionFunction();
+			// FSMState: map, index, rhses, class arrays and count
+			size += object(5 * REFERENCE + 8);
+			// CharMap: four arrays
+			size += object(4 * REFERENCE);
+			// ArrayList and its backing array, at least the default capacity
+			size += object(REFERENCE + 8);
+			size += array(Math.max(10, st.getRHSes().size()), REFERENCE);
+
+			// class transitions: three arrays, and the bitmap with its ranges
+			int classes = st.getClassCount();
+			if (classes > 0) {
+				size += array(classes, REFERENCE) * 2 + array(classes, 1);
+			}
+			for (int j = 0; j < classes; j++) {
+				int ranges = st.getClassChars(j).getRangeCount();
+				size += object(3 * REFERENCE + 4) + array(4, 8) + 2
+						* array(ranges, 2);
+				FSMState next = st.getClassTarget(j);
+				if (seen.put(next, Boolean.TRUE) == null) {
+					agenda.add(next);
+				}
+			}
+
+			byte[] types = { FSMState.CHILD_STATE, FSMState.ADJ_STATE };
+			for (byte type : types) {
+				char[] keys = type == FSMState.CHILD_STATE ? map.getItemsKeys()
+						: map.getAdjitemsKeys();
+				if (keys == null)
+					continue;
+				size += array(keys.length, 2) + array(keys.length, REFERENCE);
+				for (int j = 0; j < keys.length; j++) {
+					FSMState next = map.get(keys[j], type);
+					if (seen.put(next, Boolean.TRUE) == null) {
+						agenda.add(next);
+					}
+				}
+			}
+		}
+		return size;
+	}
+}
@@ -2,17 +2,24 @@ package gate.creole.morph;
 
 import gate.creole.ResourceInstantiationException;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.regex.Pattern;
 
 /**
@@ -37,28 +44,77 @@ public class Interpret {
 	/** Boolean variables to keep track on which section is being read */
 	private boolean isDefineVarSession, isDefineRulesSession;
 
-	/** Instance of Storage class, which is used store all the variables details */
+	/**
+	 * Instance of Storage class, which is used store all the variables
+	 * details
+	 */
 	private Storage variables;
 
+	/** parses the rules into pattern trees */
+	private RuleParser ruleParser;
+
+	/** number of blank characters before the text of the current line */
+	private int lineIndent;
+
 	/** This variables keeps the record of available methods for the morphing */
 	private Method[] methods;
 
 	/** This variables holds the affix */
 	private String affix;
 
-	private Pattern vPat = Pattern.compile("((VB)[DGNPZ]?)|(MD)");
-
-	private Pattern nPat = Pattern.compile("(NN)(S)*");
+	List<Pattern> patterns = new ArrayList<Pattern>();
+	List<RHS> rules = new ArrayList<RHS>();
 
-	MorphFunctions morphInst;
+	/**
+	 * The pattern tree of every rule, or null if the rules were loaded from a
+	 * snapshot
+	 */
+	List<PatternNode> lhses;
 
-	List<Pattern> patterns = new ArrayList<Pattern>();
-	List<List<CharClass>> fsms = new ArrayList<List<CharClass>>();
+	/** the regular expressions of the rules while they are read */
+	private List<String> regExps;
 	
 	/**
-	 * The initial state of the FSM that backs this morpher
+	 * The FSM of the rules frozen into tables, walked when the rules are not
+	 * compiled, or null until {@link #getFrozenFSM()} builds it
 	 */
-	protected FSMState initialState;
+	private volatile FrozenFSM frozenFSM;
+
+	/**
+	 * The deterministic automaton compiled from the FSM, or null if the FSM
+	 * has not been compiled and should be walked as an NFA
+	 */
+	protected MorphAutomaton automaton;
+
+	/**
+	 * Size of the automaton before and after its minimization, or null if it
+	 * was not compiled by this instance or the one it was initialised from
+	 */
+	protected MinimizationStatistics minimizationStatistics;
+
+	/**
+	 * Cache of the results, shared with the instances initialised from this
+	 * one, or null if results are not cached
+	 */
+	protected LemmaCache lemmaCache;
+
+	/**
+	 * Known forms looked up before the rules, shared with the instances
+	 * initialised from this one, or null if there is none
+	 */
+	protected MorphLexicon lexicon;
+
+	/**
+	 * The lemmas of the lexicon with the affixes and rules these rules give
+	 * them, null if there is no lexicon or the rules are not loaded yet
+	 */
+	private MorphLexicon.Analyses lexiconAnalyses;
+
+	/**
+	 * Default upper bound on the number of states created when compiling the
+	 * FSM into a deterministic automaton
+	 */
+	public static final int DEFAULT_MAX_DFA_STATES = 200000;
 
 	//protected Set lastStates;
 
@@ -67,153 +123,809 @@ public class Interpret {
 	 */
 	public void init(URL ruleFileURL) throws ResourceInstantiationException {
 		variables = new Storage();
+		ruleParser = new RuleParser();
 		prepareListOfMorphMethods();
 		file = new ReadFile(ruleFileURL);
 		affix = null;
 		isDefineRulesSession = false;
 		isDefineVarSession = false;
-		morphInst = new MorphFunctions();
 
 		readProgram();
-		initialState = new FSMState(-1);
+		source = null;
+		regExps = new ArrayList<String>();
+		rules = new ArrayList<RHS>();
+		lhses = new ArrayList<PatternNode>();
+		automaton = null;
+		minimizationStatistics = null;
+		// the FSM is only built if the rules are not compiled
+		frozenFSM = null;
 		
 		//lastStates = new HashSet();
 		interpretProgram();
+		patterns = new LazyPatternList(regExps.toArray(new String[regExps
+				.size()]));
 
+		regExps = null;
 		variables = null;
+		ruleParser = null;
 		file = null;
 		//lastStates = null;
+		resolveLexicon();
 	}
 	
+	/** records the words analysed, null unless profiling */
+	private volatile MorphProfiler profiler;
+
+	/**
+	 * The Interpret whose rules this one shares, kept reachable for as long
+	 * as they are shared, see {@link InterpretRegistry}
+	 */
+	private Interpret source;
+
 	/**
 	 * Initialize this Interpret by copying pointers to the sharable state
 	 * of an existing Interpret instance.
 	 */
 	public void init(Interpret existingInterpret) {
     affix = null;
+    source = existingInterpret;
     isDefineRulesSession = false;
     isDefineVarSession = false;
-    morphInst = new MorphFunctions();
     
     // copy shared state
-    fsms = existingInterpret.fsms;
     patterns = existingInterpret.patterns;
-    initialState = existingInterpret.initialState;
+    rules = existingInterpret.rules;
+    lhses = existingInterpret.lhses;
+    // share the FSM if it is going to be walked
+    frozenFSM = existingInterpret.automaton == null ? existingInterpret
+        .getFrozenFSM() : existingInterpret.frozenFSM;
+    automaton = existingInterpret.automaton;
+    minimizationStatistics = existingInterpret.minimizationStatistics;
+    lemmaCache = existingInterpret.lemmaCache;
+    lexicon = existingInterpret.lexicon;
+    lexiconAnalyses = existingInterpret.lexiconAnalyses;
 	}
 
-	class CharClass {
-		char ch;
-		FSMState st;
-	}
-	
-	public void addState(char ch, FSMState fsm, int index) {
-		if(index == fsms.size()) {
-			fsms.add(new ArrayList<CharClass>());
+	/**
+	 * Initialises this Interpret from the snapshot of the given rule file
+	 * written by {@link #saveSnapshot(URL, File)}, if there is one next to
+	 * the rule file and it was built from the current content of the rule
+	 * file. The rules are then matched against the automaton of the snapshot
+	 * and the rule file is not parsed.
+	 * 
+	 * @return true if the snapshot was loaded, false if there is no up to date
+	 *         snapshot and {@link #init(URL)} should be used instead
+	 * @throws IOException
+	 *             if the rule file or the snapshot cannot be read
+	 */
+	public boolean initFromSnapshot(URL ruleFileURL) throws IOException {
+		affix = null;
+		isDefineRulesSession = false;
+		isDefineVarSession = false;
+		if (!MorphSnapshot.read(this, MorphSnapshot.sourceHash(ruleFileURL),
+				MorphSnapshot.snapshotURL(ruleFileURL))) {
+			return false;
 		}
-		
-		List<CharClass> fs = fsms.get(index);
-		for(int i=0;i<fs.size();i++) {
-			CharClass cc = fs.get(i);
-			if(cc.ch == ch)
-				return;
+		source = null;
+		// the rules are not parsed so there is no FSM to fall back on
+		frozenFSM = FrozenFSM.freeze(new FSMState(0), 1);
+		lhses = null;
+		minimizationStatistics = null;
+		resolveLexicon();
+		return true;
+	}
+
+	/**
+	 * Writes the snapshot of the rules, which must have been compiled with
+	 * {@link #determinize()}, so that they can later be loaded with
+	 * {@link #initFromSnapshot(URL)}.
+	 * 
+	 * @param ruleFileURL
+	 *            the rule file this Interpret was initialised from
+	 * @param snapshotFile
+	 *            the file to write, normally the rule file name followed by
+	 *            {@link MorphSnapshot#SUFFIX}
+	 */
+	public void saveSnapshot(URL ruleFileURL, File snapshotFile)
+			throws IOException {
+		byte[] sourceHash = MorphSnapshot.sourceHash(ruleFileURL);
+		OutputStream out = new FileOutputStream(snapshotFile);
+		try {
+			MorphSnapshot.write(this, sourceHash, out);
+		} finally {
+			out.close();
 		}
-		
-		CharClass cc = new CharClass();
-		cc.ch = ch;
-		cc.st = fsm;
-		fs.add(cc);
 	}
 
-	
-	public FSMState getState(char ch, int index) {
-		if(index >= fsms.size()) return null;
-		List<CharClass> fs = fsms.get(index);
-		for(int i=0;i<fs.size();i++) {
-			CharClass cc = fs.get(i);
-			if(cc.ch == ch)
-				return cc.st;
+	/**
+	 * Sets the number of words whose results are cached by
+	 * {@link #analyse(String, String, MorphResult)}. The cache is shared with
+	 * the instances later initialised from this one.
+	 * 
+	 * @param size
+	 *            maximum number of cached words, 0 to disable the cache
+	 */
+	public void setCacheSize(int size) {
+		lemmaCache = size > 0 ? new LemmaCache(size) : null;
+	}
+
+	/**
+	 * Sets the lexicon of the known forms, looked up before the rules, null
+	 * to only use the rules. The lexicon is shared with the instances later
+	 * initialised from this one. Its word lists are read if they have not
+	 * been yet, and the forms are given the affixes of the rules, see
+	 * {@link MorphLexicon#resolve(Interpret)}, as soon as the rules are loaded.
+	 *
+	 * @throws java.io.UncheckedIOException
+	 *             if the word lists cannot be read
+	 */
+	public void setLexicon(MorphLexicon lexicon) {
+		this.lexicon = lexicon;
+		lexiconAnalyses = null;
+		if (rules != null) {
+			resolveLexicon();
 		}
-		return null;
 	}
-	
-	private Set<FSMState> getStates(char ch, Set<FSMState> states) {
-		Set<FSMState> newStates = new HashSet<FSMState>();
-		Iterator<FSMState> iter = states.iterator();
-		while (iter.hasNext()) {
-			FSMState st = iter.next();
-			FSMState chState = st.next(ch, FSMState.CHILD_STATE);
-			if (chState != null) {
-				newStates.add(chState);
-			}
 
-			FSMState adState = st.next(ch, FSMState.ADJ_STATE);
-			if (adState != null) {
-				newStates.add(adState);
+	/**
+	 * Gives the forms of the lexicon, if there is one, the affixes of the
+	 * rules just loaded.
+	 */
+	private void resolveLexicon() {
+		lexiconAnalyses = lexicon == null ? null : lexicon.resolve(this);
+	}
+
+	/**
+	 * Applies the rules to the word for a valid category class, without
+	 * looking it up in the lexicon or the cache, for
+	 * {@link MorphLexicon#resolve(Interpret)}.
+	 *
+	 * @return true if a rule applies
+	 */
+	boolean applyRules(String word, int categoryClass, MorphResult result) {
+		result.set(word, null, -1);
+		return analyseClass(word, categoryClass, false, result);
+	}
+
+	/**
+	 * @return the lexicon looked up before the rules, null if there is none
+	 */
+	public MorphLexicon getLexicon() {
+		return lexicon;
+	}
+
+	/**
+	 * Sets the profiler recording the words analysed by this Interpret, null
+	 * to stop profiling. The profiler is not shared with the Interprets
+	 * initialised from this one.
+	 */
+	public void setProfiler(MorphProfiler profiler) {
+		this.profiler = profiler;
+	}
+
+	/**
+	 * @return the profiler recording the words analysed, null if there is
+	 *         none
+	 */
+	public MorphProfiler getProfiler() {
+		return profiler;
+	}
+
+	/**
+	 * @return the cache of the results, null if results are not cached
+	 */
+	public LemmaCache getLemmaCache() {
+		return lemmaCache;
+	}
+
+	/**
+	 * Compiles the patterns of the rules into an exact deterministic
+	 * automaton with {@link PatternCompiler}, so that
+	 * {@link #runMorpher(String, String)} costs one transition lookup per
+	 * character and the regular expressions of the rules are only run for the
+	 * rules the compiler could not handle. If the automaton would need more
+	 * than <tt>maxStates</tt> states, or if there are more rules than the
+	 * 32768 pattern indexes the tables can hold, the rules keep being matched
+	 * as they were, by the previous automaton if there is one and by walking
+	 * the FSM as an NFA otherwise. The compiled automaton is minimized, see
+	 * {@link #getMinimizationStatistics()}.
+	 * 
+	 * @param reverse
+	 *            true to compile the reversed patterns into an automaton that
+	 *            reads the words from right to left, which rejects most words
+	 *            after their last few characters since the rules are mostly
+	 *            about suffixes
+	 * @return true if the automaton was compiled, false otherwise
+	 */
+	public boolean determinize(int maxStates, boolean reverse) {
+		// the tables of the automaton store the pattern indexes as shorts
+		if (rules.size() > Short.MAX_VALUE + 1) {
+			return false;
+		}
+		PatternCompiler compiler = new PatternCompiler(reverse);
+		for (int i = 0; i < rules.size(); i++) {
+			if (lhses != null) {
+				compiler.addRule(lhses.get(i), rules.get(i));
+			} else {
+				compiler.addRule(patterns.get(i).pattern(), rules.get(i));
 			}
 		}
-		return newStates;
+		MorphAutomaton compiled = compiler.compile(maxStates);
+		if (compiled == null) {
+			return false;
+		}
+		automaton = compiled.minimize();
+		minimizationStatistics = new MinimizationStatistics(compiled, automaton);
+		return true;
 	}
 
-	private boolean validCategory(String category) {
-		if (category.equals("*")) {
-			return true;
-		} else if (vPat.matcher(category).matches()) {
-			return true;
-		} else if (nPat.matcher(category).matches()) {
+	public boolean determinize(int maxStates) {
+		return determinize(maxStates, false);
+	}
+
+	public boolean determinize() {
+		return determinize(DEFAULT_MAX_DFA_STATES);
+	}
+
+	/**
+	 * @return true if words are matched against the deterministic automaton
+	 */
+	public boolean isDeterministic() {
+		return automaton != null;
+	}
+
+	/**
+	 * @return the compiled automaton, or null if the FSM is walked as an NFA
+	 */
+	public MorphAutomaton getAutomaton() {
+		return automaton;
+	}
+
+	/**
+	 * @return the number of states and transitions of the automaton before
+	 *         and after its minimization, or null if the automaton was loaded
+	 *         from a snapshot or the rules were not compiled
+	 */
+	public MinimizationStatistics getMinimizationStatistics() {
+		return minimizationStatistics;
+	}
+
+	/** the category is not one the rules apply to */
+	static final int NO_CATEGORY = -1;
+
+	/** "*", every rule applies */
+	static final int ANY_CATEGORY = 0;
+
+	/** a verb POS tag, matching <tt>((VB)[DGNPZ]?)|(MD)</tt> */
+	static final int VERB_CATEGORY = 1;
+
+	/** a noun POS tag, matching <tt>(NN)(S)*</tt> */
+	static final int NOUN_CATEGORY = 2;
+
+	/**
+	 * @return true if the rule applies to words of the category class
+	 */
+	static boolean appliesTo(RHS rhs, int categoryClass) {
+		switch (categoryClass) {
+		case ANY_CATEGORY:
 			return true;
+		case VERB_CATEGORY:
+			return rhs.isVerb();
+		case NOUN_CATEGORY:
+			return rhs.isNoun();
+		default:
+			return false;
 		}
-		return false;
 	}
-	
+
 	/**
-	 * @return set of the Lookups associated with the parameter
+	 * Classifies the POS category without running a regular expression.
+	 */
+	static int categoryClass(String category) {
+		int length = category.length();
+		if (length == 1 && category.charAt(0) == '*') {
+			return ANY_CATEGORY;
+		}
+		if (length < 2) {
+			return NO_CATEGORY;
+		}
+		char first = category.charAt(0);
+		char second = category.charAt(1);
+		if (first == 'V' && second == 'B') {
+			if (length == 2
+					|| (length == 3 && "DGNPZ".indexOf(category.charAt(2)) >= 0)) {
+				return VERB_CATEGORY;
+			}
+			return NO_CATEGORY;
+		}
+		if (first == 'M' && second == 'D') {
+			return length == 2 ? VERB_CATEGORY : NO_CATEGORY;
+		}
+		if (first == 'N' && second == 'N') {
+			for (int i = 2; i < length; i++) {
+				if (category.charAt(i) != 'S') {
+					return NO_CATEGORY;
+				}
+			}
+			return NOUN_CATEGORY;
+		}
+		return NO_CATEGORY;
+	}
+
+	/**
+	 * Runs the morpher on the given word and returns the root. The affix and
+	 * the pattern index are then available from {@link #getAffix()} and
+	 * {@link #getPatternIndex()}. This method is not thread safe, use
+	 * {@link #analyse(String, String, MorphResult)} to share one instance
+	 * between threads.
+	 * 
+	 * @return the root of the word
 	 */
 	public String runMorpher(String word, String category) {
-		affix = null;
-		if(!validCategory(category)) {
-			return word;
+		if (analyse(word, category, lastResult)) {
+			patternIndex = lastResult.getPatternIndex();
 		}
-		
-		foundRule = false;
-		Set<FSMState> states = new HashSet<FSMState>();
-		states.add(initialState);
-		for (int i = 0; i < word.length(); i++) {
-			char ch = word.charAt(i);
-			states = getStates(ch, states);
-			if (states.isEmpty()) {
-				return word;
+		affix = lastResult.getAffix();
+		return lastResult.getRoot();
+	}
+
+	/**
+	 * Finds the root and the affix of the given word and stores them in the
+	 * given result. If no rule applies the root is the word itself and the
+	 * affix is null. Once the rules have been loaded this method does not
+	 * modify the state of this instance, so it can be called concurrently by
+	 * any number of threads as long as each of them uses its own result. No
+	 * objects are allocated besides the root string once the result has been
+	 * used for a first word, whether the rules are walked in their
+	 * {@link FrozenFSM}, whose sets of states are kept in the result, or in
+	 * an exact {@link MorphAutomaton}.
+	 * 
+	 * @param word
+	 *            the word to analyse
+	 * @param category
+	 *            its POS category, or "*" to try the rules of every category
+	 * @param result
+	 *            holder receiving the root, the affix and the pattern index
+	 * @return true if a rule was applied
+	 */
+	public boolean analyse(String word, String category, MorphResult result) {
+		return analyse(word, categoryClass(category), false, result);
+	}
+
+	/**
+	 * Same as {@link #analyse(String, String, MorphResult)} for the word in
+	 * lower case, as given by {@link String#toLowerCase()}. Unless results
+	 * are cached, ASCII words are not copied to lower case: their characters
+	 * are folded as they are read and the root is built from them directly,
+	 * so that a word only costs the root string. The cache is keyed by the
+	 * lower case words, which it then shares between the different cases of
+	 * a word.
+	 */
+	public boolean analyseIgnoringCase(String word, String category,
+			MorphResult result) {
+		return analyse(word, categoryClass(category), true, result);
+	}
+
+	/**
+	 * Analyses a batch of words, storing the root and the affix of
+	 * <tt>words[i]</tt> in <tt>roots[i]</tt> and <tt>affixes[i]</tt>, as
+	 * {@link #analyse(String, String, MorphResult)} or
+	 * {@link #analyseIgnoringCase(String, String, MorphResult)} would find
+	 * them, for every <tt>i</tt> from <tt>from</tt> to <tt>to</tt>
+	 * (exclusive). The same result holder is used for the whole batch and the
+	 * POS categories are only classified when they change from one word to
+	 * the next, so a batch costs little more than its roots. Like
+	 * {@link #analyse(String, String, MorphResult)}, this method can be
+	 * called concurrently by any number of threads on disjoint ranges.
+	 * 
+	 * @param categories
+	 *            the POS categories of the words, or null to try the rules of
+	 *            every category for every word
+	 * @param ignoreCase
+	 *            true to analyse the words in lower case
+	 * @param affixes
+	 *            receives the affixes, null if they are not needed
+	 * @return the number of words a rule was applied to
+	 */
+	public int analyse(String[] words, String[] categories, int from, int to,
+			boolean ignoreCase, String[] roots, String[] affixes) {
+		MorphResult result = new MorphResult();
+		String category = "*";
+		int categoryClass = ANY_CATEGORY;
+		int found = 0;
+		for (int i = from; i < to; i++) {
+			if (categories != null && !categories[i].equals(category)) {
+				category = categories[i];
+				categoryClass = categoryClass(category);
+			}
+			if (analyse(words[i], categoryClass, ignoreCase, result)) {
+				found++;
+			}
+			roots[i] = result.getRoot();
+			if (affixes != null) {
+				affixes[i] = result.getAffix();
 			}
+		}
+		return found;
+	}
+
+	/**
+	 * Analyses all the words of the arrays, see
+	 * {@link #analyse(String[], String[], int, int, boolean, String[], String[])}
+	 * 
+	 * @return the number of words a rule was applied to
+	 */
+	public int analyse(String[] words, String[] categories, String[] roots,
+			String[] affixes) {
+		return analyse(words, categories, 0, words.length, false, roots,
+				affixes);
+	}
 
+	/** the names of the category classes, for the lexicon analyses */
+	private static final String[] CATEGORY_CLASS_NAMES = { "*", "verb", "noun" };
+
+	/**
+	 * Finds the analyses of the word for every category at once: the ones
+	 * {@link #analyse(String, String, MorphResult)} gives with <tt>"*"</tt>,
+	 * with a verb and with a noun category, which are all the roots and
+	 * affixes the word can get whatever its POS category. The automaton is
+	 * walked once for all of them, and the rules reached are tried in the
+	 * order of their patterns until every category has its rule. The
+	 * analyses are added in this order of the categories, the same analysis
+	 * only once, and the analyses of the lexicon come before those of the
+	 * rules. The cache and the profiler are not used.
+	 *
+	 * @param ignoreCase
+	 *            true to analyse the word in lower case, as
+	 *            {@link #analyseIgnoringCase(String, String, MorphResult)}
+	 * @return the number of analyses added, 0 if no rule applies
+	 */
+	public int analyseAll(String word, boolean ignoreCase,
+			List<MorphAnalysis> analyses) {
+		return analyseAll(word, NO_CATEGORY, ignoreCase, analyses, null);
+	}
+
+	/**
+	 * Same as {@link #analyseAll(String, boolean, List)}, also storing in the
+	 * result the root and the affix the word gets for its own POS category,
+	 * as {@link #analyse(String, String, MorphResult)} or
+	 * {@link #analyseIgnoringCase(String, String, MorphResult)} would find
+	 * them. They are taken from the analysis of the category class, so that
+	 * the word is only looked up once. The cache is not used but the word is
+	 * recorded in the profiler if there is one.
+	 * 
+	 * @return true if a rule was applied for the category
+	 */
+	public boolean analyseAll(String word, String category,
+			boolean ignoreCase, List<MorphAnalysis> analyses, MorphResult result) {
+		int categoryClass = categoryClass(category);
+		MorphProfiler profiler = this.profiler;
+		if (profiler == null) {
+			analyseAll(word, categoryClass, ignoreCase, analyses, result);
+			return result.isFound();
 		}
+		result.traversalEnd = 0;
+		long start = System.nanoTime();
+		analyseAll(word, categoryClass, ignoreCase, analyses, result);
+		profiler.recordWord(start, result.traversalEnd, System.nanoTime(),
+				result.candidates, result.getPatternIndex());
+		return result.isFound();
+	}
 
-		// we have all states here
-		// we obtain all RHSes
-		SortedSet<RHS> rhses = new TreeSet<RHS>(new Comparator<RHS>() {
-      @Override
-      public int compare(RHS r1, RHS r2) {
-        return r1.getPatternIndex() - r2.getPatternIndex();
-      }
-    });
-    
-		Iterator<FSMState> iter = states.iterator();
-		while (iter.hasNext()) {
-			FSMState st = iter.next();
-			rhses.addAll(st.getRHSes());
+	/**
+	 * Does the actual work of {@link #analyseAll(String, boolean, List)},
+	 * storing the analysis of the category class in the result unless it is
+	 * null.
+	 */
+	private int analyseAll(String word, int categoryClass, boolean ignoreCase,
+			List<MorphAnalysis> analyses, MorphResult own) {
+		boolean foldCase = false;
+		if (ignoreCase) {
+			int kind = CaseFolding.classify(word);
+			if (kind == CaseFolding.FOLDABLE) {
+				foldCase = true;
+			} else if (kind != CaseFolding.LOWER_CASE) {
+				word = word.toLowerCase();
+			}
+		}
+
+		MorphResult[] found = new MorphResult[CATEGORY_CLASS_NAMES.length];
+		String[] categories = new String[found.length];
+		int missing = found.length;
+		MorphLexicon.Analyses lexicon = lexiconAnalyses;
+		MorphResult result = new MorphResult();
+		for (int c = 0; c < found.length && lexicon != null; c++) {
+			if (lexicon.find(word, c, foldCase, result)) {
+				found[c] = result;
+				categories[c] = CATEGORY_CLASS_NAMES[c];
+				missing--;
+				result = new MorphResult();
+			}
+		}
+
+		int tried = 0;
+		if (missing > 0) {
+			SortedMap<Integer, Boolean> candidates = candidateRules(word,
+					foldCase);
+			if (own != null && profiler != null) {
+				own.traversalEnd = System.nanoTime();
+			}
+			for (Map.Entry<Integer, Boolean> candidate : candidates.entrySet()) {
+				RHS rhs = rules.get(candidate.getKey());
+				tried++;
+				if (!applyRule(word, ANY_CATEGORY, rhs, candidate.getValue(),
+						foldCase, result)) {
+					continue;
+				}
+				boolean used = false;
+				for (int c = 0; c < found.length; c++) {
+					if (found[c] == null && appliesTo(rhs, c)) {
+						found[c] = result;
+						categories[c] = rhs.isVerb() ? rhs.isNoun() ? "*" : "verb"
+								: "noun";
+						missing--;
+						used = true;
+					}
+				}
+				if (missing == 0) {
+					break;
+				}
+				if (used) {
+					result = new MorphResult();
+				}
+			}
+		}
+
+		int added = 0;
+		for (int c = 0; c < found.length; c++) {
+			if (found[c] == null) {
+				continue;
+			}
+			boolean seen = false;
+			for (int d = 0; d < c && !seen; d++) {
+				seen = found[d] != null
+						&& found[d].getPatternIndex() == found[c].getPatternIndex()
+						&& found[d].isFromLexicon() == found[c].isFromLexicon()
+						&& found[d].getRoot().equals(found[c].getRoot())
+						&& String.valueOf(found[d].getAffix()).equals(
+								String.valueOf(found[c].getAffix()));
+			}
+			if (!seen) {
+				analyses.add(new MorphAnalysis(found[c].getRoot(), found[c]
+						.getAffix(), categories[c], found[c].getPatternIndex(),
+						found[c].isFromLexicon()));
+				added++;
+			}
+		}
+
+		if (own != null) {
+			own.candidates = tried;
+			if (categoryClass != NO_CATEGORY && found[categoryClass] != null) {
+				own.set(found[categoryClass].getRoot(), found[categoryClass]
+						.getAffix(), found[categoryClass].getPatternIndex(),
+						found[categoryClass].isFromLexicon());
+			} else {
+				own.set(foldCase ? CaseFolding.lowerCase(word, word.length(), "",
+						own) : word, null, -1);
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * @return the pattern indexes of the rules that may apply to the word for
+	 *         any category, in order, reached with a single walk of the
+	 *         automaton, each with true if its pattern must be checked
+	 */
+	private SortedMap<Integer, Boolean> candidateRules(String word,
+			boolean foldCase) {
+		SortedMap<Integer, Boolean> candidates = new TreeMap<Integer, Boolean>();
+		if (automaton != null) {
+			MorphAutomaton dfa = automaton;
+			int inexactCount = dfa.getInexactRuleCount(ANY_CATEGORY);
+			for (int i = 0; i < inexactCount; i++) {
+				candidates.put((int) dfa.getInexactRule(ANY_CATEGORY, i),
+						Boolean.TRUE);
+			}
+			// the literal table already holds the rule of every category
+			LiteralTable literals = dfa.getLiterals();
+			int slot = foldCase ? literals.findIgnoringCase(word) : literals
+					.find(word);
+			if (slot >= 0) {
+				for (int c = 0; c < LiteralTable.CATEGORY_CLASSES; c++) {
+					short rule = literals.getRule(slot, c);
+					if (rule != LiteralTable.NO_RULE) {
+						candidates.put((int) rule, Boolean.FALSE);
+					}
+				}
+				return candidates;
+			}
+			int state = dfa.walk(word, ANY_CATEGORY, foldCase);
+			if (state != MorphAutomaton.NO_STATE) {
+				Boolean validate = Boolean.valueOf(!dfa.isExact());
+				for (int pos = dfa.getRHSStart(state, ANY_CATEGORY); pos < dfa
+						.getRHSEnd(state, ANY_CATEGORY); pos++) {
+					candidates.put((int) dfa.getRHS(pos).getPatternIndex(),
+							validate);
+				}
+			}
+			return candidates;
+		}
+
+		FrozenFSM fsm = getFrozenFSM();
+		FrozenFSM.Walk walk = new FrozenFSM.Walk();
+		fsm.walk(word, foldCase, walk);
+		int count = fsm.collectRules(walk);
+		for (int i = 0; i < count; i++) {
+			candidates.put(walk.getRule(i), Boolean.FALSE);
+		}
+		return candidates;
+	}
+
+	/**
+	 * Analyses the word for a category class, recording it in the profiler
+	 * if there is one.
+	 */
+	private boolean analyse(String word, int categoryClass, boolean ignoreCase,
+			MorphResult result) {
+		MorphProfiler profiler = this.profiler;
+		if (profiler == null) {
+			return lookUp(word, categoryClass, ignoreCase, result);
+		}
+		result.candidates = 0;
+		result.traversalEnd = 0;
+		long start = System.nanoTime();
+		boolean found = lookUp(word, categoryClass, ignoreCase, result);
+		profiler.recordWord(start, result.traversalEnd, System.nanoTime(),
+				result.candidates, result.getPatternIndex());
+		return found;
+	}
+
+	/**
+	 * Analyses the word for a category class, looking it up in the lexicon
+	 * and then in the cache first if there are any.
+	 */
+	private boolean lookUp(String word, int categoryClass, boolean ignoreCase,
+			MorphResult result) {
+		MorphLexicon.Analyses lexicon = lexiconAnalyses;
+		if (ignoreCase) {
+			int kind = CaseFolding.classify(word);
+			if (kind == CaseFolding.FOLDABLE && lemmaCache == null) {
+				if (categoryClass != NO_CATEGORY
+						&& ((lexicon != null && lexicon.find(word, categoryClass,
+								true, result)) || analyseClass(word, categoryClass, true,
+								result))) {
+					return true;
+				}
+				result.set(CaseFolding.lowerCase(word, word.length(), "",
+						result), null, -1);
+				return false;
+			}
+			if (kind != CaseFolding.LOWER_CASE) {
+				word = word.toLowerCase();
+			}
 		}
 
-		if (rhses.isEmpty()) {
-			return word;
+		result.set(word, null, -1);
+		if (categoryClass == NO_CATEGORY) {
+			return false;
+		}
+		if (lexicon != null && lexicon.find(word, categoryClass, false, result)) {
+			return true;
+		}
+		LemmaCache cache = lemmaCache;
+		if (cache != null) {
+			if (cache.get(word, categoryClass, result)) {
+				return result.isFound();
+			}
+			analyseClass(word, categoryClass, false, result);
+			cache.put(word, categoryClass, result);
+			return result.isFound();
 		}
+		return analyseClass(word, categoryClass, false, result);
+	}
 
-		return executeRHSes(rhses, word, category);
+	/**
+	 * Does the actual work of {@link #analyse(String, String, MorphResult)},
+	 * for a valid category class.
+	 */
+	private boolean analyseClass(String word, int categoryClass,
+			boolean foldCase, MorphResult result) {
+		if (automaton != null) {
+			MorphAutomaton dfa = automaton;
+			// the tables of the automaton only list the rules of the category
+			int inexactCount = dfa.getInexactRuleCount(categoryClass);
+
+			// words of the literal table are resolved when compiling the rules,
+			// only the inexact rules with a lower index may still apply first
+			LiteralTable literals = dfa.getLiterals();
+			int slot = foldCase ? literals.findIgnoringCase(word) : literals
+					.find(word);
+			if (profiler != null) {
+				result.traversalEnd = System.nanoTime();
+			}
+			if (slot >= 0) {
+				short rule = literals.getRule(slot, categoryClass);
+				for (int i = 0; i < inexactCount
+						&& (rule == LiteralTable.NO_RULE || dfa.getInexactRule(
+								categoryClass, i) < rule); i++) {
+					if (applyRule(word, categoryClass, dfa.getRule(dfa
+							.getInexactRule(categoryClass, i)), true, foldCase,
+							result)) {
+						return true;
+					}
+				}
+				return rule != LiteralTable.NO_RULE
+						&& applyRule(word, categoryClass, dfa.getRule(rule), false,
+								foldCase, result);
+			}
+
+			int state = dfa.walk(word, categoryClass, foldCase);
+			if (profiler != null) {
+				result.traversalEnd = System.nanoTime();
+			}
+
+			// RHSes of the state are already merged and sorted, the rules
+			// missing from the automaton are merged in by pattern index
+			boolean validate = !dfa.isExact();
+			int pos = 0;
+			int end = 0;
+			if (state != MorphAutomaton.NO_STATE) {
+				pos = dfa.getRHSStart(state, categoryClass);
+				end = dfa.getRHSEnd(state, categoryClass);
+			}
+			int inexact = 0;
+			while (pos < end || inexact < inexactCount) {
+				RHS rhs = pos < end ? dfa.getRHS(pos) : null;
+				if (inexact < inexactCount
+						&& (rhs == null || dfa.getInexactRule(categoryClass,
+								inexact) < rhs.getPatternIndex())) {
+					if (applyRule(word, categoryClass, dfa.getRule(dfa
+							.getInexactRule(categoryClass, inexact++)), true,
+							foldCase, result)) {
+						return true;
+					}
+				} else {
+					pos++;
+					if (applyRule(word, categoryClass, rhs, validate, foldCase,
+							result)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		FrozenFSM fsm = getFrozenFSM();
+		FrozenFSM.Walk walk = result.walk();
+		if (fsm.walk(word, foldCase, walk) == 0) {
+			return false;
+		}
+		if (profiler != null) {
+			result.traversalEnd = System.nanoTime();
+		}
+
+		// the rules of all the states reached, in the order of their patterns;
+		// the FSM is exact so their patterns need not be run
+		int count = fsm.collectRules(walk);
+		for (int i = 0; i < count; i++) {
+			if (applyRule(word, categoryClass, rules.get(walk.getRule(i)), false,
+					foldCase, result)) {
+				return true;
+			}
+		}
+		return false;
 	}
 
+	/** result of the last call to {@link #runMorpher(String, String)} */
+	private MorphResult lastResult = new MorphResult();
+
 	protected int patternIndex = -1;
 	public int getPatternIndex() {
 	  return patternIndex;
 	}
 	
-	protected String executeRHSes(SortedSet<RHS> rhses, String word, String category) {
+	protected String executeRHSes(Iterable<RHS> rhses, String word, String category) {
     foundRule = false;
     // rhses are in sorted order
     // we need to check if the word is compatible with pattern
@@ -229,63 +941,77 @@ public class Interpret {
     }
     return word;
 	}
-	
+
 	protected boolean foundRule = false;
 
 	protected String executeRHS(String word, String category, RHS rhs) {
-		if (category.equals("*")) {
-			return executeRule(word, rhs);
-		} else if (rhs.isVerb() && vPat.matcher(category).matches()) {
-			return executeRule(word, rhs);
-		} else if (rhs.isNoun() && nPat.matcher(category).matches()) {
-			return executeRule(word, rhs);
+		foundRule = applyRule(word, categoryClass(category), rhs, true, false,
+				lastResult);
+		if (foundRule) {
+			this.affix = lastResult.getAffix();
+			return lastResult.getRoot();
 		}
 		return word;
 	}
 
-	private String executeRule(String word, RHS rhs) {
-		Pattern p = patterns.get(rhs.getPatternIndex());
+	/**
+	 * Applies the rule if it is compatible with the category class and the
+	 * word matches its pattern.
+	 * 
+	 * @param validate
+	 *            false if the word is already known to match the pattern
+	 * @param foldCase
+	 *            true to apply the rule to the ASCII word in lower case
+	 * @return true if the rule was applied and the result set
+	 */
+	private boolean applyRule(String word, int categoryClass, RHS rhs,
+			boolean validate, boolean foldCase, MorphResult result) {
+		result.candidates++;
+		if (!appliesTo(rhs, categoryClass)) {
+			return false;
+		}
 
-		short methodIndex = rhs.getMethodIndex();
-		if (!p.matcher(word).matches()) {
-			foundRule = false;
-			return word;
+		if (validate
+				&& !patterns.get(rhs.getPatternIndex()).matcher(
+						foldCase ? CaseFolding.lowerCaseView(word) : word)
+						.matches()) {
+			return false;
 		}
 
-		// call the appropriate function
+		// call the appropriate function, the roots of folded words are built
+		// in lower case straight from their characters
 		String[] parameters = rhs.getParameters();
-
-		// set the given word in that morph program
-		morphInst.setInput(word);
-		String answer = null;
-		switch (methodIndex) {
+		String root;
+		String affix;
+		switch (rhs.getMethodIndex()) {
 		case ParsingFunctions.IRREG_STEM:
-			answer = morphInst.irreg_stem(parameters[0], parameters[1]);
+			root = parameters[0];
+			affix = parameters[1];
 			break;
 		case ParsingFunctions.NULL_STEM:
-			answer = morphInst.null_stem();
+			root = foldCase ? CaseFolding.lowerCase(word, word.length(), "",
+					result) : word;
+			affix = MorphFunctions.NO_AFFIX;
 			break;
 		case ParsingFunctions.SEMIREG_STEM:
-			answer = morphInst.semi_reg_stem(Integer.parseInt(parameters[0]),
-					parameters[1]);
+			root = foldCase ? CaseFolding.lowerCase(word, MorphFunctions
+					.semiRegStemLength(word, rhs.getDeleteCount()),
+					parameters[1], result) : MorphFunctions.semiRegStem(word,
+					rhs.getDeleteCount(), parameters[1]);
+			affix = MorphFunctions.semiRegStemAffix(word);
 			break;
 		case ParsingFunctions.STEM:
-			answer = morphInst.stem(Integer.parseInt(parameters[0]),
-					parameters[1], parameters[2]);
+			root = foldCase ? CaseFolding.lowerCase(word, word.length()
+					- rhs.getDeleteCount(), parameters[1], result)
+					: MorphFunctions.stem(word, rhs.getDeleteCount(),
+							parameters[1]);
+			affix = parameters[2];
 			break;
 		default:
-			answer = null;
-			break;
-		}
-		
-		if(answer != null) {
-			this.affix = morphInst.getAffix();
-			foundRule = true;
-			return answer;
-		} else {
-			foundRule = false;
-			return word;
+			return false;
 		}
+		result.set(root, affix, rhs.getPatternIndex());
+		return true;
 	}
 
 	/**
@@ -326,6 +1052,10 @@ public class Interpret {
 			}
 
 			// remove all the leading spaces
+			lineIndent = 0;
+			while (currentLine.charAt(lineIndent) <= ' ') {
+				lineIndent++;
+			}
 			currentLine = currentLine.trim();
 
 			/*
@@ -468,6 +1198,8 @@ public class Interpret {
 			generateError(varName.trim() + " - Variable already defined - see "
 					+ "line " + file.getPointer() + " : " + line);
 		}
+		ruleParser.defineVariable(varName, varInst, varValue, file.getPointer(),
+				lineIndent + line.indexOf(varValue) + 1);
 
 		varInst.resetPointer();
 	}
@@ -517,35 +1249,92 @@ public class Interpret {
 					+ "line " + file.getPointer() + " : " + line);
 		}
 
-		RHS rhs = new RHS(ruleParts[1], category, (short)patterns.size());
-		ruleParts[0] = ruleParts[0].substring(i + 1, ruleParts[0].length())
-				.trim();
-		String regExp = ParsingFunctions.convertToRegExp(
-				ruleParts[0], variables);
-		patterns.add(Pattern.compile(regExp));
-		String[] rules = ParsingFunctions.normlizePattern(regExp);
-		for (int m = 0; m < rules.length; m++) {
-			Set<Set<FSMState>> lss = new HashSet<Set<FSMState>>();
-			lss.clear();
-			Set<FSMState> newSet = new HashSet<FSMState>();
-			newSet.add(initialState);
-			lss.add(newSet);
-			PatternPart parts[] = ParsingFunctions
-					.getPatternParts(rules[m].trim());
-			for (int j = 0; j < parts.length; j++) {
-				lss = ParsingFunctions.createFSMs(parts[j].getPartString(), parts[j].getType(), lss, this);
-			}
-			Iterator<Set<FSMState>> iter = lss.iterator();
-			while (iter.hasNext()) {
-				Set<FSMState> set = iter.next();
-				Iterator<FSMState> subIter = set.iterator();
-				while (subIter.hasNext()) {
-					FSMState st = subIter.next();
-					st.addRHS(rhs);
+		RHS rhs = new RHS(ruleParts[1], category, (short)rules.size());
+		int start = i + 1;
+		while (start < ruleParts[0].length()
+				&& ruleParts[0].charAt(start) <= ' ') {
+			start++;
+		}
+		String lhsText = ruleParts[0].substring(start).trim();
+		PatternNode lhs = ruleParser.parse(lhsText, file.getPointer(),
+				lineIndent + start + 1);
+		lhses.add(lhs);
+		regExps.add(lhs.toRegularExpression());
+		rules.add(rhs);
+	}
+
+	/**
+	 * Builds the FSM of the rules from their pattern trees with
+	 * {@link FSMBuilder} and returns its initial state. The morpher walks the
+	 * FSM frozen into a {@link FrozenFSM}, not the graph of {@link FSMState}s,
+	 * which is not kept, so every call builds a new graph. If the rules were
+	 * loaded from a snapshot there are no pattern trees to build it from and
+	 * the state returned has no transitions.
+	 */
+	public FSMState getInitialState() {
+		FSMState root = buildFSM().getInitialState();
+		trimToSize(root);
+		return root;
+	}
+
+	private FSMBuilder buildFSM() {
+		FSMBuilder builder = new FSMBuilder();
+		for (int r = 0; lhses != null && r < lhses.size(); r++) {
+			builder.addRule(lhses.get(r), rules.get(r));
+		}
+		return builder;
+	}
+
+	/**
+	 * Returns the FSM of the rules frozen into tables, building it the first
+	 * time. The FSM is only needed if the rules are not compiled into a
+	 * {@link MorphAutomaton}, so it is built when it is first walked.
+	 */
+	FrozenFSM getFrozenFSM() {
+		FrozenFSM fsm = frozenFSM;
+		if (fsm == null) {
+			fsm = freezeFSM();
+		}
+		return fsm;
+	}
+
+	private synchronized FrozenFSM freezeFSM() {
+		if (frozenFSM == null) {
+			FSMBuilder builder = buildFSM();
+			frozenFSM = FrozenFSM.freeze(builder.getInitialState(), builder
+					.getStateCount());
+		}
+		return frozenFSM;
+	}
+
+	/**
+	 * Shrinks the transitions of every state reachable from the given one.
+	 */
+	private static void trimToSize(FSMState root) {
+		Set<FSMState> seen = Collections
+				.newSetFromMap(new IdentityHashMap<FSMState, Boolean>());
+		List<FSMState> agenda = new ArrayList<FSMState>();
+		seen.add(root);
+		agenda.add(root);
+		for (int i = 0; i < agenda.size(); i++) {
+			FSMState st = agenda.get(i);
+			st.trimToSize();
+			CharMap map = st.getTransitionFunction();
+			for (byte type : new byte[] { FSMState.CHILD_STATE,
+					FSMState.ADJ_STATE }) {
+				char[] keys = type == FSMState.CHILD_STATE ? map.getItemsKeys()
+						: map.getAdjitemsKeys();
+				for (int j = 0; keys != null && j < keys.length; j++) {
+					FSMState next = map.get(keys[j], type);
+					if (seen.add(next))
+						agenda.add(next);
 				}
 			}
+			for (int j = 0; j < st.getClassCount(); j++) {
+				if (seen.add(st.getClassTarget(j)))
+					agenda.add(st.getClassTarget(j));
+			}
 		}
-		//drawFSM();
 	}
 
 	@SuppressWarnings("unused")
@@ -566,7 +1355,7 @@ public class Interpret {
 		// we start with initialState
 		System.out.println("Initial:");
 		String space = "";
-		drawFSM(initialState, space);
+		drawFSM(getInitialState(), space);
 	}
 
 	private void drawFSM(FSMState st, String space) {
@@ -587,6 +1376,14 @@ public class Interpret {
 				// drawFSM(map.get(keys[i], FSMState.ADJ_STATE), space+" ");
 			}
 		}
+		for (int i = 0; i < st.getClassCount(); i++) {
+			if (st.getClassType(i) == FSMState.CHILD_STATE) {
+				System.out.println(space + st.getClassChars(i) + ":");
+				drawFSM(st.getClassTarget(i), space + "  ");
+			} else {
+				System.out.println(space + st.getClassChars(i) + " :");
+			}
+		}
 	}
 
 	/**
@@ -729,7 +1526,4 @@ public class Interpret {
 		return this.affix;
 	}
 
-	public FSMState getInitialState() {
-		return initialState;
-	}
 }
\ No newline at end of file
@@ -0,0 +1,133 @@
+package gate.creole.morph;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Title: InterpretRegistry.java
+ * </p>
+ * <p>
+ * Description: JVM wide registry of the rules loaded by {@link Morph}, so
+ * that every morpher initialised with the same rules shares one copy of
+ * them, whichever application it belongs to, and not only the duplicates of
+ * one morpher. The rules are keyed by the canonical URL of the rule file,
+ * the SHA-256 hash of its content and the way they are compiled, so that a
+ * rule file changed in between is loaded again. The registered
+ * {@link Interpret}s are only weakly referenced: every Interpret sharing
+ * their rules keeps them reachable, and once the last of them is gone the
+ * rules can be collected and are dropped from the registry.
+ * </p>
+ */
+final class InterpretRegistry {
+
+	private static final Map<String, Entry> interprets = new HashMap<String, Entry>();
+
+	private static final ReferenceQueue<Interpret> collected = new ReferenceQueue<Interpret>();
+
+	/**
+	 * A registered Interpret, which knows its key to be removed once
+	 * collected.
+	 */
+	private static class Entry extends WeakReference<Interpret> {
+		final String key;
+
+		Entry(String key, Interpret interpret) {
+			super(interpret, collected);
+			this.key = key;
+		}
+	}
+
+	private InterpretRegistry() {
+	}
+
+	/**
+	 * @param compile
+	 *            true if the rules are compiled into an automaton
+	 * @param reverse
+	 *            true if the automaton reads the words from right to left
+	 * @return the key of the rules of the given file
+	 * @throws IOException
+	 *             if the rule file cannot be read
+	 */
+	static String key(URL rulesURL, boolean compile, boolean reverse)
+			throws IOException {
+		StringBuilder key = new StringBuilder(canonicalForm(rulesURL));
+		key.append('#');
+		for (byte b : MorphSnapshot.sourceHash(rulesURL)) {
+			key.append(Character.forDigit((b >> 4) & 0xf, 16));
+			key.append(Character.forDigit(b & 0xf, 16));
+		}
+		key.append(compile ? (reverse ? "#reverse" : "#compiled") : "#fsm");
+		return key.toString();
+	}
+
+	private static String canonicalForm(URL url) {
+		if ("file".equals(url.getProtocol())) {
+			try {
+				return new File(url.toURI()).getCanonicalFile().toURI().toString();
+			} catch (URISyntaxException e) {
+				// not a valid file URL, compared as it is
+			} catch (IllegalArgumentException e) {
+				// not a valid file URL, compared as it is
+			} catch (IOException e) {
+				// the path cannot be resolved, compared as it is
+			}
+		}
+		return url.toExternalForm();
+	}
+
+	/**
+	 * @return the Interpret registered with the key, or null if there is
+	 *         none
+	 */
+	static synchronized Interpret get(String key) {
+		expunge();
+		Entry entry = interprets.get(key);
+		return entry == null ? null : entry.get();
+	}
+
+	/**
+	 * Registers the Interpret, whose rules must not be modified any more,
+	 * unless an Interpret is already registered with the key.
+	 *
+	 * @return the Interpret registered with the key
+	 */
+	static synchronized Interpret register(String key, Interpret interpret) {
+		expunge();
+		Entry entry = interprets.get(key);
+		Interpret registered = entry == null ? null : entry.get();
+		if (registered != null) {
+			return registered;
+		}
+		interprets.put(key, new Entry(key, interpret));
+		return interpret;
+	}
+
+	/**
+	 * @return the number of rule sets currently registered
+	 */
+	static synchronized int size() {
+		expunge();
+		return interprets.size();
+	}
+
+	/**
+	 * Removes the entries of the collected Interprets.
+	 */
+	private static void expunge() {
+		Entry entry;
+		while ((entry = (Entry) collected.poll()) != null) {
+			// the key may have been registered again since
+			if (interprets.get(entry.key) == entry) {
+				interprets.remove(entry.key);
+			}
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package gate.creole.morph;
+
+import java.util.AbstractList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * Title: LazyPatternList.java
+ * </p>
+ * <p>
+ * Description: The patterns of the rules, compiled when first needed. With
+ * an exact automaton only the patterns of the inexact rules are ever used.
+ * Safe for use by several threads, a pattern may then be compiled more than
+ * once.
+ * </p>
+ */
+class LazyPatternList extends AbstractList<Pattern> {
+	private final String[] regExps;
+
+	private final AtomicReferenceArray<Pattern> patterns;
+
+	LazyPatternList(String[] regExps) {
+		this.regExps = regExps;
+		this.patterns = new AtomicReferenceArray<Pattern>(regExps.length);
+	}
+
+	@Override
+	public Pattern get(int index) {
+		Pattern pattern = patterns.get(index);
+		if (pattern == null) {
+			pattern = Pattern.compile(regExps[index]);
+			patterns.set(index, pattern);
+		}
+		return pattern;
+	}
+
+	@Override
+	public int size() {
+		return regExps.length;
+	}
+}
@@ -0,0 +1,175 @@
+package gate.creole.morph;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Title: LemmaCache.java
+ * </p>
+ * <p>
+ * Description: Bounded cache of the results of
+ * {@link Interpret#analyse(String, String, MorphResult)}, keyed by the word
+ * and the class of its POS category (any, verb or noun). Token frequencies
+ * are Zipfian, so a few thousand entries answer most of the lookups. Each
+ * entry holds the results of one word for every category class. The cache is
+ * split into independently locked segments, each of which evicts its least
+ * recently used word when full, so that it can be shared by all the
+ * {@link Morph} duplicates sharing an {@link Interpret}.
+ * </p>
+ */
+public class LemmaCache {
+
+	/** number of category classes a word can have a result for */
+	private static final int CATEGORY_CLASSES = 3;
+
+	/** maximum number of independently locked segments */
+	private static final int MAX_SEGMENTS = 16;
+
+	private final int capacity;
+
+	/** segments, indexed by hash of the word */
+	private final Segment[] segments;
+
+	/** counted without a shared lock as every lookup updates one of them */
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * A LRU map from words to their results per category class, guarded by
+	 * its own lock.
+	 */
+	private static class Segment extends LinkedHashMap<String, MorphResult[]> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, MorphResult[]> eldest) {
+			return size() > capacity;
+		}
+	}
+
+	/**
+	 * @param capacity
+	 *            maximum number of words, must be positive
+	 */
+	public LemmaCache(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Cache capacity must be positive: "
+					+ capacity);
+		}
+		this.capacity = capacity;
+
+		// small caches are not worth splitting
+		int segmentCount = Math.max(1, Math.min(MAX_SEGMENTS, capacity / 64));
+		segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			// spread the remainder so that the capacities add up
+			segments[i] = new Segment(capacity / segmentCount
+					+ (i < capacity % segmentCount ? 1 : 0));
+		}
+	}
+
+	private Segment segmentFor(String word) {
+		int h = word.hashCode();
+		h ^= (h >>> 16);
+		return segments[(h & 0x7fffffff) % segments.length];
+	}
+
+	/**
+	 * Copies the cached result for the word into result.
+	 *
+	 * @return true if the word was in the cache
+	 */
+	public boolean get(String word, int categoryClass, MorphResult result) {
+		Segment segment = segmentFor(word);
+		MorphResult cached = null;
+		synchronized (segment) {
+			MorphResult[] results = segment.get(word);
+			if (results != null) {
+				cached = results[categoryClass];
+			}
+		}
+		if (cached == null) {
+			misses.increment();
+			return false;
+		}
+		hits.increment();
+		result.set(cached.getRoot(), cached.getAffix(), cached.getPatternIndex());
+		return true;
+	}
+
+	/**
+	 * Stores a copy of the result for the word.
+	 */
+	public void put(String word, int categoryClass, MorphResult result) {
+		MorphResult copy = new MorphResult();
+		copy.set(result.getRoot(), result.getAffix(), result.getPatternIndex());
+		Segment segment = segmentFor(word);
+		synchronized (segment) {
+			MorphResult[] results = segment.get(word);
+			if (results == null) {
+				results = new MorphResult[CATEGORY_CLASSES];
+				segment.put(word, results);
+			}
+			results[categoryClass] = copy;
+		}
+	}
+
+	/**
+	 * @return the maximum number of words
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the current number of words in the cache
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Removes all the entries and resets the counters.
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+		hits.reset();
+		misses.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "LemmaCache[size=" + size() + ", capacity=" + capacity
+				+ ", hits=" + getHits() + ", misses=" + getMisses() + "]";
+	}
+}
@@ -0,0 +1,209 @@
+package gate.creole.morph;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Title: LiteralTable.java
+ * </p>
+ * <p>
+ * Description: Open addressing hash table of the words matched by the literal
+ * part of the morpher rules, such as the irregular forms
+ * <tt>&lt;verb&gt;abode ==&gt; irreg_stem("abide","ed")</tt>. For every word
+ * it stores the pattern index of the rule that applies to the word for each
+ * category class, taking into account the rules of the
+ * {@link MorphAutomaton} it belongs to, so that a word found in the table is
+ * analysed without walking the automaton. The words are kept one after the
+ * other in a single character array, and the slots of the table only hold
+ * their indexes, so that a table of a few thousand words takes no more than
+ * their characters and a few arrays of ints. Built by
+ * {@link PatternCompiler}, immutable once built.
+ * </p>
+ */
+public class LiteralTable {
+
+	/** stored for a category class no rule applies to */
+	public static final short NO_RULE = -1;
+
+	/** number of category classes stored for every word */
+	static final int CATEGORY_CLASSES = 3;
+
+	/** the characters of all the words, one after the other */
+	private final char[] chars;
+
+	/** start of every word in chars, one extra entry at the end */
+	private final int[] starts;
+
+	/** the rule of every category class of every word */
+	private final short[] rules;
+
+	/** one more than the index of the word in every slot, 0 if it is empty */
+	private final int[] slots;
+
+	/**
+	 * @param entries
+	 *            the rule of every category class, indexed by
+	 *            {@link Interpret#ANY_CATEGORY},
+	 *            {@link Interpret#VERB_CATEGORY} and
+	 *            {@link Interpret#NOUN_CATEGORY}, for every word
+	 */
+	LiteralTable(Map<String, short[]> entries) {
+		// keep the load factor at or below three quarters
+		int capacity = 2;
+		while (capacity * 3 < entries.size() * 4) {
+			capacity <<= 1;
+		}
+		slots = new int[capacity];
+		starts = new int[entries.size() + 1];
+		rules = new short[entries.size() * CATEGORY_CLASSES];
+		int length = 0;
+		for (String word : entries.keySet()) {
+			length += word.length();
+		}
+		chars = new char[length];
+
+		int index = 0;
+		for (Map.Entry<String, short[]> entry : entries.entrySet()) {
+			String word = entry.getKey();
+			word.getChars(0, word.length(), chars, starts[index]);
+			starts[index + 1] = starts[index] + word.length();
+			System.arraycopy(entry.getValue(), 0, rules, index * CATEGORY_CLASSES,
+					CATEGORY_CLASSES);
+			int slot = slot(word.hashCode());
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & (capacity - 1);
+			}
+			slots[slot] = ++index;
+		}
+	}
+
+	private int slot(int hash) {
+		return (hash ^ (hash >>> 16)) & (slots.length - 1);
+	}
+
+	/**
+	 * @return the index of the word in the table, or -1 if it is not in the
+	 *         table
+	 */
+	public int find(String word) {
+		int slot = slot(word.hashCode());
+		int entry;
+		while ((entry = slots[slot]) != 0) {
+			if (equals(entry - 1, word, false)) {
+				return entry - 1;
+			}
+			slot = (slot + 1) & (slots.length - 1);
+		}
+		return -1;
+	}
+
+	/**
+	 * Same as {@link #find(String)} for the word in lower case, see
+	 * {@link CaseFolding#fold(char)}.
+	 */
+	public int findIgnoringCase(String word) {
+		int h = 0;
+		for (int i = 0; i < word.length(); i++) {
+			h = 31 * h + CaseFolding.fold(word.charAt(i));
+		}
+		int slot = slot(h);
+		int entry;
+		while ((entry = slots[slot]) != 0) {
+			if (equals(entry - 1, word, true)) {
+				return entry - 1;
+			}
+			slot = (slot + 1) & (slots.length - 1);
+		}
+		return -1;
+	}
+
+	/**
+	 * @return true if the word at the index is the given word, in lower case
+	 *         if foldCase is true
+	 */
+	private boolean equals(int index, String word, boolean foldCase) {
+		int start = starts[index];
+		if (starts[index + 1] - start != word.length()) {
+			return false;
+		}
+		for (int i = 0; i < word.length(); i++) {
+			char ch = word.charAt(i);
+			if (chars[start + i] != (foldCase ? CaseFolding.fold(ch) : ch)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the pattern index of the rule that applies to the word at the
+	 *         index for the category class, or {@link #NO_RULE}
+	 */
+	public short getRule(int index, int categoryClass) {
+		return rules[index * CATEGORY_CLASSES + categoryClass];
+	}
+
+	/**
+	 * @return the word at the index, from 0 to {@link #size()}
+	 */
+	String getWord(int index) {
+		return new String(chars, starts[index], starts[index + 1]
+				- starts[index]);
+	}
+
+	/**
+	 * @return the number of words in the table
+	 */
+	public int size() {
+		return starts.length - 1;
+	}
+
+	/**
+	 * Estimates the number of bytes used by the table and its words.
+	 */
+	public long estimateHeapSize() {
+		return HeapSize.object(4 * HeapSize.REFERENCE)
+				+ HeapSize.array(chars.length, 2)
+				+ HeapSize.array(starts.length, 4)
+				+ HeapSize.array(rules.length, 2)
+				+ HeapSize.array(slots.length, 4);
+	}
+
+	/**
+	 * Writes the words and their rules for {@link MorphSnapshot}.
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeInt(size());
+		for (int index = 0; index < size(); index++) {
+			byte[] bytes = getWord(index).getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+			for (int c = 0; c < CATEGORY_CLASSES; c++) {
+				out.writeShort(rules[index * CATEGORY_CLASSES + c]);
+			}
+		}
+	}
+
+	/**
+	 * Reads a table written by {@link #write(DataOutput)}.
+	 */
+	static LiteralTable read(ByteBuffer in) {
+		int size = in.getInt();
+		Map<String, short[]> entries = new HashMap<String, short[]>(size * 2);
+		for (int i = 0; i < size; i++) {
+			byte[] bytes = new byte[in.getInt()];
+			in.get(bytes);
+			short[] wordRules = new short[CATEGORY_CLASSES];
+			for (int c = 0; c < CATEGORY_CLASSES; c++) {
+				wordRules[c] = in.getShort();
+			}
+			entries.put(new String(bytes, StandardCharsets.UTF_8), wordRules);
+		}
+		return new LiteralTable(entries);
+	}
+}
@@ -0,0 +1,75 @@
+package gate.creole.morph;
+
+/**
+ * <p>
+ * Title: MinimizationStatistics.java
+ * </p>
+ * <p>
+ * Description: Size of a {@link MorphAutomaton} before and after
+ * {@link MorphAutomaton#minimize()}, as recorded by
+ * {@link Interpret#determinize(int, boolean)}.
+ * </p>
+ */
+public final class MinimizationStatistics {
+
+	private final int statesBefore;
+
+	private final int transitionsBefore;
+
+	private final long bytesBefore;
+
+	private final int statesAfter;
+
+	private final int transitionsAfter;
+
+	private final long bytesAfter;
+
+	MinimizationStatistics(MorphAutomaton before, MorphAutomaton after) {
+		statesBefore = before.getStateCount();
+		transitionsBefore = before.getTransitionCount();
+		bytesBefore = before.estimateHeapSize();
+		statesAfter = after.getStateCount();
+		transitionsAfter = after.getTransitionCount();
+		bytesAfter = after.estimateHeapSize();
+	}
+
+	public int getStatesBefore() {
+		return statesBefore;
+	}
+
+	public int getTransitionsBefore() {
+		return transitionsBefore;
+	}
+
+	/**
+	 * @return the estimated heap size of the automaton before minimization,
+	 *         see {@link MorphAutomaton#estimateHeapSize()}
+	 */
+	public long getBytesBefore() {
+		return bytesBefore;
+	}
+
+	public int getStatesAfter() {
+		return statesAfter;
+	}
+
+	public int getTransitionsAfter() {
+		return transitionsAfter;
+	}
+
+	/**
+	 * @return the estimated heap size of the minimal automaton, see
+	 *         {@link MorphAutomaton#estimateHeapSize()}
+	 */
+	public long getBytesAfter() {
+		return bytesAfter;
+	}
+
+	@Override
+	public String toString() {
+		return statesBefore + " states and " + transitionsBefore
+				+ " transitions (" + bytesBefore + " bytes) minimized to "
+				+ statesAfter + " states and " + transitionsAfter
+				+ " transitions (" + bytesAfter + " bytes)";
+	}
+}
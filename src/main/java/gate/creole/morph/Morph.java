@@ -4,7 +4,13 @@ package gate.creole.morph;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import javax.management.JMException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -78,7 +84,86 @@ public class Morph
   protected Boolean caseSensitive;
 
   protected Boolean considerPOSTag;
-  
+
+  /**
+   * Should the rules be compiled into a deterministic automaton at init time
+   */
+  protected Boolean compileAutomaton;
+
+  /**
+   * Should the compiled automaton read the words from right to left
+   */
+  protected Boolean reverseAutomaton;
+
+  /** Number of words whose root and affix are cached, 0 for no cache */
+  protected Integer cacheSize;
+
+  /** Should every analysis of the tokens be added as a list feature */
+  protected Boolean allAnalyses;
+
+  /** Name of the list feature holding every analysis of the token */
+  protected String analysesFeatureName;
+
+  /** Number of strings in the pool of roots and affixes, 0 for no pool */
+  protected Integer poolSize;
+
+  /** Shares the roots and affixes between tokens, null if not pooling */
+  private transient StringPool stringPool;
+
+  /**
+   * If this Morph PR is a duplicate of an existing PR pooling its roots and
+   * affixes, this property will hold a reference to the original PR's pool.
+   */
+  protected StringPool existingStringPool;
+
+  /** Directory of the word lists looked up before the rules, null for none */
+  protected ResourceReference lexicon;
+
+  /** Number of threads analysing the tokens of a document */
+  protected Integer parallelism;
+
+  /** Smallest number of tokens analysed by a parallel task */
+  protected static final int MIN_CHUNK_SIZE = 512;
+
+  /** Milliseconds between two checks of a watched rule file */
+  protected static final long RULES_CHECK_INTERVAL = 5000;
+
+  /** Should the rules be reloaded when the rule file changes */
+  protected Boolean watchRulesFile;
+
+  /** Reloads the rules, shared with the duplicates, null if not watching */
+  private transient RulesWatcher rulesWatcher;
+
+  /**
+   * the rules the interpret was initialised from, or the rules of the
+   * watcher it was last initialised from
+   */
+  private transient Interpret loadedRules;
+
+  /**
+   * If this Morph PR is a duplicate of an existing PR watching its rule
+   * file, this property will hold a reference to the original PR's watcher.
+   */
+  protected RulesWatcher existingRulesWatcher;
+
+  /** Should the rules applied and the time spent be recorded */
+  protected Boolean profile;
+
+  /** Records the analysis, shared with the duplicates, null if not profiling */
+  private transient MorphProfiler profiler;
+
+  /** true if this PR created the profiler and registered it with JMX */
+  private transient boolean ownsProfiler;
+
+  /**
+   * If this Morph PR is a duplicate of an existing profiled PR, this
+   * property will hold a reference to the original PR's profiler.
+   */
+  protected MorphProfiler existingProfiler;
+
+  /** time at which the current document started being processed */
+  private transient long documentStart;
+
   /**
    * If this Morph PR is a duplicate of an existing PR, this property
    * will hold a reference to the original PR's Interpret instance.
@@ -116,25 +201,213 @@ public class Morph
     interpret = new Interpret();
     if(existingInterpret != null) {
       interpret.init(existingInterpret);
+      loadedRules = existingInterpret;
+      if(existingRulesWatcher != null) {
+        rulesWatcher = existingRulesWatcher.acquire();
+      }
     }
     else {
-      if (rulesFile == null) {
-        // no rule file is there, simply run the interpret to interpret it and
-        throw new ResourceInstantiationException("\n\n No Rule File Provided");
-      }
-  
-      fireStatusChanged("Reading Rule File...");
-      // compile the rules
+      loadRules();
+    }
+    startProfiling();
+    if(existingStringPool != null) {
+      stringPool = existingStringPool;
+    }
+    else if(poolSize != null && poolSize.intValue() > 0) {
+      stringPool = new StringPool(poolSize.intValue());
+    }
+    return this;
+  }
+
+  /**
+   * Sets the profiler on the interpret if the analysis is profiled, creating
+   * it and registering it with JMX unless it is shared with the original
+   * of this duplicate.
+   */
+  private void startProfiling() {
+    if(existingProfiler != null) {
+      profiler = existingProfiler;
+    }
+    else if(profile != null && profile.booleanValue()) {
+      profiler = new MorphProfiler(interpret.rules.size());
+      ownsProfiler = true;
       try {
-        interpret.init(rulesFile.toURL());
-      } catch(IOException e) {
-        throw new ResourceInstantiationException(e);
+        profiler.register(getName() == null ? "Morph" : getName());
+      } catch(JMException e) {
+        logger.warn("Could not register the profiler of " + getName()
+            + " with JMX", e);
       }
-      
+    }
+    interpret.setProfiler(profiler);
+  }
+
+  /**
+   * Loads the rules of the rule file, from the registry if another morpher
+   * already loaded them, from their snapshot if it is up to date, or by
+   * parsing and compiling them.
+   */
+  private void loadRules() throws ResourceInstantiationException {
+    if (rulesFile == null) {
+      // no rule file is there, simply run the interpret to interpret it and
+      throw new ResourceInstantiationException("\n\n No Rule File Provided");
+    }
+
+    boolean compile = compileAutomaton != null && compileAutomaton.booleanValue();
+    boolean reverse = reverseAutomaton != null && reverseAutomaton.booleanValue();
+    URL rulesURL;
+    String registryKey;
+    try {
+      rulesURL = rulesFile.toURL();
+      registryKey = InterpretRegistry.key(rulesURL, compile, reverse);
+    } catch(IOException e) {
+      throw new ResourceInstantiationException(e);
+    }
+
+    // the same rules may already be loaded by another morpher
+    Interpret registered = InterpretRegistry.get(registryKey);
+    if(registered != null) {
+      logger.debug("Sharing the rules of " + rulesFile
+          + " already loaded by another morpher");
+      interpret.init(registered);
+      loadedRules = registered;
+      // the cache of the other morpher is not shared
+      interpret.setCacheSize(cacheSize == null ? 0 : cacheSize.intValue());
+      interpret.setLexicon(createLexicon());
+      watchRules(rulesURL, compile, reverse);
       fireStatusChanged("Morpher created!");
       fireProcessFinished();
+      return;
+    }
+
+    // an up to date snapshot saves parsing and compiling the rules
+    boolean fromSnapshot = false;
+    if(compile) {
+      try {
+        fromSnapshot = interpret.initFromSnapshot(rulesURL);
+      } catch(IOException e) {
+        logger.warn("Could not read the snapshot of " + rulesFile
+            + ", the rules will be compiled instead", e);
+      }
+    }
+
+    if(fromSnapshot) {
+      logger.debug("Loaded the compiled rules of " + rulesFile
+          + " from their snapshot");
+      // the rules of the snapshot can be compiled the other way round
+      // without being parsed again
+      if(interpret.getAutomaton().isReverse() != reverse) {
+        fireStatusChanged("Compiling Rules...");
+        if(!interpret.determinize(Interpret.DEFAULT_MAX_DFA_STATES, reverse)) {
+          logger.warn("Rules in " + rulesFile + " need more than "
+              + Interpret.DEFAULT_MAX_DFA_STATES
+              + " deterministic states, the automaton of the snapshot will be used instead");
+        }
+      }
+    }
+    else {
+      fireStatusChanged("Reading Rule File...");
+      // compile the rules
+      interpret.init(rulesURL);
+
+      if(compile) {
+        fireStatusChanged("Compiling Rules...");
+        if(!interpret.determinize(Interpret.DEFAULT_MAX_DFA_STATES, reverse)) {
+          logger.warn("Rules in " + rulesFile + " need more than "
+              + Interpret.DEFAULT_MAX_DFA_STATES
+              + " deterministic states, the non-deterministic automaton will be used instead");
+        }
+      }
+      if(!interpret.isDeterministic()) {
+        // build the non-deterministic automaton now rather than on the
+        // first word
+        interpret.getFrozenFSM();
+      }
+    }
+    if(interpret.getMinimizationStatistics() != null) {
+      logger.info("Compiled the rules of " + rulesFile + ": "
+          + interpret.getMinimizationStatistics());
+    }
+    if(interpret.isDeterministic()
+        && interpret.getAutomaton().getInexactRuleCount() > 0) {
+      logger.warn("Rules "
+          + Arrays.toString(interpret.getAutomaton().getInexactRules())
+          + " in " + rulesFile
+          + " could not be compiled exactly and will be checked with their regular expression");
+    }
+    
+    // share the rules, another morpher may have registered them meanwhile;
+    // the cache and the lexicon of this morpher are set on an interpret of
+    // its own, the registered one is left as the other morphers find it
+    registered = InterpretRegistry.register(registryKey, interpret);
+    interpret = new Interpret();
+    interpret.init(registered);
+    loadedRules = registered;
+
+    interpret.setCacheSize(cacheSize == null ? 0 : cacheSize.intValue());
+    interpret.setLexicon(createLexicon());
+    watchRules(rulesURL, compile, reverse);
+
+    fireStatusChanged("Morpher created!");
+    fireProcessFinished();
+  }
+
+  /**
+   * Creates the lexicon of the word lists if there are any and reads them,
+   * so that a directory without word lists fails the initialisation rather
+   * than the first document.
+   */
+  private MorphLexicon createLexicon() throws ResourceInstantiationException {
+    if(lexicon == null) {
+      return null;
+    }
+    try {
+      MorphLexicon wordLists = new MorphLexicon(lexicon.toURL());
+      wordLists.load();
+      return wordLists;
+    } catch(IOException e) {
+      throw new ResourceInstantiationException(e);
+    }
+  }
+
+  /**
+   * Starts watching the rule file if the rules are to be reloaded when it
+   * changes.
+   */
+  private void watchRules(URL rulesURL, boolean compile, boolean reverse)
+      throws ResourceInstantiationException {
+    if(watchRulesFile == null || !watchRulesFile.booleanValue()) {
+      return;
+    }
+    try {
+      // the watcher gives the cache and the lexicon of the interpret to the
+      // rules it reloads, so that the duplicates keep sharing them
+      rulesWatcher = new RulesWatcher(rulesURL, interpret, compile, reverse,
+          RULES_CHECK_INTERVAL);
+    } catch(IOException e) {
+      throw new ResourceInstantiationException(e);
+    }
+    loadedRules = interpret;
+  }
+
+  /**
+   * Switches to the rules last loaded by the watcher, if they changed since
+   * the previous document. The document being processed by another
+   * duplicate keeps the rules it started with. The reloaded rules come with
+   * the cache and the lexicon shared by all the duplicates.
+   */
+  private void useLatestRules() {
+    if(rulesWatcher == null) {
+      return;
+    }
+    Interpret latest = rulesWatcher.getInterpret();
+    if(latest != loadedRules) {
+      Interpret reloaded = new Interpret();
+      reloaded.init(latest);
+      reloaded.setProfiler(profiler);
+      interpret = reloaded;
+      loadedRules = latest;
+      logger.debug("Using the reloaded rules of " + rulesFile);
     }
-    return this;
   }
 
   /**
@@ -153,6 +426,8 @@ public class Morph
   public void execute() throws ExecutionException {
     // lets start the progress and initialize the progress counter
     fireProgressChanged(0);
+    useLatestRules();
+    documentStart = System.nanoTime();
 
     // If no document provided to process throw an exception
     if (document == null) {
@@ -183,6 +458,12 @@ public class Morph
       //return;
     }
 
+    int threads = parallelism == null ? 1 : parallelism.intValue();
+    if(threads > 1) {
+      executeInParallel(tokens, threads);
+      return;
+    }
+
     // create iterator to get access to each and every individual token
     Iterator<Annotation> tokensIter = tokens.iterator();
 
@@ -191,54 +472,287 @@ public class Morph
     int tokensProcessed = 0;
     int lastReport = 0;
 
+    // holds the root and affix of the current token
+    MorphResult result = new MorphResult();
+    List<MorphAnalysis> analyses = allAnalyses() ? new ArrayList<MorphAnalysis>()
+        : null;
+
     //lets process each token one at a time
     while (tokensIter != null && tokensIter.hasNext()) {
       Annotation currentToken = tokensIter.next();
-      String tokenValue = (String) (currentToken.getFeatures().
-                                    get(TOKEN_STRING_FEATURE_NAME));
-      if(considerPOSTag != null && considerPOSTag.booleanValue() && !currentToken.getFeatures().containsKey(TOKEN_CATEGORY_FEATURE_NAME)) {
-        fireProcessFinished();
-        if(failOnMissingInputAnnotations) {
-          throw new ExecutionException("please run the POS Tagger first and then Morpher");
-        } else {
-          Utils.logOnce(logger,Level.INFO,"Morphological analyser: no input annotations, run the POS Tagger first - see debug log for details.");
-          logger.debug("No input annotations in document "+document.getName());
-          return;
-        }
-        //javax.swing.JOptionPane.showMessageDialog(MainFrame.getInstance(), "please run the POS Tagger first and then Morpher"); ;
-        //return;
+      if(isMissingCategory(currentToken)) {
+        missingCategory();
+        return;
+      }
+
+      if(analyses == null) {
+        analyse(interpret, getWord(currentToken), getCategory(currentToken),
+            ignoreCase(), result);
+        addFeatures(currentToken, result.getRoot(), result.getAffix());
+      }
+      else {
+        // the root and the affix are those of the analyses for the category
+        analyses.clear();
+        interpret.analyseAll(getWord(currentToken), getCategory(currentToken),
+            ignoreCase(), analyses, result);
+        addFeatures(currentToken, result.getRoot(), result.getAffix());
+        addAnalyses(currentToken, analyses.toArray(new MorphAnalysis[analyses
+            .size()]));
       }
 
-      String posCategory = (String) (currentToken.getFeatures().get(TOKEN_CATEGORY_FEATURE_NAME));
-      if(posCategory == null) {
-        posCategory = "*";
+      // measure the progress and update every after 100 tokens
+      tokensProcessed++;
+      if(tokensProcessed - lastReport > 100){
+        lastReport = tokensProcessed;
+        fireProgressChanged(tokensProcessed * 100 /tokenSize);
       }
+    }
+    finished(tokenSize);
+  }
 
-      if(considerPOSTag == null || !considerPOSTag.booleanValue()) {
-        posCategory = "*";
+  /**
+   * Runs the morpher on chunks of the tokens in parallel, one chunk per
+   * thread, on the calling thread and the common fork/join pool, which all
+   * the morphers and their duplicates share. The features of the tokens are
+   * only read and written by the calling thread, the other threads only see
+   * their strings.
+   */
+  protected void executeInParallel(AnnotationSet tokens, int threads)
+      throws ExecutionException {
+    List<Annotation> ordered = Utils.inDocumentOrder(tokens);
+    int tokenCount = ordered.size();
+    boolean missingCategory = false;
+    String[] words = new String[tokenCount];
+    String[] categories = new String[tokenCount];
+    for(int i = 0; i < tokenCount; i++) {
+      Annotation token = ordered.get(i);
+      if(isMissingCategory(token)) {
+        // the tokens before this one are still processed
+        tokenCount = i;
+        missingCategory = true;
+        break;
       }
+      words[i] = getWord(token);
+      categories[i] = getCategory(token);
+    }
+
+    String[] roots = new String[tokenCount];
+    String[] affixes = new String[tokenCount];
+    MorphAnalysis[][] analyses = allAnalyses()
+        ? new MorphAnalysis[tokenCount][] : null;
+    int chunks = Math.max(1, Math.min(threads, tokenCount / MIN_CHUNK_SIZE));
+    new AnalyseTask(interpret, ignoreCase(), words, categories, roots,
+        affixes, analyses, 0, tokenCount, chunks).invoke();
+    fireProgressChanged(50);
 
-      // run the Morpher
-      if(!caseSensitive.booleanValue()) {
-        tokenValue = tokenValue.toLowerCase();
+    for(int i = 0; i < tokenCount; i++) {
+      addFeatures(ordered.get(i), roots[i], affixes[i]);
+      if(analyses != null) {
+        addAnalyses(ordered.get(i), analyses[i]);
       }
+    }
+
+    if(missingCategory) {
+      missingCategory();
+    }
+    else {
+      finished(tokenCount);
+    }
+  }
+
+  /**
+   * Analyses a range of tokens, splitting it in two while it is made of more
+   * than one chunk.
+   */
+  private static class AnalyseTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Interpret interpret;
+
+    private final boolean ignoreCase;
+
+    private final String[] words, categories, roots, affixes;
 
-      String baseWord = interpret.runMorpher(tokenValue, posCategory);
-      String affixWord = interpret.getAffix();
+    /** every analysis of the words, null if not wanted */
+    private final MorphAnalysis[][] analyses;
 
-      // no need to add affix feature if it is null
-      if (affixWord != null) {
-        currentToken.getFeatures().put(affixFeatureName, affixWord);
+    private final int from, to, chunks;
+
+    AnalyseTask(Interpret interpret, boolean ignoreCase, String[] words,
+        String[] categories, String[] roots, String[] affixes,
+        MorphAnalysis[][] analyses, int from, int to, int chunks) {
+      this.interpret = interpret;
+      this.ignoreCase = ignoreCase;
+      this.words = words;
+      this.categories = categories;
+      this.roots = roots;
+      this.affixes = affixes;
+      this.analyses = analyses;
+      this.from = from;
+      this.to = to;
+      this.chunks = chunks;
+    }
+
+    @Override
+    protected void compute() {
+      if(chunks > 1) {
+        int half = chunks / 2;
+        int middle = from + (int)((long)(to - from) * half / chunks);
+        invokeAll(new AnalyseTask(interpret, ignoreCase, words, categories,
+            roots, affixes, analyses, from, middle, half),
+            new AnalyseTask(interpret, ignoreCase, words, categories, roots,
+            affixes, analyses, middle, to, chunks - half));
+        return;
+      }
+      if(analyses == null) {
+        interpret.analyse(words, categories, from, to, ignoreCase, roots,
+            affixes);
+        return;
+      }
+      MorphResult result = new MorphResult();
+      List<MorphAnalysis> list = new ArrayList<MorphAnalysis>();
+      for(int i = from; i < to; i++) {
+        list.clear();
+        interpret.analyseAll(words[i], categories[i], ignoreCase, list, result);
+        roots[i] = result.getRoot();
+        affixes[i] = result.getAffix();
+        analyses[i] = list.toArray(new MorphAnalysis[list.size()]);
       }
-      // add the root word as a feature
-      currentToken.getFeatures().put(rootFeatureName, baseWord);
+    }
+  }
 
-      // measure the progress and update every after 100 tokens
-      tokensProcessed++;
-      if(tokensProcessed - lastReport > 100){
-        lastReport = tokensProcessed;
-        fireProgressChanged(tokensProcessed * 100 /tokenSize);
+  @Override
+  public void cleanup() {
+    synchronized(this) {
+      if(rulesWatcher != null) {
+        rulesWatcher.release();
+        rulesWatcher = null;
       }
+      if(ownsProfiler) {
+        try {
+          profiler.unregister();
+        } catch(JMException e) {
+          logger.warn("Could not unregister the profiler of " + getName(), e);
+        }
+        ownsProfiler = false;
+      }
+      profiler = null;
+      stringPool = null;
+    }
+    super.cleanup();
+  }
+
+  /**
+   * @return true if the POS category should be considered but the token
+   *         does not have one
+   */
+  private boolean isMissingCategory(Annotation token) {
+    return considerPOSTag != null && considerPOSTag.booleanValue()
+        && !token.getFeatures().containsKey(TOKEN_CATEGORY_FEATURE_NAME);
+  }
+
+  /**
+   * Stops the processing of a token without a POS category.
+   */
+  private void missingCategory() throws ExecutionException {
+    fireProcessFinished();
+    if(failOnMissingInputAnnotations) {
+      throw new ExecutionException("please run the POS Tagger first and then Morpher");
+    } else {
+      Utils.logOnce(logger,Level.INFO,"Morphological analyser: no input annotations, run the POS Tagger first - see debug log for details.");
+      logger.debug("No input annotations in document "+document.getName());
+    }
+    //javax.swing.JOptionPane.showMessageDialog(MainFrame.getInstance(), "please run the POS Tagger first and then Morpher"); ;
+  }
+
+  /**
+   * @return the string of the token, as it is in the document
+   */
+  private String getWord(Annotation token) {
+    return (String) (token.getFeatures().get(TOKEN_STRING_FEATURE_NAME));
+  }
+
+  /**
+   * @return true if the words are analysed in lower case
+   */
+  private boolean ignoreCase() {
+    return !caseSensitive.booleanValue();
+  }
+
+  /**
+   * Analyses the word, in lower case if ignoreCase is true. The word is not
+   * copied to lower case beforehand, see
+   * {@link Interpret#analyseIgnoringCase(String, String, MorphResult)}.
+   */
+  private static void analyse(Interpret interpret, String word,
+      String category, boolean ignoreCase, MorphResult result) {
+    if(ignoreCase) {
+      interpret.analyseIgnoringCase(word, category, result);
+    }
+    else {
+      interpret.analyse(word, category, result);
+    }
+  }
+
+  /**
+   * @return the POS category of the token, or "*" if it has none or it
+   *         should not be considered
+   */
+  private String getCategory(Annotation token) {
+    String posCategory = (String) (token.getFeatures().get(TOKEN_CATEGORY_FEATURE_NAME));
+    if(posCategory == null) {
+      posCategory = "*";
+    }
+
+    if(considerPOSTag == null || !considerPOSTag.booleanValue()) {
+      posCategory = "*";
+    }
+    return posCategory;
+  }
+
+  private void addFeatures(Annotation token, String baseWord,
+      String affixWord) {
+    if(stringPool != null) {
+      baseWord = stringPool.canonicalize(baseWord);
+      affixWord = stringPool.canonicalize(affixWord);
+    }
+    // no need to add affix feature if it is null
+    if (affixWord != null) {
+      token.getFeatures().put(affixFeatureName, affixWord);
+    }
+    // add the root word as a feature
+    token.getFeatures().put(rootFeatureName, baseWord);
+  }
+
+  /**
+   * Sets the list feature of the token to its analyses, each written as
+   * <tt>root+affix/category</tt>, see {@link MorphAnalysis}.
+   */
+  private void addAnalyses(Annotation token, MorphAnalysis[] analyses) {
+    List<String> values = new ArrayList<String>(analyses.length);
+    for(MorphAnalysis analysis : analyses) {
+      String value = analysis.toString();
+      values.add(stringPool == null ? value : stringPool.canonicalize(value));
+    }
+    token.getFeatures().put(analysesFeatureName, values);
+  }
+
+  /**
+   * @return true if every analysis of the tokens is wanted
+   */
+  private boolean allAnalyses() {
+    return allAnalyses != null && allAnalyses.booleanValue()
+        && analysesFeatureName != null;
+  }
+
+  private void finished(int tokenCount) {
+    if(profiler != null) {
+      profiler.recordDocument(tokenCount, System.nanoTime() - documentStart);
+    }
+    if(logger.isDebugEnabled() && interpret.getLemmaCache() != null) {
+      logger.debug("Morphological analyser cache after " + document.getName()
+          + ": " + interpret.getLemmaCache());
     }
     // process finished, acknowledge user about this.
     fireProcessFinished();
@@ -263,6 +777,23 @@ public class Morph
     return interpret.getAffix();
   }
 
+  /**
+   * Finds the roots and the affixes of a batch of words in one call, which
+   * is much cheaper than calling {@link #findBaseWord(String, String)} and
+   * {@link #findAffix(String, String)} for every word. This method should
+   * only be called after init()
+   * @param words the words to analyse
+   * @param cats their POS categories, or null to try the rules of every
+   *          category
+   * @param roots receives the root of every word
+   * @param affixes receives the affix of every word, may be null
+   * @return the number of words a rule was applied to
+   */
+  public int findBaseWords(String[] words, String[] cats, String[] roots,
+      String[] affixes) {
+    return interpret.analyse(words, cats, roots, affixes);
+  }
+
   /**
    * Sets the rule file to be processed
    * @param rulesFile - rule File name to be processed
@@ -370,6 +901,166 @@ public class Morph
     this.considerPOSTag = value;
   }
   
+  public Boolean getCompileAutomaton() {
+    return this.compileAutomaton;
+  }
+
+  /**
+   * Sets whether the rules should be compiled into a deterministic automaton,
+   * trading a longer init and a larger heap than the FSM of the rules for one
+   * transition lookup per character at runtime. The reverse automaton is the
+   * smaller of the two, see {@link #setReverseAutomaton(Boolean)}.
+   */
+  @Optional
+  @CreoleParameter(comment="Compile the rules into a deterministic automaton at init time", defaultValue="false")
+  public void setCompileAutomaton(Boolean value) {
+    this.compileAutomaton = value;
+  }
+
+  public Boolean getReverseAutomaton() {
+    return this.reverseAutomaton;
+  }
+
+  /**
+   * Sets whether the automaton should be compiled from the reversed rules and
+   * read the words from their end, which rejects most words after their last
+   * few characters as the rules are mostly about suffixes
+   */
+  @Optional
+  @CreoleParameter(comment="Compile the automaton from the reversed rules and read words from right to left", defaultValue="false")
+  public void setReverseAutomaton(Boolean value) {
+    this.reverseAutomaton = value;
+  }
+
+  public Integer getCacheSize() {
+    return this.cacheSize;
+  }
+
+  /**
+   * Sets the number of words whose root and affix are cached. The cache is
+   * shared with the duplicates of this PR.
+   */
+  @Optional
+  @CreoleParameter(comment="Number of words whose root and affix are cached, 0 to disable the cache", defaultValue="0")
+  public void setCacheSize(Integer value) {
+    this.cacheSize = value;
+  }
+
+  public Boolean getAllAnalyses() {
+    return this.allAnalyses;
+  }
+
+  /**
+   * Sets whether the analyses of the token for every category are added as
+   * a list feature, besides the root and affix of its own category, so
+   * that the roots the token would get with any POS tag are found in a
+   * single run, see {@link Interpret#analyseAll(String, boolean, List)}.
+   * The root and the affix of the token are then taken from these analyses,
+   * the token is looked up once and the cache is not used.
+   */
+  @RunTime
+  @Optional
+  @CreoleParameter(comment="Add the analyses of the token for every category as a list feature", defaultValue="false")
+  public void setAllAnalyses(Boolean value) {
+    this.allAnalyses = value;
+  }
+
+  public String getAnalysesFeatureName() {
+    return this.analysesFeatureName;
+  }
+
+  /**
+   * Sets the name of the list feature holding every analysis of the token,
+   * each as <tt>root+affix/category</tt>.
+   */
+  @RunTime
+  @Optional
+  @CreoleParameter(comment="Name of the list feature holding every analysis of the token", defaultValue="analyses")
+  public void setAnalysesFeatureName(String value) {
+    this.analysesFeatureName = value;
+  }
+
+  public Integer getPoolSize() {
+    return this.poolSize;
+  }
+
+  /**
+   * Sets the number of strings kept in the pool through which the roots and
+   * affixes go before they are put on the tokens, so that the tokens share
+   * one string per frequent value, see {@link StringPool}. The pool is
+   * shared with the duplicates of this PR. There is no pool unless a size
+   * is given, as it adds a lookup per token to save memory on large
+   * corpora, where a few thousand distinct roots make up most tokens.
+   */
+  @Optional
+  @CreoleParameter(comment="Number of roots and affixes whose strings are shared by the tokens, 0 to give every token its own strings", defaultValue="0")
+  public void setPoolSize(Integer value) {
+    this.poolSize = value;
+  }
+
+  /**
+   * Returns the pool of roots and affixes, with its hit and miss counts, or
+   * null if pooling is disabled
+   */
+  public StringPool getStringPool() {
+    return stringPool;
+  }
+
+  /**
+   * Only for use by the duplication mechanism.
+   */
+  public void setExistingStringPool(StringPool existingStringPool) {
+    this.existingStringPool = existingStringPool;
+  }
+
+  public ResourceReference getLexicon() {
+    return this.lexicon;
+  }
+
+  /**
+   * Sets the directory of the verb.dat, noun.dat, adj.dat and adv.dat word
+   * lists, whose forms are looked up before the rules are tried, see
+   * {@link MorphLexicon}. The word lists are read when the PR is
+   * initialised and shared with the duplicates of this PR.
+   * <p>
+   * The forms of the word lists get the lemma of the list and the affix the
+   * rules give them. The lemma can differ from the root the rules give the
+   * same word, as for <tt>leaves</tt> (<tt>leaf</tt> against
+   * <tt>leave</tt>), so setting a lexicon can change the root feature of
+   * words the rules already handle.
+   */
+  @Optional
+  @CreoleParameter(comment="Directory of the word lists of known forms looked up before the rules, none to only use the rules; their roots can differ from those of the rules")
+  public void setLexicon(ResourceReference lexicon) {
+    this.lexicon = lexicon;
+  }
+
+  public Integer getParallelism() {
+    return this.parallelism;
+  }
+
+  /**
+   * Sets the number of threads analysing the tokens of a document. With more
+   * than one thread, the tokens are split into as many chunks, of at least
+   * {@link #MIN_CHUNK_SIZE} tokens, analysed in parallel by the calling
+   * thread and the common fork/join pool, and their features are then set by
+   * the calling thread.
+   */
+  @RunTime
+  @Optional
+  @CreoleParameter(comment="Number of threads analysing the tokens of a document, 1 to analyse them on the calling thread", defaultValue="1")
+  public void setParallelism(Integer value) {
+    this.parallelism = value;
+  }
+
+  /**
+   * Returns the cache of roots and affixes, with its hit and miss counts, or
+   * null if caching is disabled
+   */
+  public LemmaCache getLemmaCache() {
+    return interpret == null ? null : interpret.getLemmaCache();
+  }
+
   /**
    * Only for use by the duplication mechanism.
    */
@@ -377,6 +1068,67 @@ public class Morph
     this.existingInterpret = existingInterpret;
   }
 
+  public Boolean getWatchRulesFile() {
+    return this.watchRulesFile;
+  }
+
+  /**
+   * Sets whether the rule file should be checked for changes, in which case
+   * the new rules are loaded in the background and used from the next
+   * document on, by this PR and its duplicates
+   */
+  @Optional
+  @CreoleParameter(comment="Reload the rules in the background when the rule file changes", defaultValue="false")
+  public void setWatchRulesFile(Boolean value) {
+    this.watchRulesFile = value;
+  }
+
+  /**
+   * Returns the watcher reloading the rules, whose last error tells why the
+   * current content of the rule file is not in use, or null if the rule
+   * file is not watched
+   */
+  public RulesWatcher getRulesWatcher() {
+    return rulesWatcher;
+  }
+
+  /**
+   * Only for use by the duplication mechanism.
+   */
+  public void setExistingRulesWatcher(RulesWatcher existingRulesWatcher) {
+    this.existingRulesWatcher = existingRulesWatcher;
+  }
+
+  public Boolean getProfile() {
+    return this.profile;
+  }
+
+  /**
+   * Sets whether the rules applied, the rules tried per word and the time
+   * spent are recorded, see {@link MorphProfiler}. The profiler is shared
+   * with the duplicates of this PR and registered with JMX.
+   */
+  @Optional
+  @CreoleParameter(comment="Record the rules applied and the time spent, available through JMX", defaultValue="false")
+  public void setProfile(Boolean value) {
+    this.profile = value;
+  }
+
+  /**
+   * Returns the profiler recording the analysis, or null if it is not
+   * profiled
+   */
+  public MorphProfiler getProfiler() {
+    return profiler;
+  }
+
+  /**
+   * Only for use by the duplication mechanism.
+   */
+  public void setExistingProfiler(MorphProfiler existingProfiler) {
+    this.existingProfiler = existingProfiler;
+  }
+
   /**
    * Duplicate this morpher, sharing the compiled regular expression
    * patterns and finite state machine with the duplicate.
@@ -388,6 +1140,9 @@ public class Morph
     String resName = this.getName();
     FeatureMap initParams = getInitParameterValues();
     initParams.put("existingInterpret", interpret);
+    initParams.put("existingRulesWatcher", rulesWatcher);
+    initParams.put("existingProfiler", profiler);
+    initParams.put("existingStringPool", stringPool);
     Resource res = Factory.createResource(className, initParams, this.getFeatures(), resName);
     res.setParameterValues(getRuntimeParameterValues());
     return res;
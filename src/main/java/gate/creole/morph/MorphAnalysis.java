@@ -0,0 +1,75 @@
+package gate.creole.morph;
+
+/**
+ * <p>
+ * Title: MorphAnalysis.java
+ * </p>
+ * <p>
+ * Description: One of the analyses of a word returned by
+ * {@link Interpret#analyseAll(String, boolean, java.util.List)}: the root,
+ * the affix, the category of the rule that gave them and the index of its
+ * pattern, or the lemma of the word in the {@link MorphLexicon}. Instances
+ * are immutable.
+ * </p>
+ */
+public final class MorphAnalysis {
+
+	private final String root;
+
+	private final String affix;
+
+	private final String category;
+
+	private final int patternIndex;
+
+	private final boolean fromLexicon;
+
+	MorphAnalysis(String root, String affix, String category,
+			int patternIndex, boolean fromLexicon) {
+		this.root = root;
+		this.affix = affix;
+		this.category = category;
+		this.patternIndex = patternIndex;
+		this.fromLexicon = fromLexicon;
+	}
+
+	public String getRoot() {
+		return root;
+	}
+
+	public String getAffix() {
+		return affix;
+	}
+
+	/**
+	 * @return the category of the rule, <tt>verb</tt>, <tt>noun</tt> or
+	 *         <tt>*</tt>, or the category the lexicon knows the word as
+	 */
+	public String getCategory() {
+		return category;
+	}
+
+	/**
+	 * @return the index of the pattern of the rule, or of the rule giving its
+	 *         affix to a word found in the lexicon, -1 if none
+	 */
+	public int getPatternIndex() {
+		return patternIndex;
+	}
+
+	/**
+	 * @return true if the root is the lemma of the word in the lexicon
+	 */
+	public boolean isFromLexicon() {
+		return fromLexicon;
+	}
+
+	/**
+	 * @return <tt>root+affix/category</tt>, the form of the analyses in the
+	 *         list feature set by {@link Morph}
+	 */
+	@Override
+	public String toString() {
+		return root + "+" + affix + "/" + category;
+	}
+}
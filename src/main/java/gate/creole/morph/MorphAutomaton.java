@@ -0,0 +1,961 @@
+package gate.creole.morph;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Title: MorphAutomaton.java
+ * </p>
+ * <p>
+ * Description: Frozen, table driven form of the deterministic automaton used
+ * by {@link Interpret}. States are plain <tt>int</tt> ids and the transitions
+ * of all the states are stored in shared arrays in compressed sparse row
+ * form: the transitions of state <tt>s</tt> are found between
+ * <tt>transitionOffsets[s]</tt> and <tt>transitionOffsets[s+1]</tt>. Every
+ * transition is labelled with a range of characters, so that a character
+ * class such as <tt>[a-z]</tt> leading to a single state takes one entry
+ * instead of one per character; the ranges of a state are sorted and
+ * disjoint, so that they can be binary searched. The RHSes of
+ * every state are a range of one shared table of pattern indexes; states with
+ * the same RHS list share the same range. Instances are immutable once built.
+ * </p>
+ * <p>
+ * An automaton built by {@link PatternCompiler} is exact: a word reaches a
+ * state listing a rule only if the rule's pattern matches it, except for the
+ * rules returned by {@link #getInexactRules()}, which are not in the tables
+ * and must be checked with their regular expression.
+ * </p>
+ * <p>
+ * The words matched by the literal part of the rules are kept out of the
+ * tables of an exact automaton and stored in its {@link LiteralTable}, which
+ * must be looked up first.
+ * </p>
+ * <p>
+ * A reverse automaton is built from the reversed patterns and reads the
+ * words from their last character to their first, see {@link #walk(String)}.
+ * </p>
+ * <p>
+ * The RHS lists and the inexact rules are also split by category class, see
+ * {@link Interpret#ANY_CATEGORY}, so that the rules of the other categories
+ * are never looked at, and every state knows the category classes whose
+ * rules can still be reached from it, so that {@link #walk(String, int)}
+ * stops as soon as no rule of the category can match.
+ * </p>
+ */
+public class MorphAutomaton {
+
+	/** id of the initial state */
+	public static final int INITIAL_STATE = 0;
+
+	/** returned by {@link #next(int, char)} when there is no transition */
+	public static final int NO_STATE = -1;
+
+	private static final int CATEGORY_CLASSES = LiteralTable.CATEGORY_CLASSES;
+
+	/** start of the transitions of each state, one extra entry at the end */
+	private final int[] transitionOffsets;
+
+	/** first character of the range of every transition */
+	private final char[] transitionLows;
+
+	/** last character of the range of every transition */
+	private final char[] transitionHighs;
+
+	/** target states of all the transitions, parallel to transitionLows */
+	private final int[] transitionTargets;
+
+	/** start of the RHSes of each state in the RHS table */
+	private final int[] rhsStarts;
+
+	/** end (exclusive) of the RHSes of each state in the RHS table */
+	private final int[] rhsEnds;
+
+	/** pattern indexes of the RHS lists of all the states, each sorted */
+	private final short[] rhsTable;
+
+	/** the RHS of every rule, indexed by pattern index */
+	private final RHS[] rules;
+
+	/** true if reaching a rule proves that its pattern matches */
+	private final boolean exact;
+
+	/** sorted pattern indexes of the rules missing from an exact automaton */
+	private final short[] inexactRules;
+
+	/** the words matched by the literal part of the rules */
+	private final LiteralTable literals;
+
+	/** true if the words are read from right to left */
+	private final boolean reverse;
+
+	/**
+	 * start and end in categoryTable of the RHSes of each state applying to
+	 * each category class, at <tt>(state * CATEGORY_CLASSES + class) * 2</tt>
+	 */
+	private final int[] categoryRanges;
+
+	/**
+	 * the RHS table followed by the RHS lists of the verb and noun classes
+	 */
+	private final short[] categoryTable;
+
+	/** the inexact rules applying to each category class */
+	private final short[][] categoryInexactRules;
+
+	/**
+	 * for each state, bit <tt>1 << class</tt> is set if a rule of the
+	 * category class can be reached from it
+	 */
+	private final byte[] categoryMasks;
+
+	MorphAutomaton(int[] transitionOffsets, char[] transitionLows,
+			char[] transitionHighs, int[] transitionTargets, int[] rhsStarts,
+			int[] rhsEnds, short[] rhsTable, RHS[] rules, boolean exact,
+			short[] inexactRules, LiteralTable literals, boolean reverse) {
+		this.transitionOffsets = transitionOffsets;
+		this.transitionLows = transitionLows;
+		this.transitionHighs = transitionHighs;
+		this.transitionTargets = transitionTargets;
+		this.rhsStarts = rhsStarts;
+		this.rhsEnds = rhsEnds;
+		this.rhsTable = rhsTable;
+		this.rules = rules;
+		this.exact = exact;
+		this.inexactRules = inexactRules;
+		this.literals = literals;
+		this.reverse = reverse;
+
+		categoryRanges = new int[rhsStarts.length * CATEGORY_CLASSES * 2];
+		categoryTable = partitionByCategory();
+		categoryInexactRules = new short[CATEGORY_CLASSES][];
+		for (int c = 0; c < CATEGORY_CLASSES; c++) {
+			IntList applying = new IntList();
+			for (short rule : inexactRules) {
+				if (Interpret.appliesTo(rules[rule], c)) {
+					applying.add(rule);
+				}
+			}
+			categoryInexactRules[c] = applying.toShortArray();
+		}
+		categoryMasks = new byte[rhsStarts.length];
+		for (int c = 0; c < CATEGORY_CLASSES; c++) {
+			boolean[] reaching = liveStates(c);
+			for (int s = 0; s < reaching.length; s++) {
+				if (reaching[s]) {
+					categoryMasks[s] |= 1 << c;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fills {@link #categoryRanges}. The RHSes of the
+	 * {@link Interpret#ANY_CATEGORY} class are those of the RHS table, the
+	 * lists of the other classes are filtered copies appended after it, one
+	 * for every distinct range of the RHS table.
+	 *
+	 * @return the RHS table followed by the filtered lists
+	 */
+	private short[] partitionByCategory() {
+		IntList table = new IntList();
+		for (short rule : rhsTable) {
+			table.add(rule);
+		}
+		for (int c = 0; c < CATEGORY_CLASSES; c++) {
+			Map<Long, int[]> filtered = new HashMap<Long, int[]>();
+			for (int s = 0; s < rhsStarts.length; s++) {
+				int start = rhsStarts[s];
+				int end = rhsEnds[s];
+				int[] range;
+				if (c == Interpret.ANY_CATEGORY) {
+					range = new int[] { start, end };
+				} else {
+					Long key = (long) start << 32 | end;
+					range = filtered.get(key);
+					if (range == null) {
+						range = new int[] { table.size(), 0 };
+						for (int i = start; i < end; i++) {
+							if (Interpret.appliesTo(rules[rhsTable[i]], c)) {
+								table.add(rhsTable[i]);
+							}
+						}
+						range[1] = table.size();
+						filtered.put(key, range);
+					}
+				}
+				categoryRanges[(s * CATEGORY_CLASSES + c) * 2] = range[0];
+				categoryRanges[(s * CATEGORY_CLASSES + c) * 2 + 1] = range[1];
+			}
+		}
+		return table.toShortArray();
+	}
+
+	/**
+	 * @return the state reached from state on ch, or {@link #NO_STATE}
+	 */
+	public int next(int state, char ch) {
+		int low = transitionOffsets[state];
+		int high = transitionOffsets[state + 1] - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (ch > transitionHighs[mid]) {
+				low = mid + 1;
+			} else if (ch < transitionLows[mid]) {
+				high = mid - 1;
+			} else {
+				return transitionTargets[mid];
+			}
+		}
+		return NO_STATE;
+	}
+
+	/**
+	 * Reads the word, from its last character to its first if this automaton
+	 * is reverse, and stops as soon as no rule can match.
+	 * 
+	 * @return the state reached at the end of the word, or {@link #NO_STATE}
+	 */
+	public int walk(String word) {
+		int state = INITIAL_STATE;
+		if (reverse) {
+			for (int i = word.length() - 1; i >= 0 && state != NO_STATE; i--) {
+				state = next(state, word.charAt(i));
+			}
+		} else {
+			for (int i = 0; i < word.length() && state != NO_STATE; i++) {
+				state = next(state, word.charAt(i));
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * Reads the word like {@link #walk(String)}, but stops as soon as no rule
+	 * of the category class can match.
+	 *
+	 * @param categoryClass
+	 *            the category class of the word, see
+	 *            {@link Interpret#ANY_CATEGORY}
+	 * @return the state reached at the end of the word, or {@link #NO_STATE}
+	 */
+	public int walk(String word, int categoryClass) {
+		return walk(word, categoryClass, false);
+	}
+
+	/**
+	 * Reads the word like {@link #walk(String, int)}, in lower case if
+	 * foldCase is true, see {@link CaseFolding#fold(char)}.
+	 */
+	public int walk(String word, int categoryClass, boolean foldCase) {
+		int mask = 1 << categoryClass;
+		int state = INITIAL_STATE;
+		int length = word.length();
+		for (int i = 0; i < length; i++) {
+			if ((categoryMasks[state] & mask) == 0) {
+				return NO_STATE;
+			}
+			char ch = word.charAt(reverse ? length - 1 - i : i);
+			if (foldCase) {
+				ch = CaseFolding.fold(ch);
+			}
+			state = next(state, ch);
+			if (state == NO_STATE) {
+				return NO_STATE;
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * @return position in the RHS table of the first RHS of the state
+	 */
+	public int getRHSStart(int state) {
+		return rhsStarts[state];
+	}
+
+	/**
+	 * @return position in the RHS table after the last RHS of the state
+	 */
+	public int getRHSEnd(int state) {
+		return rhsEnds[state];
+	}
+
+	/**
+	 * @return position of the first RHS of the state applying to the
+	 *         category class, to be read with {@link #getRHS(int)}
+	 */
+	public int getRHSStart(int state, int categoryClass) {
+		return categoryRanges[(state * CATEGORY_CLASSES + categoryClass) * 2];
+	}
+
+	/**
+	 * @return position after the last RHS of the state applying to the
+	 *         category class
+	 */
+	public int getRHSEnd(int state, int categoryClass) {
+		return categoryRanges[(state * CATEGORY_CLASSES + categoryClass) * 2 + 1];
+	}
+
+	/**
+	 * @return the RHS stored at the given position of the RHS table, or of
+	 *         the RHS lists of a category class
+	 */
+	public RHS getRHS(int position) {
+		return rules[categoryTable[position]];
+	}
+
+	/**
+	 * @return the number of entries in the shared RHS table
+	 */
+	public int getRHSTableSize() {
+		return rhsTable.length;
+	}
+
+	/**
+	 * @return the RHS of the rule with the given pattern index
+	 */
+	public RHS getRule(int patternIndex) {
+		return rules[patternIndex];
+	}
+
+	/**
+	 * @return true if the rules listed by the states need no further
+	 *         validation of their pattern
+	 */
+	public boolean isExact() {
+		return exact;
+	}
+
+	/**
+	 * @return the sorted pattern indexes of the rules that are not compiled
+	 *         into an exact automaton; empty if the automaton is not exact
+	 */
+	public short[] getInexactRules() {
+		return inexactRules.clone();
+	}
+
+	/**
+	 * @return the number of rules that are not compiled into the automaton
+	 */
+	public int getInexactRuleCount() {
+		return inexactRules.length;
+	}
+
+	/**
+	 * @return the pattern index of the i-th rule that is not compiled into
+	 *         the automaton
+	 */
+	public short getInexactRule(int i) {
+		return inexactRules[i];
+	}
+
+	/**
+	 * @return the number of rules of the category class that are not
+	 *         compiled into the automaton
+	 */
+	public int getInexactRuleCount(int categoryClass) {
+		return categoryInexactRules[categoryClass].length;
+	}
+
+	/**
+	 * @return the pattern index of the i-th rule of the category class that
+	 *         is not compiled into the automaton
+	 */
+	public short getInexactRule(int categoryClass, int i) {
+		return categoryInexactRules[categoryClass][i];
+	}
+
+	/**
+	 * @return the words that are analysed without walking this automaton
+	 */
+	public LiteralTable getLiterals() {
+		return literals;
+	}
+
+	/**
+	 * @return true if the words are read from right to left
+	 */
+	public boolean isReverse() {
+		return reverse;
+	}
+
+	/**
+	 * @return the number of transitions of the state
+	 */
+	int getTransitionCount(int state) {
+		return transitionOffsets[state + 1] - transitionOffsets[state];
+	}
+
+	/**
+	 * @return the first character of the range of the i-th transition of the
+	 *         state, the ranges being in increasing order
+	 */
+	char getTransitionLow(int state, int i) {
+		return transitionLows[transitionOffsets[state] + i];
+	}
+
+	/**
+	 * @return the last character of the range of the i-th transition of the
+	 *         state
+	 */
+	char getTransitionHigh(int state, int i) {
+		return transitionHighs[transitionOffsets[state] + i];
+	}
+
+	/**
+	 * @return the target of the i-th transition of the state
+	 */
+	int getTransitionTarget(int state, int i) {
+		return transitionTargets[transitionOffsets[state] + i];
+	}
+
+	/**
+	 * @return the category classes whose rules can be reached from the state,
+	 *         bit <tt>1 << class</tt> being set for each of them
+	 */
+	int getCategoryMask(int state) {
+		return categoryMasks[state];
+	}
+
+	public int getStateCount() {
+		return rhsStarts.length;
+	}
+
+	/**
+	 * @return the number of transitions, each labelled with a range of
+	 *         characters
+	 */
+	public int getTransitionCount() {
+		return transitionTargets.length;
+	}
+
+	/**
+	 * Estimates the number of bytes used by the tables of this automaton,
+	 * assuming a 64 bit JVM with compressed references. The RHS objects
+	 * themselves are not counted as they are shared with the rule set.
+	 */
+	public long estimateHeapSize() {
+		long inexactSize = HeapSize.array(CATEGORY_CLASSES, HeapSize.REFERENCE);
+		for (short[] applying : categoryInexactRules) {
+			inexactSize += HeapSize.array(applying.length, 2);
+		}
+		return HeapSize.object(14 * HeapSize.REFERENCE + 2)
+				+ HeapSize.array(transitionOffsets.length, 4)
+				+ HeapSize.array(transitionLows.length, 2)
+				+ HeapSize.array(transitionHighs.length, 2)
+				+ HeapSize.array(transitionTargets.length, 4)
+				+ HeapSize.array(rhsStarts.length, 4)
+				+ HeapSize.array(rhsEnds.length, 4)
+				+ HeapSize.array(rhsTable.length, 2)
+				+ HeapSize.array(rules.length, HeapSize.REFERENCE)
+				+ HeapSize.array(inexactRules.length, 2)
+				+ HeapSize.array(categoryRanges.length, 4)
+				+ HeapSize.array(categoryTable.length, 2) + inexactSize
+				+ HeapSize.array(categoryMasks.length, 1)
+				+ literals.estimateHeapSize();
+	}
+
+	/**
+	 * Writes the tables of this automaton for {@link MorphSnapshot}. The
+	 * rules are not written.
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeBoolean(exact);
+		out.writeBoolean(reverse);
+		writeInts(out, transitionOffsets);
+		writeChars(out, transitionLows);
+		writeChars(out, transitionHighs);
+		writeInts(out, transitionTargets);
+		writeInts(out, rhsStarts);
+		writeInts(out, rhsEnds);
+		writeShorts(out, rhsTable);
+		writeShorts(out, inexactRules);
+		literals.write(out);
+	}
+
+	/**
+	 * Reads the tables written by {@link #write(DataOutput)}.
+	 * 
+	 * @param rules
+	 *            the RHS of every rule, indexed by pattern index
+	 */
+	static MorphAutomaton read(ByteBuffer in, RHS[] rules) {
+		boolean exact = in.get() != 0;
+		boolean reverse = in.get() != 0;
+		int[] transitionOffsets = readInts(in);
+		char[] transitionLows = readChars(in);
+		char[] transitionHighs = readChars(in);
+		int[] transitionTargets = readInts(in);
+		int[] rhsStarts = readInts(in);
+		int[] rhsEnds = readInts(in);
+		short[] rhsTable = readShorts(in);
+		short[] inexactRules = readShorts(in);
+		LiteralTable literals = LiteralTable.read(in);
+		return new MorphAutomaton(transitionOffsets, transitionLows,
+				transitionHighs, transitionTargets, rhsStarts, rhsEnds, rhsTable,
+				rules, exact, inexactRules, literals, reverse);
+	}
+
+	private static void writeInts(DataOutput out, int[] values)
+			throws IOException {
+		out.writeInt(values.length);
+		for (int value : values)
+			out.writeInt(value);
+	}
+
+	private static void writeChars(DataOutput out, char[] values)
+			throws IOException {
+		out.writeInt(values.length);
+		for (char value : values)
+			out.writeChar(value);
+	}
+
+	private static void writeShorts(DataOutput out, short[] values)
+			throws IOException {
+		out.writeInt(values.length);
+		for (short value : values)
+			out.writeShort(value);
+	}
+
+	private static int[] readInts(ByteBuffer in) {
+		int[] values = new int[in.getInt()];
+		in.asIntBuffer().get(values);
+		in.position(in.position() + 4 * values.length);
+		return values;
+	}
+
+	private static char[] readChars(ByteBuffer in) {
+		char[] values = new char[in.getInt()];
+		in.asCharBuffer().get(values);
+		in.position(in.position() + 2 * values.length);
+		return values;
+	}
+
+	private static short[] readShorts(ByteBuffer in) {
+		short[] values = new short[in.getInt()];
+		in.asShortBuffer().get(values);
+		in.position(in.position() + 2 * values.length);
+		return values;
+	}
+
+	/**
+	 * Merges the equivalent states of this automaton. Two states are
+	 * equivalent if they list the same RHSes and their transitions on every
+	 * character lead to equivalent states; adjacent ranges leading to
+	 * equivalent states are merged so that the ranges of a state do not
+	 * depend on how they were split. Transitions to states from which
+	 * no RHS can be reached are dropped first, as they only delay the
+	 * rejection of a word. Equal RHS lists are expected to share the same
+	 * range of the RHS table, as they do in the automata built by
+	 * {@link PatternCompiler}.
+	 * <p>
+	 * This is Hopcroft's algorithm, in the form given by Valmari and Lehtinen
+	 * for automata whose transitions are not defined on every character,
+	 * which runs in <tt>O(m log n)</tt> for <tt>m</tt> transitions and
+	 * <tt>n</tt> states. The characters are split into the intervals between
+	 * the bounds of the ranges, so that every range is a run of whole
+	 * intervals, and the transitions are split into one transition per
+	 * interval. Starting from the partition of the states by RHS list, the
+	 * blocks of states and the blocks of transitions with the same interval
+	 * leading into the same block of states are split by one another,
+	 * processing every block once, the larger part of a split block keeping
+	 * its place in the worklist and the smaller one being added at its end.
+	 * </p>
+	 *
+	 * @return an automaton with the fewest states giving every word the same
+	 *         RHSes as this one, sharing the RHS table, the literal table and
+	 *         the inexact rules of this one
+	 */
+	public MorphAutomaton minimize() {
+		int stateCount = getStateCount();
+		boolean[] live = liveStates();
+
+		// the bounds of the intervals of characters: every range of a live
+		// transition starts and ends at one of them
+		IntList boundList = new IntList();
+		for (int t = 0; t < transitionTargets.length; t++) {
+			if (live[transitionTargets[t]]) {
+				boundList.add(transitionLows[t]);
+				boundList.add(transitionHighs[t] + 1);
+			}
+		}
+		int[] bounds = boundList.toArray();
+		Arrays.sort(bounds);
+		int boundCount = 0;
+		for (int i = 0; i < bounds.length; i++) {
+			if (i == 0 || bounds[i] != bounds[i - 1]) {
+				bounds[boundCount++] = bounds[i];
+			}
+		}
+
+		// the live transitions, one per interval of their range
+		IntList tailList = new IntList();
+		IntList headList = new IntList();
+		IntList intervalList = new IntList();
+		for (int s = 0; s < stateCount; s++) {
+			for (int t = transitionOffsets[s]; t < transitionOffsets[s + 1]; t++) {
+				if (live[transitionTargets[t]]) {
+					int from = Arrays.binarySearch(bounds, 0, boundCount,
+							transitionLows[t]);
+					int to = Arrays.binarySearch(bounds, 0, boundCount,
+							transitionHighs[t] + 1);
+					for (int interval = from; interval < to; interval++) {
+						tailList.add(s);
+						headList.add(transitionTargets[t]);
+						intervalList.add(interval);
+					}
+				}
+			}
+		}
+		int[] tails = tailList.toArray();
+		int[] heads = headList.toArray();
+
+		// the transitions into every state, in compressed sparse row form
+		int[] incomingOffsets = new int[stateCount + 1];
+		for (int head : heads) {
+			incomingOffsets[head + 1]++;
+		}
+		for (int s = 0; s < stateCount; s++) {
+			incomingOffsets[s + 1] += incomingOffsets[s];
+		}
+		int[] incoming = new int[heads.length];
+		int[] fill = Arrays.copyOf(incomingOffsets, stateCount);
+		for (int t = 0; t < heads.length; t++) {
+			incoming[fill[heads[t]]++] = t;
+		}
+
+		// initial partition: the RHS list of the state
+		int[] initial = new int[stateCount];
+		Map<Long, Integer> rhsLists = new HashMap<Long, Integer>();
+		for (int s = 0; s < stateCount; s++) {
+			Long key = (long) rhsStarts[s] << 32 | rhsEnds[s];
+			Integer list = rhsLists.get(key);
+			if (list == null) {
+				list = rhsLists.size();
+				rhsLists.put(key, list);
+			}
+			initial[s] = list;
+		}
+		Partition states = new Partition(initial, rhsLists.size());
+		Partition cords = new Partition(intervalList.toArray(), Math.max(
+				boundCount - 1, 0));
+
+		// the blocks of transitions, or cords, start as all the transitions
+		// on an interval; the states of every block but the first are looked
+		// at once, as splitting by the cords of an interval splits the states
+		// by the first block as well as by any other
+		int b = 1;
+		for (int c = 0; c < cords.count; c++) {
+			for (int i = cords.first[c]; i < cords.past[c]; i++) {
+				states.mark(tails[cords.elements[i]]);
+			}
+			states.split();
+			for (; b < states.count; b++) {
+				for (int i = states.first[b]; i < states.past[b]; i++) {
+					int s = states.elements[i];
+					for (int j = incomingOffsets[s]; j < incomingOffsets[s + 1]; j++) {
+						cords.mark(incoming[j]);
+					}
+				}
+				cords.split();
+			}
+		}
+		int[] block = states.blocks;
+		int blockCount = states.count;
+
+		// number the blocks in breadth first order so that the block of the
+		// initial state stays the initial state and unreachable ones are left out
+		int[] ids = new int[blockCount];
+		Arrays.fill(ids, NO_STATE);
+		int[] representatives = new int[blockCount];
+		int reachable = 0;
+		ids[block[INITIAL_STATE]] = reachable;
+		representatives[reachable++] = INITIAL_STATE;
+		for (int i = 0; i < reachable; i++) {
+			int s = representatives[i];
+			for (int t = transitionOffsets[s]; t < transitionOffsets[s + 1]; t++) {
+				int target = transitionTargets[t];
+				if (live[target] && ids[block[target]] == NO_STATE) {
+					ids[block[target]] = reachable;
+					representatives[reachable++] = target;
+				}
+			}
+		}
+
+		int[] offsets = new int[reachable + 1];
+		IntList transitions = new IntList();
+		int[] starts = new int[reachable];
+		int[] ends = new int[reachable];
+		for (int i = 0; i < reachable; i++) {
+			int s = representatives[i];
+			offsets[i] = transitions.size() / 3;
+			for (int t = transitionOffsets[s]; t < transitionOffsets[s + 1]; t++) {
+				if (live[transitionTargets[t]]) {
+					addRange(transitions, transitionLows[t], transitionHighs[t],
+							ids[block[transitionTargets[t]]], offsets[i] * 3);
+				}
+			}
+			starts[i] = rhsStarts[s];
+			ends[i] = rhsEnds[s];
+		}
+		offsets[reachable] = transitions.size() / 3;
+
+		return fromTriples(offsets, transitions, starts, ends, rhsTable, rules,
+				exact, inexactRules, literals, reverse);
+	}
+
+	/**
+	 * @return the automaton whose transitions are given as low, high and
+	 *         target triples
+	 */
+	private static MorphAutomaton fromTriples(int[] transitionOffsets,
+			IntList transitions, int[] rhsStarts, int[] rhsEnds,
+			short[] rhsTable, RHS[] rules, boolean exact, short[] inexactRules,
+			LiteralTable literals, boolean reverse) {
+		int count = transitions.size() / 3;
+		char[] lows = new char[count];
+		char[] highs = new char[count];
+		int[] targets = new int[count];
+		for (int t = 0; t < count; t++) {
+			lows[t] = (char) transitions.get(3 * t);
+			highs[t] = (char) transitions.get(3 * t + 1);
+			targets[t] = transitions.get(3 * t + 2);
+		}
+		return new MorphAutomaton(transitionOffsets, lows, highs, targets,
+				rhsStarts, rhsEnds, rhsTable, rules, exact, inexactRules,
+				literals, reverse);
+	}
+
+	/**
+	 * Appends the transition to the list of low, high and target triples,
+	 * extending the last one instead if it ends just before low and has the
+	 * same target.
+	 *
+	 * @param first
+	 *            position in the list of the first triple of the state
+	 */
+	private static void addRange(IntList triples, int low, int high,
+			int target, int first) {
+		int last = triples.size() - 3;
+		if (last >= first && triples.get(last + 1) + 1 == low
+				&& triples.get(last + 2) == target) {
+			triples.set(last + 1, high);
+		} else {
+			triples.add(low);
+			triples.add(high);
+			triples.add(target);
+		}
+	}
+
+	/**
+	 * @return for every state, true if a state with RHSes can be reached from
+	 *         it
+	 */
+	private boolean[] liveStates() {
+		return liveStates(Interpret.ANY_CATEGORY);
+	}
+
+	/**
+	 * @return for every state, true if a state with RHSes applying to the
+	 *         category class can be reached from it
+	 */
+	private boolean[] liveStates(int categoryClass) {
+		int stateCount = getStateCount();
+		// predecessors of every state, in compressed sparse row form
+		int[] predecessorOffsets = new int[stateCount + 1];
+		for (int target : transitionTargets) {
+			predecessorOffsets[target + 1]++;
+		}
+		for (int s = 0; s < stateCount; s++) {
+			predecessorOffsets[s + 1] += predecessorOffsets[s];
+		}
+		int[] predecessors = new int[transitionTargets.length];
+		int[] fill = Arrays.copyOf(predecessorOffsets, stateCount);
+		for (int s = 0; s < stateCount; s++) {
+			for (int t = transitionOffsets[s]; t < transitionOffsets[s + 1]; t++) {
+				predecessors[fill[transitionTargets[t]]++] = s;
+			}
+		}
+
+		boolean[] live = new boolean[stateCount];
+		int[] queue = new int[stateCount];
+		int queued = 0;
+		for (int s = 0; s < stateCount; s++) {
+			if (getRHSEnd(s, categoryClass) > getRHSStart(s, categoryClass)) {
+				live[s] = true;
+				queue[queued++] = s;
+			}
+		}
+		for (int i = 0; i < queued; i++) {
+			int s = queue[i];
+			for (int p = predecessorOffsets[s]; p < predecessorOffsets[s + 1]; p++) {
+				if (!live[predecessors[p]]) {
+					live[predecessors[p]] = true;
+					queue[queued++] = predecessors[p];
+				}
+			}
+		}
+		return live;
+	}
+
+	/**
+	 * Partition of the integers from 0 to <tt>n - 1</tt> into blocks, refined
+	 * by marking some of the elements and splitting the marked elements of
+	 * every block from the others. The elements of a block are kept together
+	 * between <tt>first[block]</tt> and <tt>past[block]</tt> in elements, the
+	 * marked ones first.
+	 */
+	private static final class Partition {
+		/** the elements, block by block */
+		final int[] elements;
+
+		/** position of every element in elements */
+		private final int[] locations;
+
+		/** block of every element */
+		final int[] blocks;
+
+		/** position in elements of the first element of every block */
+		final int[] first;
+
+		/** position in elements after the last element of every block */
+		final int[] past;
+
+		/** number of marked elements of every block */
+		private final int[] marked;
+
+		/** the blocks with marked elements */
+		private final int[] touched;
+
+		private int touchedCount;
+
+		/** number of blocks */
+		int count;
+
+		/**
+		 * @param initial
+		 *            the initial block of every element, from 0 to
+		 *            <tt>blockCount - 1</tt>
+		 */
+		Partition(int[] initial, int blockCount) {
+			int n = initial.length;
+			// a split adds a block holding at least one element
+			int capacity = n + blockCount;
+			elements = new int[n];
+			locations = new int[n];
+			blocks = initial.clone();
+			first = new int[capacity];
+			past = new int[capacity];
+			marked = new int[capacity];
+			touched = new int[capacity];
+			count = blockCount;
+			for (int e = 0; e < n; e++) {
+				past[initial[e]]++;
+			}
+			for (int block = 0, start = 0; block < blockCount; block++) {
+				first[block] = start;
+				start += past[block];
+				past[block] = first[block];
+			}
+			for (int e = 0; e < n; e++) {
+				locations[e] = past[initial[e]]++;
+				elements[locations[e]] = e;
+			}
+		}
+
+		void mark(int e) {
+			int block = blocks[e];
+			int i = locations[e];
+			int j = first[block] + marked[block];
+			if (i < j) {
+				return;
+			}
+			elements[i] = elements[j];
+			locations[elements[i]] = i;
+			elements[j] = e;
+			locations[e] = j;
+			if (marked[block]++ == 0) {
+				touched[touchedCount++] = block;
+			}
+		}
+
+		/**
+		 * Splits the marked elements of every block with marked elements
+		 * from the others, the smaller part becoming a new block.
+		 */
+		void split() {
+			while (touchedCount > 0) {
+				int block = touched[--touchedCount];
+				int j = first[block] + marked[block];
+				marked[block] = 0;
+				if (j == past[block]) {
+					continue;
+				}
+				if (j - first[block] <= past[block] - j) {
+					first[count] = first[block];
+					past[count] = j;
+					first[block] = j;
+				} else {
+					first[count] = j;
+					past[count] = past[block];
+					past[block] = j;
+				}
+				for (int i = first[count]; i < past[count]; i++) {
+					blocks[elements[i]] = count;
+				}
+				count++;
+			}
+		}
+	}
+
+	/**
+	 * Growable array of ints.
+	 */
+	private static class IntList {
+		private int[] values = new int[16];
+
+		private int size;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		void clear() {
+			size = 0;
+		}
+
+		int size() {
+			return size;
+		}
+
+		int get(int index) {
+			return values[index];
+		}
+
+		void set(int index, int value) {
+			values[index] = value;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+
+		short[] toShortArray() {
+			short[] shorts = new short[size];
+			for (int i = 0; i < size; i++) {
+				shorts[i] = (short) values[i];
+			}
+			return shorts;
+		}
+	}
+}
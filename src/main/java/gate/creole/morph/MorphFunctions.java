@@ -11,6 +11,9 @@ package gate.creole.morph;
 
 public class MorphFunctions {
 
+  /** Affix reported when a rule does not set one */
+  public static final String NO_AFFIX = " ";
+
   /** The word for which the program should find the root and the affix */
   private String input;
   /** Affix to the root word */
@@ -32,7 +35,7 @@ public class MorphFunctions {
    */
   public String getAffix() {
     if(affix==null) {
-      return " ";
+      return NO_AFFIX;
     } else {
       return affix;
     }
@@ -55,12 +58,20 @@ public class MorphFunctions {
    * <BR> and returns this new string
    */
   public String stem(int del, String add, String affix) {
-    int stem_length = len - del;
-    String result = this.input.substring(0,stem_length)+add;
+    String result = stem(this.input, del, add);
     this.affix = affix;
     return result;
   } // method stem()
 
+  /**
+   * Stateless version of {@link #stem(int, String, String)}, returns the root
+   * of the given input
+   */
+  public static String stem(String input, int del, String add) {
+    int stem_length = input.length() - del;
+    return input.substring(0,stem_length)+add;
+  }
+
 
   /**
    * Deletes the "del" given number of characters from right,
@@ -68,30 +79,55 @@ public class MorphFunctions {
    * <BR> and returns this new string
    */
   public String semi_reg_stem(int del, String add) {
-    int stem_length = len - del;
-    int inputLength = len;
-
-    /* look for -es, -ed, -ing; cannot be anything else */
-    if(input.charAt(inputLength-1) == 's' || input.charAt(inputLength-1) == 'S') {
-      stem_length-=2;
-      this.affix = "s";
+    String result = semiRegStem(input, del, add);
+    String found = semiRegStemAffix(input);
+    if(found != NO_AFFIX) {
+      this.affix = found;
     }
+    return result;
+  } // method semi_reg_stem()
 
+  /**
+   * Stateless version of {@link #semi_reg_stem(int, String)}, returns the
+   * root of the given input
+   */
+  public static String semiRegStem(String input, int del, String add) {
+    return input.substring(0,semiRegStemLength(input, del))+add;
+  }
 
-    if(input.charAt(inputLength-1) == 'd' || input.charAt(inputLength-1) == 'D') {
-      stem_length-=2;
-      this.affix = "ed";
-    }
-
+  /**
+   * Returns the number of characters of the input kept by
+   * {@link #semiRegStem(String, int, String)}
+   */
+  static int semiRegStemLength(String input, int del) {
+    int inputLength = input.length();
+    int stem_length = inputLength - del;
 
-    if(input.charAt(inputLength-1) == 'g' || input.charAt(inputLength-1) == 'G') {
+    /* look for -es, -ed, -ing; cannot be anything else */
+    char last = input.charAt(inputLength-1);
+    if(last == 's' || last == 'S' || last == 'd' || last == 'D') {
+      stem_length-=2;
+    } else if(last == 'g' || last == 'G') {
       stem_length-=3;
-      this.affix = "ing";
     }
+    return stem_length;
+  }
 
-    String result = input.substring(0,stem_length)+add;
-    return result;
-  } // method semi_reg_stem()
+  /**
+   * Returns the affix {@link #semi_reg_stem(int, String)} finds for the
+   * given input, or {@link #NO_AFFIX}
+   */
+  public static String semiRegStemAffix(String input) {
+    char last = input.charAt(input.length()-1);
+    if(last == 's' || last == 'S') {
+      return "s";
+    } else if(last == 'd' || last == 'D') {
+      return "ed";
+    } else if(last == 'g' || last == 'G') {
+      return "ing";
+    }
+    return NO_AFFIX;
+  }
 
 
   /**
@@ -0,0 +1,356 @@
+package gate.creole.morph;
+
+import gate.creole.ResourceInstantiationException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ * Title: MorphLemmatizer.java
+ * </p>
+ * <p>
+ * Description: Command line lemmatizer for large token dumps, which does not
+ * need GATE to be initialised. It reads lines of the form
+ * <tt>word&lt;TAB&gt;POS</tt> from a file or from the standard input, and
+ * writes <tt>word&lt;TAB&gt;POS&lt;TAB&gt;root&lt;TAB&gt;affix</tt> lines to
+ * the standard output, in the order of the input. A line without POS is
+ * analysed for any category and a blank line is copied as it is. The lines
+ * are read in batches, which are analysed in parallel with
+ * {@link Interpret#analyse(String[], String[], int, int, boolean, String[], String[])}
+ * and written as soon as the batches before them are written, so that only
+ * a few batches are ever held in memory. The throughput and the latency of
+ * the batches are reported on the standard error.
+ * </p>
+ */
+public final class MorphLemmatizer {
+
+	/** default number of lines analysed together */
+	public static final int DEFAULT_BATCH_SIZE = 4096;
+
+	/** size of the input and output buffers */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Interpret interpret;
+
+	private final boolean ignoreCase;
+
+	private final int threads;
+
+	private final int batchSize;
+
+	private long lines;
+
+	private long found;
+
+	private long batches;
+
+	private long totalLatency;
+
+	private long maxLatency;
+
+	/**
+	 * A batch of lines, analysed by a thread of the pool and then written
+	 * out by the reading thread.
+	 */
+	private class Batch implements Callable<Batch> {
+		final String[] words;
+
+		final String[] tags;
+
+		final String[] categories;
+
+		final int size;
+
+		final long submitted = System.nanoTime();
+
+		/** the output lines, set once analysed */
+		String output;
+
+		int batchFound;
+
+		long latency;
+
+		Batch(String[] words, String[] tags, String[] categories, int size) {
+			this.words = words;
+			this.tags = tags;
+			this.categories = categories;
+			this.size = size;
+		}
+
+		@Override
+		public Batch call() {
+			String[] roots = new String[size];
+			String[] affixes = new String[size];
+			batchFound = interpret.analyse(words, categories, 0, size, ignoreCase,
+					roots, affixes);
+			StringBuilder out = new StringBuilder(size * 32);
+			for (int i = 0; i < size; i++) {
+				if (tags[i] == null) {
+					// blank line
+					out.append('\n');
+					continue;
+				}
+				out.append(words[i]).append('\t').append(tags[i]).append('\t')
+						.append(roots[i]).append('\t');
+				if (affixes[i] != null) {
+					out.append(affixes[i]);
+				}
+				out.append('\n');
+			}
+			output = out.toString();
+			latency = System.nanoTime() - submitted;
+			return this;
+		}
+	}
+
+	/**
+	 * @param interpret
+	 *            the rules to analyse the words with
+	 * @param ignoreCase
+	 *            true to analyse the words in lower case
+	 * @param threads
+	 *            number of threads analysing the batches
+	 * @param batchSize
+	 *            number of lines analysed together
+	 */
+	public MorphLemmatizer(Interpret interpret, boolean ignoreCase,
+			int threads, int batchSize) {
+		if (threads < 1 || batchSize < 1) {
+			throw new IllegalArgumentException(
+					"The threads and the batch size must be positive");
+		}
+		this.interpret = interpret;
+		this.ignoreCase = ignoreCase;
+		this.threads = threads;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Analyses all the lines of the input and writes them to the output,
+	 * which is flushed but not closed.
+	 */
+	public void run(BufferedReader in, Writer out) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		// enough batches in flight to keep every thread busy while the
+		// oldest one is written
+		int maxPending = threads * 2;
+		Deque<Future<Batch>> pending = new ArrayDeque<Future<Batch>>();
+		try {
+			Batch batch;
+			while ((batch = read(in)) != null) {
+				pending.add(pool.submit(batch));
+				if (pending.size() >= maxPending) {
+					write(pending.remove(), out);
+				}
+			}
+			while (!pending.isEmpty()) {
+				write(pending.remove(), out);
+			}
+			out.flush();
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return the next batch of lines, null at the end of the input
+	 */
+	private Batch read(BufferedReader in) throws IOException {
+		String[] words = new String[batchSize];
+		String[] tags = new String[batchSize];
+		String[] categories = new String[batchSize];
+		int size = 0;
+		String line;
+		while (size < batchSize && (line = in.readLine()) != null) {
+			if (line.length() > 0) {
+				int tab = line.indexOf('\t');
+				if (tab < 0) {
+					words[size] = line;
+					tags[size] = "";
+					categories[size] = "*";
+				} else {
+					words[size] = line.substring(0, tab);
+					// further columns are dropped
+					int end = line.indexOf('\t', tab + 1);
+					tags[size] = line.substring(tab + 1, end < 0 ? line.length()
+							: end);
+					categories[size] = tags[size];
+				}
+			} else {
+				// no category, so no rule is tried
+				words[size] = "";
+				tags[size] = null;
+				categories[size] = "";
+			}
+			size++;
+		}
+		return size == 0 ? null : new Batch(words, tags, categories, size);
+	}
+
+	private void write(Future<Batch> future, Writer out) throws IOException {
+		Batch batch;
+		try {
+			batch = future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while analysing the words", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Could not analyse the words", e.getCause());
+		}
+		out.write(batch.output);
+		lines += batch.size;
+		found += batch.batchFound;
+		batches++;
+		totalLatency += batch.latency;
+		maxLatency = Math.max(maxLatency, batch.latency);
+	}
+
+	/**
+	 * @return the number of lines written
+	 */
+	public long getLines() {
+		return lines;
+	}
+
+	/**
+	 * @return the number of words a rule or the lexicon was applied to
+	 */
+	public long getFound() {
+		return found;
+	}
+
+	/**
+	 * @return the average milliseconds between the reading of a batch and the
+	 *         end of its analysis
+	 */
+	public double getAverageLatencyMillis() {
+		return batches == 0 ? 0 : totalLatency / 1e6 / batches;
+	}
+
+	/**
+	 * @return the longest milliseconds between the reading of a batch and the
+	 *         end of its analysis
+	 */
+	public double getMaxLatencyMillis() {
+		return maxLatency / 1e6;
+	}
+
+	/**
+	 * Loads the rules from their snapshot if it is up to date, or by parsing
+	 * and compiling them.
+	 */
+	static Interpret loadRules(URL rulesURL) throws IOException,
+			ResourceInstantiationException {
+		Interpret interpret = new Interpret();
+		if (!interpret.initFromSnapshot(rulesURL)) {
+			interpret.init(rulesURL);
+			if (!interpret.determinize()) {
+				interpret.getFrozenFSM();
+			}
+		}
+		return interpret;
+	}
+
+	private static void usage() {
+		System.err.println("Usage: MorphLemmatizer [-rules <rules file>] "
+				+ "[-lexicon <word list directory>] [-threads <n>] "
+				+ "[-batch <lines>] [-ignoreCase] [<input file>]");
+		System.exit(1);
+	}
+
+	/**
+	 * Lemmatizes the <tt>word&lt;TAB&gt;POS</tt> lines of a file, or of the
+	 * standard input if none is given, with the default rules unless others
+	 * are given.
+	 */
+	public static void main(String[] args) throws IOException,
+			ResourceInstantiationException {
+		URL rulesURL = MorphLemmatizer.class
+				.getResource("/resources/morph/default.rul");
+		URL lexiconURL = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int batchSize = DEFAULT_BATCH_SIZE;
+		boolean ignoreCase = false;
+		File input = null;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-rules") && i + 1 < args.length) {
+					rulesURL = new File(args[++i]).toURI().toURL();
+				} else if (args[i].equals("-lexicon") && i + 1 < args.length) {
+					lexiconURL = new File(args[++i]).toURI().toURL();
+				} else if (args[i].equals("-threads") && i + 1 < args.length) {
+					threads = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-batch") && i + 1 < args.length) {
+					batchSize = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-ignoreCase")) {
+					ignoreCase = true;
+				} else if (input == null && !args[i].startsWith("-")) {
+					input = new File(args[i]);
+				} else {
+					usage();
+				}
+			}
+		} catch (NumberFormatException e) {
+			usage();
+		}
+		if (rulesURL == null || threads < 1 || batchSize < 1) {
+			usage();
+		}
+
+		long start = System.nanoTime();
+		Interpret interpret = loadRules(rulesURL);
+		if (lexiconURL != null) {
+			MorphLexicon lexicon = new MorphLexicon(lexiconURL);
+			lexicon.load();
+			interpret.setLexicon(lexicon);
+		}
+		long loaded = System.nanoTime();
+		System.err.println(String.format("Loaded the rules of %s in %.0f ms",
+				rulesURL, (loaded - start) / 1e6));
+
+		ReadableByteChannel channel = input == null ? Channels
+				.newChannel(System.in) : new FileInputStream(input).getChannel();
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		BufferedReader in = new BufferedReader(Channels.newReader(channel,
+				decoder, BUFFER_SIZE), BUFFER_SIZE);
+		Writer out = new BufferedWriter(Channels.newWriter(
+				Channels.newChannel(System.out), StandardCharsets.UTF_8.newEncoder(),
+				BUFFER_SIZE), BUFFER_SIZE);
+		MorphLemmatizer lemmatizer = new MorphLemmatizer(interpret, ignoreCase,
+				threads, batchSize);
+		try {
+			lemmatizer.run(in, out);
+		} finally {
+			in.close();
+		}
+
+		double seconds = (System.nanoTime() - loaded) / 1e9;
+		System.err.println(String.format(
+				"Lemmatized %d lines in %.2f s with %d threads, %.0f lines/s, "
+						+ "%d found; batch latency %.2f ms average, %.2f ms max",
+				lemmatizer.getLines(), seconds, threads, seconds == 0 ? 0
+						: lemmatizer.getLines() / seconds, lemmatizer.getFound(),
+				lemmatizer.getAverageLatencyMillis(), lemmatizer
+						.getMaxLatencyMillis()));
+	}
+}
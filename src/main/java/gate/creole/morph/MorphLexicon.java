@@ -0,0 +1,380 @@
+package gate.creole.morph;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Title: MorphLexicon.java
+ * </p>
+ * <p>
+ * Description: Lexicon of known word forms and their lemmas, read from the
+ * <tt>verb.dat</tt>, <tt>noun.dat</tt>, <tt>adj.dat</tt> and
+ * <tt>adv.dat</tt> word lists of a directory, whose lines are of the form
+ * <tt>abetted ==&gt; abet</tt>. An {@link Interpret} given a lexicon looks
+ * the words up in it before matching them against the rules, so that the
+ * known forms are answered by a single hash lookup and the rules are only
+ * the fallback for the unknown words. The forms of <tt>verb.dat</tt> apply
+ * to the verb category class, those of <tt>noun.dat</tt> to the noun
+ * category class, and all of them to the words of any category, the earlier
+ * lists taking precedence. The word lists have no affixes: a form gets
+ * the lemma of the list and the affix of the rule the rules apply to it,
+ * which {@link #resolve(Interpret)} finds once for all the forms when the
+ * lexicon is given to the rules. The lemma of the list wins over the root
+ * of the rules, as for <tt>leaves</tt>, a form of both <tt>leaf</tt> and
+ * <tt>leave</tt>.
+ * </p>
+ * <p>
+ * The word lists are read by {@link #load()}, or when the lexicon is given
+ * to the rules, into an open addressing hash table like
+ * {@link LiteralTable}, immutable once built, so a lexicon can be shared by
+ * any number of threads.
+ * </p>
+ */
+public class MorphLexicon {
+
+	/** the word lists, in order of precedence */
+	static final String[] WORD_LISTS = { "verb.dat", "noun.dat", "adj.dat",
+			"adv.dat" };
+
+	/** the category class of the forms of each word list */
+	private static final int[] LIST_CATEGORIES = { Interpret.VERB_CATEGORY,
+			Interpret.NOUN_CATEGORY, Interpret.ANY_CATEGORY,
+			Interpret.ANY_CATEGORY };
+
+	/** number of category classes stored for every form */
+	private static final int CATEGORY_CLASSES = 3;
+
+	private final URL directory;
+
+	/** the table, null until it is read */
+	private volatile Table table;
+
+	/**
+	 * The forms and their lemmas for each category class.
+	 */
+	private static class Table {
+		/** the forms, null for an empty slot */
+		final String[] keys;
+
+		/** the lemma of every category class of every slot, or null */
+		final String[] lemmas;
+
+		final int size;
+
+		Table(Map<String, String[]> forms) {
+			// keep the load factor at or below one half
+			int capacity = 2;
+			while (capacity < forms.size() * 2) {
+				capacity <<= 1;
+			}
+			keys = new String[capacity];
+			lemmas = new String[capacity * CATEGORY_CLASSES];
+			for (Map.Entry<String, String[]> entry : forms.entrySet()) {
+				int slot = slot(entry.getKey(), capacity);
+				while (keys[slot] != null) {
+					slot = (slot + 1) & (capacity - 1);
+				}
+				keys[slot] = entry.getKey();
+				System.arraycopy(entry.getValue(), 0, lemmas, slot
+						* CATEGORY_CLASSES, CATEGORY_CLASSES);
+			}
+			size = forms.size();
+		}
+
+		/**
+		 * @return the position of the lemma of the word for the category
+		 *         class in {@link #lemmas}, -1 if it has none
+		 */
+		int find(String word, int categoryClass, boolean foldCase) {
+			int h;
+			if (foldCase) {
+				h = 0;
+				for (int i = 0; i < word.length(); i++) {
+					h = 31 * h + CaseFolding.fold(word.charAt(i));
+				}
+			} else {
+				h = word.hashCode();
+			}
+			h ^= (h >>> 16);
+			int slot = h & (keys.length - 1);
+			String key;
+			while ((key = keys[slot]) != null) {
+				if (foldCase ? equalsIgnoringCase(key, word) : key.equals(word)) {
+					int index = slot * CATEGORY_CLASSES + categoryClass;
+					return lemmas[index] == null ? -1 : index;
+				}
+				slot = (slot + 1) & (keys.length - 1);
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * The affixes and the rules the rules of an {@link Interpret} give the
+	 * forms of a lexicon, along with their lemmas, see
+	 * {@link MorphLexicon#resolve(Interpret)}. Immutable.
+	 */
+	static final class Analyses {
+		private final Table table;
+
+		/** the affix of every lemma of the table, null if no rule applies */
+		private final String[] affixes;
+
+		/** the pattern index of the rule giving every affix, -1 if none */
+		private final int[] patternIndexes;
+
+		private Analyses(Table table, String[] affixes, int[] patternIndexes) {
+			this.table = table;
+			this.affixes = affixes;
+			this.patternIndexes = patternIndexes;
+		}
+
+		/**
+		 * Looks the word up for the category class and stores its lemma, with
+		 * the affix and the pattern index the rules give it, in the result if
+		 * it is in the lexicon, see {@link MorphResult#isFromLexicon()}.
+		 *
+		 * @param foldCase
+		 *            true if the word is ASCII and is to be looked up in lower
+		 *            case, see {@link CaseFolding}
+		 * @return true if the word is in the lexicon
+		 */
+		boolean find(String word, int categoryClass, boolean foldCase,
+				MorphResult result) {
+			int index = table.find(word, categoryClass, foldCase);
+			if (index < 0) {
+				return false;
+			}
+			result.set(table.lemmas[index], affixes[index],
+					patternIndexes[index], true);
+			return true;
+		}
+	}
+
+	/**
+	 * @param directory
+	 *            the directory of the word lists
+	 */
+	public MorphLexicon(URL directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @return the directory of the word lists
+	 */
+	public URL getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Reads the word lists unless they have already been read. Called when
+	 * the lexicon is given to the rules, but can be called beforehand to
+	 * report a missing directory as an {@link IOException}.
+	 *
+	 * @throws IOException
+	 *             if none of the word lists can be found in the directory, or
+	 *             one of them cannot be read
+	 */
+	public void load() throws IOException {
+		if (table == null) {
+			synchronized (this) {
+				if (table == null) {
+					table = read();
+				}
+			}
+		}
+	}
+
+	private Table read() throws IOException {
+		Map<String, String[]> forms = new LinkedHashMap<String, String[]>();
+		// the same lemma is shared by all its forms
+		Map<String, String> lemmas = new HashMap<String, String>();
+		String base = directory.toExternalForm();
+		URL baseURL = base.endsWith("/") ? directory : new URL(base + "/");
+		int found = 0;
+		for (int list = 0; list < WORD_LISTS.length; list++) {
+			URL listURL = new URL(baseURL, WORD_LISTS[list]);
+			BufferedReader reader;
+			try {
+				reader = new BufferedReader(new InputStreamReader(
+						listURL.openStream(), StandardCharsets.UTF_8));
+			} catch (FileNotFoundException e) {
+				// a directory may only provide some of the word lists
+				continue;
+			}
+			found++;
+			try {
+				String line;
+				int number = 0;
+				while ((line = reader.readLine()) != null) {
+					number++;
+					line = line.trim();
+					if (line.length() == 0) {
+						continue;
+					}
+					int arrow = line.indexOf("==>");
+					if (arrow <= 0) {
+						throw new IOException("Line " + number + " of " + listURL
+								+ " is not of the form: form ==> lemma");
+					}
+					String form = line.substring(0, arrow).trim();
+					// a few forms list several lemmas, the first one is kept
+					int end = line.indexOf("==>", arrow + 3);
+					String lemma = line.substring(arrow + 3,
+							end < 0 ? line.length() : end).trim();
+					String shared = lemmas.get(lemma);
+					if (shared == null) {
+						lemmas.put(lemma, lemma);
+						shared = lemma;
+					}
+					add(forms, form, shared, LIST_CATEGORIES[list]);
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		if (found == 0) {
+			throw new FileNotFoundException("No word list in " + directory);
+		}
+		return new Table(forms);
+	}
+
+	/**
+	 * Adds the lemma of the form for the category class and for any category,
+	 * unless the form already has one from an earlier line.
+	 */
+	private static void add(Map<String, String[]> forms, String form,
+			String lemma, int categoryClass) {
+		String[] formLemmas = forms.get(form);
+		if (formLemmas == null) {
+			formLemmas = new String[CATEGORY_CLASSES];
+			forms.put(form, formLemmas);
+		}
+		if (formLemmas[categoryClass] == null) {
+			formLemmas[categoryClass] = lemma;
+		}
+		if (formLemmas[Interpret.ANY_CATEGORY] == null) {
+			formLemmas[Interpret.ANY_CATEGORY] = lemma;
+		}
+	}
+
+	private static int slot(String word, int capacity) {
+		int h = word.hashCode();
+		h ^= (h >>> 16);
+		return h & (capacity - 1);
+	}
+
+	private Table table() {
+		Table loaded = table;
+		if (loaded == null) {
+			try {
+				load();
+			} catch (IOException e) {
+				throw new UncheckedIOException("Could not read the lexicon in "
+						+ directory, e);
+			}
+			loaded = table;
+		}
+		return loaded;
+	}
+
+	/**
+	 * Reads the word lists if they have not been read yet and applies the
+	 * rules to every form, for every category class it has a lemma for,
+	 * keeping the affix and the pattern index of the rule that applies.
+	 *
+	 * @return the lemmas, affixes and rules of the forms for these rules
+	 */
+	Analyses resolve(Interpret rules) {
+		Table table = table();
+		String[] affixes = new String[table.lemmas.length];
+		int[] patternIndexes = new int[table.lemmas.length];
+		MorphResult result = new MorphResult();
+		for (int index = 0; index < table.lemmas.length; index++) {
+			if (table.lemmas[index] != null) {
+				rules.applyRules(table.keys[index / CATEGORY_CLASSES], index
+						% CATEGORY_CLASSES, result);
+				affixes[index] = result.getAffix();
+				patternIndexes[index] = result.getPatternIndex();
+			}
+		}
+		return new Analyses(table, affixes, patternIndexes);
+	}
+
+	private static boolean equalsIgnoringCase(String key, String word) {
+		if (key.length() != word.length()) {
+			return false;
+		}
+		for (int i = 0; i < key.length(); i++) {
+			if (key.charAt(i) != CaseFolding.fold(word.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the lemma of the word for the category of the given POS tag,
+	 *         or null if it is not in the lexicon
+	 */
+	public String getLemma(String word, String category) {
+		int categoryClass = Interpret.categoryClass(category);
+		if (categoryClass == Interpret.NO_CATEGORY) {
+			return null;
+		}
+		Table table = table();
+		int index = table.find(word, categoryClass, false);
+		return index < 0 ? null : table.lemmas[index];
+	}
+
+	/**
+	 * @return the number of forms in the lexicon, reading the word lists if
+	 *         they have not been read yet
+	 */
+	public int size() {
+		return table().size;
+	}
+
+	/**
+	 * @return true if the word lists have been read
+	 */
+	public boolean isLoaded() {
+		return table != null;
+	}
+
+	/**
+	 * Estimates the number of bytes used by the table, its forms and lemmas.
+	 */
+	public long estimateHeapSize() {
+		Table table = table();
+		long bytes = HeapSize.object(2 * HeapSize.REFERENCE + 4)
+				+ HeapSize.array(table.keys.length, HeapSize.REFERENCE)
+				+ HeapSize.array(table.lemmas.length, HeapSize.REFERENCE);
+		Map<String, Boolean> lemmas = new HashMap<String, Boolean>();
+		for (String lemma : table.lemmas) {
+			if (lemma != null) {
+				lemmas.put(lemma, Boolean.TRUE);
+			}
+		}
+		for (String key : table.keys) {
+			if (key != null) {
+				bytes += HeapSize.object(HeapSize.REFERENCE + 4)
+						+ HeapSize.array(key.length(), 2);
+			}
+		}
+		for (String lemma : lemmas.keySet()) {
+			bytes += HeapSize.object(HeapSize.REFERENCE + 4)
+					+ HeapSize.array(lemma.length(), 2);
+		}
+		return bytes;
+	}
+}
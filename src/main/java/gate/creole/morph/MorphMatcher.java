@@ -0,0 +1,279 @@
+package gate.creole.morph;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Title: MorphMatcher.java
+ * </p>
+ * <p>
+ * Description: Base class of the matchers generated by
+ * {@link MorphMatcherGenerator}, which turn the compiled {@link MorphAutomaton}
+ * of a rule file into Java code: the transitions of every state are a
+ * <tt>switch</tt> on the character, and the rules reached by every state are
+ * inlined as calls to the static equivalents of the {@link MorphFunctions},
+ * so that the JIT compiles the rules down to straight code. A generated
+ * matcher gives the same results as
+ * {@link Interpret#analyse(String, String, MorphResult)} and
+ * {@link Interpret#analyseIgnoringCase(String, String, MorphResult)} on the
+ * rules it was generated from, and like them can be used by any number of
+ * threads. This class holds what is not worth generating: the literal table,
+ * the patterns of the rules that must be checked with their regular
+ * expression, and the walk of the automaton.
+ * </p>
+ */
+public abstract class MorphMatcher {
+
+	/** returned by {@link #next(int, char)} when there is no transition */
+	protected static final int NO_STATE = MorphAutomaton.NO_STATE;
+
+	private final String rulesHash;
+
+	private final boolean reverse;
+
+	/** the category classes reachable from every state, as '0' + mask */
+	private final String categoryMasks;
+
+	private final LiteralTable literals;
+
+	/** the inexact rules applying to each category class */
+	private final short[][] inexactRules;
+
+	/** the patterns of the rules checked with their regular expression */
+	private final LazyPatternList patterns;
+
+	/**
+	 * @param rulesHash
+	 *            hex SHA-256 hash of the rule file, null if unknown
+	 * @param reverse
+	 *            true if the words are read from right to left
+	 * @param categoryMasks
+	 *            the category classes whose rules can be reached from every
+	 *            state, one <tt>'0' + mask</tt> character per state, split in
+	 *            chunks
+	 * @param literals
+	 *            the lines <tt>word TAB any TAB verb TAB noun</tt> of the
+	 *            literal table, split in chunks
+	 * @param inexactRules
+	 *            the inexact rules applying to each category class
+	 * @param regExps
+	 *            the patterns of the rules, null for those that are never
+	 *            checked
+	 */
+	protected MorphMatcher(String rulesHash, boolean reverse,
+			String[] categoryMasks, String[] literals, short[][] inexactRules,
+			String[] regExps) {
+		this.rulesHash = rulesHash;
+		this.reverse = reverse;
+		StringBuilder masks = new StringBuilder();
+		for (String chunk : categoryMasks) {
+			masks.append(chunk);
+		}
+		this.categoryMasks = masks.toString();
+		Map<String, short[]> entries = new HashMap<String, short[]>();
+		for (String chunk : literals) {
+			for (String line : chunk.split("\n")) {
+				if (line.length() == 0) {
+					continue;
+				}
+				String[] fields = line.split("\t", -1);
+				short[] rules = new short[LiteralTable.CATEGORY_CLASSES];
+				for (int c = 0; c < rules.length; c++) {
+					rules[c] = Short.parseShort(fields[c + 1]);
+				}
+				entries.put(fields[0], rules);
+			}
+		}
+		this.literals = new LiteralTable(entries);
+		this.inexactRules = inexactRules;
+		this.patterns = new LazyPatternList(regExps);
+	}
+
+	/**
+	 * @return the state reached from state on ch, or {@link #NO_STATE}
+	 */
+	protected abstract int next(int state, char ch);
+
+	/**
+	 * Applies the first rule of the category class that matches the word
+	 * among those reached by the state.
+	 *
+	 * @return true if a rule was applied and the result set
+	 */
+	protected abstract boolean applyRules(int state, int categoryClass,
+			String word, boolean foldCase, MorphResult result);
+
+	/**
+	 * Applies the rule with the given pattern index, which is known to match
+	 * the word.
+	 *
+	 * @return true if the rule was applied and the result set
+	 */
+	protected abstract boolean apply(int patternIndex, String word,
+			boolean foldCase, MorphResult result);
+
+	/**
+	 * @return the hex SHA-256 hash of the rule file this matcher was
+	 *         generated from, null if unknown
+	 */
+	public String getRulesHash() {
+		return rulesHash;
+	}
+
+	/**
+	 * @return true if this matcher was generated from the current content of
+	 *         the rule file
+	 */
+	public boolean isGeneratedFrom(URL rulesURL) throws IOException {
+		return rulesHash != null
+				&& rulesHash.equals(MorphMatcherGenerator.hex(MorphSnapshot
+						.sourceHash(rulesURL)));
+	}
+
+	/**
+	 * Same as {@link Interpret#analyse(String, String, MorphResult)}.
+	 */
+	public boolean analyse(String word, String category, MorphResult result) {
+		return analyse(word, Interpret.categoryClass(category), false, result);
+	}
+
+	/**
+	 * Same as
+	 * {@link Interpret#analyseIgnoringCase(String, String, MorphResult)}.
+	 */
+	public boolean analyseIgnoringCase(String word, String category,
+			MorphResult result) {
+		return analyse(word, Interpret.categoryClass(category), true, result);
+	}
+
+	private boolean analyse(String word, int categoryClass, boolean ignoreCase,
+			MorphResult result) {
+		if (ignoreCase) {
+			int kind = CaseFolding.classify(word);
+			if (kind == CaseFolding.FOLDABLE) {
+				if (categoryClass != Interpret.NO_CATEGORY
+						&& analyseClass(word, categoryClass, true, result)) {
+					return true;
+				}
+				result.set(CaseFolding.lowerCase(word, word.length(), "",
+						result), null, -1);
+				return false;
+			}
+			if (kind != CaseFolding.LOWER_CASE) {
+				word = word.toLowerCase();
+			}
+		}
+		result.set(word, null, -1);
+		return categoryClass != Interpret.NO_CATEGORY
+				&& analyseClass(word, categoryClass, false, result);
+	}
+
+	private boolean analyseClass(String word, int categoryClass,
+			boolean foldCase, MorphResult result) {
+		short[] inexact = inexactRules[categoryClass];
+		int slot = foldCase ? literals.findIgnoringCase(word) : literals
+				.find(word);
+		if (slot >= 0) {
+			short rule = literals.getRule(slot, categoryClass);
+			for (int i = 0; i < inexact.length
+					&& (rule == LiteralTable.NO_RULE || inexact[i] < rule); i++) {
+				if (matches(inexact[i], word, foldCase)
+						&& apply(inexact[i], word, foldCase, result)) {
+					return true;
+				}
+			}
+			return rule != LiteralTable.NO_RULE
+					&& apply(rule, word, foldCase, result);
+		}
+
+		int state = walk(word, categoryClass, foldCase);
+		if (state != NO_STATE) {
+			return applyRules(state, categoryClass, word, foldCase, result);
+		}
+		for (int i = 0; i < inexact.length; i++) {
+			if (matches(inexact[i], word, foldCase)
+					&& apply(inexact[i], word, foldCase, result)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the word like {@link MorphAutomaton#walk(String, int, boolean)}.
+	 */
+	private int walk(String word, int categoryClass, boolean foldCase) {
+		int mask = 1 << categoryClass;
+		int state = MorphAutomaton.INITIAL_STATE;
+		int length = word.length();
+		for (int i = 0; i < length; i++) {
+			if (((categoryMasks.charAt(state) - '0') & mask) == 0) {
+				return NO_STATE;
+			}
+			char ch = word.charAt(reverse ? length - 1 - i : i);
+			if (foldCase) {
+				ch = CaseFolding.fold(ch);
+			}
+			state = next(state, ch);
+			if (state == NO_STATE) {
+				return NO_STATE;
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * @return true if the pattern of the rule matches the word
+	 */
+	protected final boolean matches(int patternIndex, String word,
+			boolean foldCase) {
+		return patterns.get(patternIndex)
+				.matcher(foldCase ? CaseFolding.lowerCaseView(word) : word)
+				.matches();
+	}
+
+	/**
+	 * <tt>irreg_stem(root, affix)</tt>
+	 */
+	protected static boolean irregStem(String root, String affix,
+			int patternIndex, MorphResult result) {
+		result.set(root, affix, patternIndex);
+		return true;
+	}
+
+	/**
+	 * <tt>null_stem()</tt>
+	 */
+	protected static boolean nullStem(String word, boolean foldCase,
+			int patternIndex, MorphResult result) {
+		result.set(foldCase ? CaseFolding.lowerCase(word, word.length(), "",
+				result) : word, MorphFunctions.NO_AFFIX, patternIndex);
+		return true;
+	}
+
+	/**
+	 * <tt>stem(delete, add, affix)</tt>
+	 */
+	protected static boolean stem(String word, boolean foldCase, int delete,
+			String add, String affix, int patternIndex, MorphResult result) {
+		result.set(foldCase ? CaseFolding.lowerCase(word, word.length()
+				- delete, add, result) : MorphFunctions.stem(word, delete, add),
+				affix, patternIndex);
+		return true;
+	}
+
+	/**
+	 * <tt>semi_reg_stem(delete, add)</tt>
+	 */
+	protected static boolean semiRegStem(String word, boolean foldCase,
+			int delete, String add, int patternIndex, MorphResult result) {
+		result.set(foldCase ? CaseFolding.lowerCase(word, MorphFunctions
+				.semiRegStemLength(word, delete), add, result) : MorphFunctions
+				.semiRegStem(word, delete, add), MorphFunctions
+				.semiRegStemAffix(word), patternIndex);
+		return true;
+	}
+}
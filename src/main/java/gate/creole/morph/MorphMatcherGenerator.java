@@ -0,0 +1,551 @@
+package gate.creole.morph;
+
+import gate.creole.ResourceInstantiationException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * Title: MorphMatcherGenerator.java
+ * </p>
+ * <p>
+ * Description: Generates the Java source of a {@link MorphMatcher} from the
+ * compiled {@link MorphAutomaton} of a rule file. Every state gets a method
+ * whose <tt>switch</tt> on the character returns the next state, and every
+ * distinct list of rules reached by a state for a category class gets a
+ * method that applies them in order, the first rule known to match ending
+ * the list. The dispatch on the state is split in chunks of
+ * {@link #CHUNK_SIZE} states so that no method comes near the size limit of
+ * the class file format, and so are the strings holding the literal table.
+ * The {@link #main(String[])} method writes the source of the matcher of a
+ * rule file, to be compiled with the rest of an application.
+ * </p>
+ */
+public final class MorphMatcherGenerator {
+
+	/** number of cases of each dispatching method */
+	static final int CHUNK_SIZE = 256;
+
+	/** maximum length of the string constants, well within the limit */
+	private static final int MAX_STRING_LENGTH = 8192;
+
+	/**
+	 * ranges of at least this many characters are tested with a comparison
+	 * instead of a case label per character
+	 */
+	private static final int MIN_WIDE_RANGE = 16;
+
+	private final Interpret interpret;
+
+	private final MorphAutomaton automaton;
+
+	private final PrintWriter out;
+
+	/** the methods applying each distinct list of rules, by their body */
+	private final Map<String, String> ruleListMethods = new HashMap<String, String>();
+
+	/** the bodies of the rule list methods, in order of creation */
+	private final List<String> ruleListBodies = new ArrayList<String>();
+
+	private MorphMatcherGenerator(Interpret interpret, Writer out) {
+		this.interpret = interpret;
+		this.automaton = interpret.getAutomaton();
+		this.out = new PrintWriter(out);
+	}
+
+	/**
+	 * Writes the source of the matcher of the rules, which must have been
+	 * compiled with {@link Interpret#determinize()}.
+	 *
+	 * @param className
+	 *            the fully qualified name of the generated class
+	 * @param rulesHash
+	 *            the SHA-256 hash of the rule file, see
+	 *            {@link MorphSnapshot#sourceHash(URL)}, or null
+	 */
+	public static void generate(Interpret interpret, String className,
+			byte[] rulesHash, Writer out) throws IOException {
+		if (!interpret.isDeterministic()) {
+			throw new IllegalArgumentException(
+					"The rules must be compiled into an automaton first");
+		}
+		MorphMatcherGenerator generator = new MorphMatcherGenerator(interpret,
+				out);
+		generator.writeClass(className, rulesHash == null ? null
+				: hex(rulesHash));
+		generator.out.flush();
+		if (generator.out.checkError()) {
+			throw new IOException("Could not write the source of " + className);
+		}
+	}
+
+	private void writeClass(String className, String rulesHash) {
+		int dot = className.lastIndexOf('.');
+		String simpleName = className.substring(dot + 1);
+		if (dot > 0) {
+			out.println("package " + className.substring(0, dot) + ";");
+			out.println();
+		}
+		out.println("import gate.creole.morph.MorphMatcher;");
+		out.println("import gate.creole.morph.MorphResult;");
+		out.println();
+		out.println("/**");
+		out.println(" * Generated by " + MorphMatcherGenerator.class.getName()
+				+ ", do not edit.");
+		out.println(" */");
+		out.println("public final class " + simpleName + " extends MorphMatcher {");
+		out.println();
+		out.println("\tpublic " + simpleName + "() {");
+		out.println("\t\tsuper(" + (rulesHash == null ? "null" : quote(rulesHash))
+				+ ", " + automaton.isReverse()
+				+ ", categoryMasks(), literals(), inexactRules(), regExps());");
+		out.println("\t}");
+
+		writeCategoryMasks();
+		writeLiterals();
+		writeInexactRules();
+		writeRegExps();
+		writeTransitions();
+		writeRuleLists();
+		writeApply();
+		out.println("}");
+	}
+
+	private void writeCategoryMasks() {
+		StringBuilder masks = new StringBuilder();
+		for (int s = 0; s < automaton.getStateCount(); s++) {
+			masks.append((char) ('0' + automaton.getCategoryMask(s)));
+		}
+		writeChunkedString("categoryMasks", masks);
+	}
+
+	private void writeLiterals() {
+		LiteralTable literals = automaton.getLiterals();
+		StringBuilder lines = new StringBuilder();
+		for (int index = 0; index < literals.size(); index++) {
+			lines.append(literals.getWord(index));
+			for (int c = 0; c < LiteralTable.CATEGORY_CLASSES; c++) {
+				lines.append('\t').append(literals.getRule(index, c));
+			}
+			lines.append('\n');
+		}
+		writeChunkedString("literals", lines);
+	}
+
+	/**
+	 * Writes a method returning the string in chunks, each of which fits in
+	 * the constant pool; lines are not split.
+	 */
+	private void writeChunkedString(String name, CharSequence value) {
+		out.println();
+		out.println("\tprivate static String[] " + name + "() {");
+		out.println("\t\treturn new String[] {");
+		int start = 0;
+		while (start < value.length()) {
+			int end = Math.min(start + MAX_STRING_LENGTH, value.length());
+			if (end < value.length()) {
+				for (int i = end - 1; i > start; i--) {
+					if (value.charAt(i) == '\n') {
+						end = i + 1;
+						break;
+					}
+				}
+			}
+			out.println("\t\t\t\t" + quote(value.subSequence(start, end).toString())
+					+ ",");
+			start = end;
+		}
+		out.println("\t\t};");
+		out.println("\t}");
+	}
+
+	private void writeInexactRules() {
+		out.println();
+		out.println("\tprivate static short[][] inexactRules() {");
+		out.println("\t\treturn new short[][] {");
+		for (int c = 0; c < LiteralTable.CATEGORY_CLASSES; c++) {
+			StringBuilder rules = new StringBuilder();
+			for (int i = 0; i < automaton.getInexactRuleCount(c); i++) {
+				rules.append(i == 0 ? " " : ", ").append(
+						automaton.getInexactRule(c, i));
+			}
+			out.println("\t\t\t\t{" + rules + " },");
+		}
+		out.println("\t\t};");
+		out.println("\t}");
+	}
+
+	private void writeRegExps() {
+		int ruleCount = interpret.rules.size();
+		out.println();
+		out.println("\tprivate static String[] regExps() {");
+		out.println("\t\tString[] regExps = new String[" + ruleCount + "];");
+		for (int rule = 0; rule < ruleCount; rule++) {
+			if (!automaton.isExact() || isInexact(rule)) {
+				out.println("\t\tregExps[" + rule + "] = "
+						+ quote(interpret.patterns.get(rule).pattern()) + ";");
+			}
+		}
+		out.println("\t\treturn regExps;");
+		out.println("\t}");
+	}
+
+	private boolean isInexact(int rule) {
+		for (int i = 0; i < automaton.getInexactRuleCount(); i++) {
+			if (automaton.getInexactRule(i) == rule) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void writeTransitions() {
+		SortedMap<Integer, String> cases = new TreeMap<Integer, String>();
+		for (int s = 0; s < automaton.getStateCount(); s++) {
+			if (automaton.getTransitionCount(s) > 0) {
+				cases.put(s, "n" + s + "(ch)");
+			}
+		}
+		writeDispatch("protected int next(int state, char ch)", "int",
+				"state, ch", "state", "NO_STATE", cases);
+
+		for (int s = 0; s < automaton.getStateCount(); s++) {
+			int count = automaton.getTransitionCount(s);
+			if (count == 0) {
+				continue;
+			}
+			// the characters leading to the same state share their return, the
+			// wide ranges are tested before the switch
+			SortedMap<Integer, StringBuilder> targets = new TreeMap<Integer, StringBuilder>();
+			StringBuilder wide = new StringBuilder();
+			for (int i = 0; i < count; i++) {
+				int target = automaton.getTransitionTarget(s, i);
+				int low = automaton.getTransitionLow(s, i);
+				int high = automaton.getTransitionHigh(s, i);
+				if (high - low + 1 >= MIN_WIDE_RANGE) {
+					wide.append("\t\tif (ch >= ").append(low).append(
+							" && ch <= ").append(high).append(")\n");
+					wide.append("\t\t\treturn ").append(target).append(";\n");
+					continue;
+				}
+				StringBuilder labels = targets.get(target);
+				if (labels == null) {
+					labels = new StringBuilder();
+					targets.put(target, labels);
+				}
+				for (int ch = low; ch <= high; ch++) {
+					labels.append("\t\tcase ").append(ch).append(":\n");
+				}
+			}
+			out.println();
+			out.println("\tprivate static int n" + s + "(char ch) {");
+			out.print(wide);
+			out.println("\t\tswitch (ch) {");
+			for (Map.Entry<Integer, StringBuilder> target : targets.entrySet()) {
+				out.print(target.getValue());
+				out.println("\t\t\treturn " + target.getKey() + ";");
+			}
+			out.println("\t\tdefault:");
+			out.println("\t\t\treturn NO_STATE;");
+			out.println("\t\t}");
+			out.println("\t}");
+		}
+	}
+
+	private void writeRuleLists() {
+		String parameters = "word, foldCase, result";
+		out.println();
+		out.println("\t@Override");
+		out.println("\tprotected boolean applyRules(int state, int categoryClass,");
+		out.println("\t\t\tString word, boolean foldCase, MorphResult result) {");
+		out.println("\t\tswitch (categoryClass) {");
+		for (int c = 0; c < LiteralTable.CATEGORY_CLASSES; c++) {
+			out.println("\t\tcase " + c + ":");
+			out.println("\t\t\treturn applyRules" + c + "(state, " + parameters
+					+ ");");
+		}
+		out.println("\t\tdefault:");
+		out.println("\t\t\treturn false;");
+		out.println("\t\t}");
+		out.println("\t}");
+
+		for (int c = 0; c < LiteralTable.CATEGORY_CLASSES; c++) {
+			SortedMap<Integer, String> cases = new TreeMap<Integer, String>();
+			for (int s = 0; s < automaton.getStateCount(); s++) {
+				String method = ruleListMethod(s, c);
+				if (method != null) {
+					cases.put(s, method + "(" + parameters + ")");
+				}
+			}
+			writeDispatch("private boolean applyRules" + c
+					+ "(int state, String word, boolean foldCase, MorphResult result)",
+					"boolean", "state, " + parameters, "state", "false", cases);
+		}
+
+		for (int i = 0; i < ruleListBodies.size(); i++) {
+			out.println();
+			out.println("\tprivate boolean r" + i
+					+ "(String word, boolean foldCase, MorphResult result) {");
+			out.print(ruleListBodies.get(i));
+			out.println("\t}");
+		}
+	}
+
+	/**
+	 * @return the name of the method applying the rules of the state for the
+	 *         category class, null if there are none
+	 */
+	private String ruleListMethod(int state, int categoryClass) {
+		// the rules of the state merged with the inexact ones, by pattern
+		// index, like Interpret does
+		StringBuilder body = new StringBuilder();
+		int pos = automaton.getRHSStart(state, categoryClass);
+		int end = automaton.getRHSEnd(state, categoryClass);
+		int inexact = 0;
+		int inexactCount = automaton.getInexactRuleCount(categoryClass);
+		boolean complete = false;
+		while (!complete && (pos < end || inexact < inexactCount)) {
+			RHS rhs;
+			boolean validate;
+			if (inexact < inexactCount
+					&& (pos == end || automaton.getInexactRule(categoryClass,
+							inexact) < automaton.getRHS(pos).getPatternIndex())) {
+				rhs = automaton.getRule(automaton.getInexactRule(categoryClass,
+						inexact++));
+				validate = true;
+			} else {
+				rhs = automaton.getRHS(pos++);
+				validate = !automaton.isExact();
+			}
+			String application = application(rhs);
+			if (application == null) {
+				continue;
+			}
+			if (validate) {
+				body.append("\t\tif (matches(" + rhs.getPatternIndex()
+						+ ", word, foldCase)) {\n\t\t\treturn " + application
+						+ ";\n\t\t}\n");
+			} else {
+				// the rule matches, the rules after it are never tried
+				body.append("\t\treturn " + application + ";\n");
+				complete = true;
+			}
+		}
+		if (body.length() == 0) {
+			return null;
+		}
+		if (!complete) {
+			body.append("\t\treturn false;\n");
+		}
+		String key = body.toString();
+		String method = ruleListMethods.get(key);
+		if (method == null) {
+			method = "r" + ruleListBodies.size();
+			ruleListMethods.put(key, method);
+			ruleListBodies.add(key);
+		}
+		return method;
+	}
+
+	private void writeApply() {
+		SortedMap<Integer, String> cases = new TreeMap<Integer, String>();
+		for (int rule = 0; rule < interpret.rules.size(); rule++) {
+			String application = application(automaton.getRule(rule));
+			if (application != null) {
+				cases.put(rule, application);
+			}
+		}
+		writeDispatch(
+				"protected boolean apply(int patternIndex, String word, boolean foldCase, MorphResult result)",
+				"boolean", "patternIndex, word, foldCase, result", "patternIndex",
+				"false", cases);
+	}
+
+	/**
+	 * @return the call applying the rule, null if its function is unknown
+	 */
+	private static String application(RHS rhs) {
+		String[] parameters = rhs.getParameters();
+		int patternIndex = rhs.getPatternIndex();
+		switch (rhs.getMethodIndex()) {
+		case ParsingFunctions.IRREG_STEM:
+			return "irregStem(" + quote(parameters[0]) + ", "
+					+ quote(parameters[1]) + ", " + patternIndex + ", result)";
+		case ParsingFunctions.NULL_STEM:
+			return "nullStem(word, foldCase, " + patternIndex + ", result)";
+		case ParsingFunctions.SEMIREG_STEM:
+			return "semiRegStem(word, foldCase, " + rhs.getDeleteCount() + ", "
+					+ quote(parameters[1]) + ", " + patternIndex + ", result)";
+		case ParsingFunctions.STEM:
+			return "stem(word, foldCase, " + rhs.getDeleteCount() + ", "
+					+ quote(parameters[1]) + ", " + quote(parameters[2]) + ", "
+					+ patternIndex + ", result)";
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Writes a method returning the expression of the case matching the
+	 * selector, or the default value, dispatching to one method per chunk of
+	 * {@link #CHUNK_SIZE} cases.
+	 *
+	 * @param signature
+	 *            the signature of the method, which must declare the
+	 *            arguments
+	 */
+	private void writeDispatch(String signature, String type, String arguments,
+			String selector, String defaultValue, SortedMap<Integer, String> cases) {
+		String name = signature.substring(0, signature.indexOf('('));
+		name = name.substring(name.lastIndexOf(' ') + 1);
+		String parameters = signature.substring(signature.indexOf('('));
+		SortedMap<Integer, SortedMap<Integer, String>> chunks = new TreeMap<Integer, SortedMap<Integer, String>>();
+		for (Map.Entry<Integer, String> entry : cases.entrySet()) {
+			int chunk = entry.getKey() / CHUNK_SIZE;
+			SortedMap<Integer, String> chunkCases = chunks.get(chunk);
+			if (chunkCases == null) {
+				chunkCases = new TreeMap<Integer, String>();
+				chunks.put(chunk, chunkCases);
+			}
+			chunkCases.put(entry.getKey(), entry.getValue());
+		}
+
+		Map<Integer, String> chunkCalls = new TreeMap<Integer, String>();
+		for (int chunk : chunks.keySet()) {
+			chunkCalls.put(chunk, name + "Chunk" + chunk + "(" + arguments + ")");
+		}
+		out.println();
+		if (signature.startsWith("protected")) {
+			out.println("\t@Override");
+		}
+		out.println("\t" + signature + " {");
+		writeSwitch(selector + " / " + CHUNK_SIZE, defaultValue, chunkCalls);
+		out.println("\t}");
+
+		for (Map.Entry<Integer, SortedMap<Integer, String>> chunk : chunks
+				.entrySet()) {
+			out.println();
+			out.println("\tprivate " + type + " " + name + "Chunk" + chunk.getKey() + parameters
+					+ " {");
+			writeSwitch(selector, defaultValue, chunk.getValue());
+			out.println("\t}");
+		}
+	}
+
+	private void writeSwitch(String selector, String defaultValue,
+			Map<Integer, String> cases) {
+		out.println("\t\tswitch (" + selector + ") {");
+		for (Map.Entry<Integer, String> entry : cases.entrySet()) {
+			out.println("\t\tcase " + entry.getKey() + ":");
+			out.println("\t\t\treturn " + entry.getValue() + ";");
+		}
+		out.println("\t\tdefault:");
+		out.println("\t\t\treturn " + defaultValue + ";");
+		out.println("\t\t}");
+	}
+
+	/**
+	 * @return the string as a Java string literal
+	 */
+	static String quote(String value) {
+		StringBuilder literal = new StringBuilder(value.length() + 2);
+		literal.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			switch (ch) {
+			case '"':
+				literal.append("\\\"");
+				break;
+			case '\\':
+				literal.append("\\\\");
+				break;
+			case '\n':
+				literal.append("\\n");
+				break;
+			case '\r':
+				literal.append("\\r");
+				break;
+			case '\t':
+				literal.append("\\t");
+				break;
+			default:
+				if (ch < ' ' || ch >= 0x7f) {
+					literal.append(String.format("\\u%04x", (int) ch));
+				} else {
+					literal.append(ch);
+				}
+			}
+		}
+		return literal.append('"').toString();
+	}
+
+	/**
+	 * @return the bytes in hexadecimal
+	 */
+	static String hex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+			hex.append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Compiles a rule file and writes the source of its matcher.
+	 *
+	 * @param args
+	 *            optionally <tt>-reverse</tt> to read the words from right to
+	 *            left, the rule file, the fully qualified name of the matcher
+	 *            and the source directory to write it to
+	 */
+	public static void main(String[] args) throws IOException,
+			ResourceInstantiationException {
+		boolean reverse = args.length > 0 && args[0].equals("-reverse");
+		int first = reverse ? 1 : 0;
+		if (args.length - first != 3) {
+			System.err.println("Usage: MorphMatcherGenerator [-reverse] "
+					+ "<rules file> <class name> <source directory>");
+			System.exit(1);
+		}
+		File rulesFile = new File(args[first]);
+		String className = args[first + 1];
+		File sourceFile = new File(args[first + 2], className.replace('.',
+				File.separatorChar) + ".java");
+
+		URL rulesURL = rulesFile.toURI().toURL();
+		Interpret interpret = new Interpret();
+		interpret.init(rulesURL);
+		if (!interpret.determinize(Interpret.DEFAULT_MAX_DFA_STATES, reverse)) {
+			throw new ResourceInstantiationException("Rules in " + rulesFile
+					+ " need more than " + Interpret.DEFAULT_MAX_DFA_STATES
+					+ " deterministic states");
+		}
+		File directory = sourceFile.getAbsoluteFile().getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create " + directory);
+		}
+		Writer out = new OutputStreamWriter(new FileOutputStream(sourceFile),
+				StandardCharsets.UTF_8);
+		try {
+			generate(interpret, className, MorphSnapshot.sourceHash(rulesURL), out);
+		} finally {
+			out.close();
+		}
+		System.out.println("Wrote " + sourceFile + " ("
+				+ sourceFile.length() + " bytes)");
+	}
+}
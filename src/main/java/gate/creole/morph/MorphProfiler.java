@@ -0,0 +1,277 @@
+package gate.creole.morph;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <p>
+ * Title: MorphProfiler.java
+ * </p>
+ * <p>
+ * Description: Counts, for the words analysed by the {@link Interpret}s it is
+ * set on, how often each rule is applied, how many rules are tried per word,
+ * and how the time is split between reading the words with the automaton and
+ * trying the rules, along with the words per second of the documents
+ * processed by {@link Morph}. The counters are {@link LongAdder}s, so that
+ * threads analysing words concurrently do not contend on them. The counts
+ * are available through JMX once {@link #register(String)} is called, and as
+ * a report from {@link #dump()}; the rules that are never applied or whose
+ * words try many other rules first are the ones to prune or move.
+ * </p>
+ */
+public class MorphProfiler implements MorphProfilerMBean {
+
+	/** words trying more rules than this are counted in the last bucket */
+	private static final int MAX_CANDIDATES = 16;
+
+	private final LongAdder words = new LongAdder();
+
+	private final LongAdder wordsWithoutRule = new LongAdder();
+
+	private final LongAdder traversalNanos = new LongAdder();
+
+	private final LongAdder ruleNanos = new LongAdder();
+
+	private final LongAdder candidates = new LongAdder();
+
+	private final LongAdder[] candidateHistogram = new LongAdder[MAX_CANDIDATES + 1];
+
+	/** hits of every rule, by pattern index */
+	private final LongAdder[] ruleHits;
+
+	/** hits of the rules beyond the ones the profiler was created for */
+	private final LongAdder otherRuleHits = new LongAdder();
+
+	private final LongAdder documents = new LongAdder();
+
+	private final LongAdder documentWords = new LongAdder();
+
+	private final LongAdder documentNanos = new LongAdder();
+
+	private volatile double lastDocumentWordsPerSecond;
+
+	private ObjectName objectName;
+
+	/**
+	 * @param ruleCount
+	 *            number of rules whose hits are counted separately
+	 */
+	public MorphProfiler(int ruleCount) {
+		ruleHits = new LongAdder[ruleCount];
+		for (int i = 0; i < ruleCount; i++) {
+			ruleHits[i] = new LongAdder();
+		}
+		for (int i = 0; i < candidateHistogram.length; i++) {
+			candidateHistogram[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Records the analysis of one word.
+	 *
+	 * @param traversalEnd
+	 *            time at which the word was read, 0 if the analysis stopped
+	 *            before any rule was tried
+	 * @param tried
+	 *            number of rules tried
+	 * @param patternIndex
+	 *            the rule applied, -1 if none
+	 */
+	void recordWord(long start, long traversalEnd, long end, int tried,
+			int patternIndex) {
+		words.increment();
+		if (traversalEnd == 0) {
+			traversalNanos.add(end - start);
+		} else {
+			traversalNanos.add(traversalEnd - start);
+			ruleNanos.add(end - traversalEnd);
+		}
+		candidates.add(tried);
+		candidateHistogram[Math.min(tried, MAX_CANDIDATES)].increment();
+		if (patternIndex < 0) {
+			wordsWithoutRule.increment();
+		} else if (patternIndex < ruleHits.length) {
+			ruleHits[patternIndex].increment();
+		} else {
+			otherRuleHits.increment();
+		}
+	}
+
+	/**
+	 * Records the processing of a document.
+	 *
+	 * @param wordCount
+	 *            number of words of the document
+	 * @param nanos
+	 *            time taken to process the document
+	 */
+	public void recordDocument(int wordCount, long nanos) {
+		documents.increment();
+		documentWords.add(wordCount);
+		documentNanos.add(nanos);
+		lastDocumentWordsPerSecond = perSecond(wordCount, nanos);
+	}
+
+	private static double perSecond(long count, long nanos) {
+		return nanos == 0 ? 0 : count * 1e9 / nanos;
+	}
+
+	@Override
+	public long getWords() {
+		return words.sum();
+	}
+
+	@Override
+	public long getWordsWithoutRule() {
+		return wordsWithoutRule.sum();
+	}
+
+	@Override
+	public long getDocuments() {
+		return documents.sum();
+	}
+
+	@Override
+	public double getWordsPerSecond() {
+		return perSecond(documentWords.sum(), documentNanos.sum());
+	}
+
+	@Override
+	public double getLastDocumentWordsPerSecond() {
+		return lastDocumentWordsPerSecond;
+	}
+
+	@Override
+	public double getTraversalMillis() {
+		return traversalNanos.sum() / 1e6;
+	}
+
+	@Override
+	public double getRuleMillis() {
+		return ruleNanos.sum() / 1e6;
+	}
+
+	@Override
+	public double getAverageCandidates() {
+		long count = words.sum();
+		return count == 0 ? 0 : (double) candidates.sum() / count;
+	}
+
+	@Override
+	public long[] getCandidateHistogram() {
+		long[] histogram = new long[candidateHistogram.length];
+		for (int i = 0; i < histogram.length; i++) {
+			histogram[i] = candidateHistogram[i].sum();
+		}
+		return histogram;
+	}
+
+	@Override
+	public long[] getRuleHits() {
+		long[] hits = new long[ruleHits.length];
+		for (int i = 0; i < hits.length; i++) {
+			hits[i] = ruleHits[i].sum();
+		}
+		return hits;
+	}
+
+	@Override
+	public String dump() {
+		StringBuilder report = new StringBuilder();
+		report.append(getWords()).append(" words, ")
+				.append(getWordsWithoutRule()).append(" without rule, in ")
+				.append(getDocuments()).append(" documents, ")
+				.append(String.format("%.0f", getWordsPerSecond()))
+				.append(" words/s\n");
+		report.append(String.format(
+				"traversal %.1f ms, rules %.1f ms, %.2f rules tried per word\n",
+				getTraversalMillis(), getRuleMillis(), getAverageCandidates()));
+
+		report.append("words by rules tried:\n");
+		long[] histogram = getCandidateHistogram();
+		for (int i = 0; i < histogram.length; i++) {
+			if (histogram[i] > 0) {
+				report.append(i == MAX_CANDIDATES ? i + "+" : String.valueOf(i))
+						.append('\t').append(histogram[i]).append('\n');
+			}
+		}
+
+		report.append("hits by pattern index:\n");
+		final long[] hits = getRuleHits();
+		List<Integer> fired = new ArrayList<Integer>();
+		for (int i = 0; i < hits.length; i++) {
+			if (hits[i] > 0) {
+				fired.add(i);
+			}
+		}
+		Collections.sort(fired, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer r1, Integer r2) {
+				return Long.compare(hits[r2], hits[r1]);
+			}
+		});
+		for (int rule : fired) {
+			report.append(rule).append('\t').append(hits[rule]).append('\n');
+		}
+		long other = otherRuleHits.sum();
+		if (other > 0) {
+			report.append("other\t").append(other).append('\n');
+		}
+		report.append(hits.length - fired.size()).append(" of ")
+				.append(hits.length).append(" rules never applied\n");
+		return report.toString();
+	}
+
+	@Override
+	public void reset() {
+		for (LongAdder adder : new LongAdder[] { words, wordsWithoutRule,
+				traversalNanos, ruleNanos, candidates, otherRuleHits, documents,
+				documentWords, documentNanos }) {
+			adder.reset();
+		}
+		for (LongAdder adder : candidateHistogram) {
+			adder.reset();
+		}
+		for (LongAdder adder : ruleHits) {
+			adder.reset();
+		}
+		lastDocumentWordsPerSecond = 0;
+	}
+
+	/**
+	 * Registers this profiler with the platform MBean server, under
+	 * <tt>gate.creole.morph:type=MorphProfiler,name=<i>name</i></tt>.
+	 */
+	public synchronized void register(String name) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName candidate = new ObjectName(
+				"gate.creole.morph:type=MorphProfiler,name="
+						+ ObjectName.quote(name));
+		// several morphers may have the same name
+		for (int i = 2; server.isRegistered(candidate); i++) {
+			candidate = new ObjectName("gate.creole.morph:type=MorphProfiler,name="
+					+ ObjectName.quote(name + " " + i));
+		}
+		server.registerMBean(this, candidate);
+		objectName = candidate;
+	}
+
+	/**
+	 * Unregisters this profiler from the platform MBean server, if it was
+	 * registered.
+	 */
+	public synchronized void unregister() throws JMException {
+		if (objectName != null) {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			objectName = null;
+		}
+	}
+}
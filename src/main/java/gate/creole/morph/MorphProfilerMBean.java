@@ -0,0 +1,63 @@
+package gate.creole.morph;
+
+/**
+ * <p>
+ * Title: MorphProfilerMBean.java
+ * </p>
+ * <p>
+ * Description: JMX view of a {@link MorphProfiler}.
+ * </p>
+ */
+public interface MorphProfilerMBean {
+
+	long getWords();
+
+	long getWordsWithoutRule();
+
+	long getDocuments();
+
+	/**
+	 * @return the words analysed per second over the documents
+	 */
+	double getWordsPerSecond();
+
+	/**
+	 * @return the words analysed per second in the last document
+	 */
+	double getLastDocumentWordsPerSecond();
+
+	/**
+	 * @return the milliseconds spent reading the words with the automaton
+	 */
+	double getTraversalMillis();
+
+	/**
+	 * @return the milliseconds spent trying and applying the rules
+	 */
+	double getRuleMillis();
+
+	/**
+	 * @return the average number of rules tried per word
+	 */
+	double getAverageCandidates();
+
+	/**
+	 * @return the counts of the words by number of rules tried
+	 */
+	long[] getCandidateHistogram();
+
+	/**
+	 * @return the number of words each rule was applied to, by pattern index
+	 */
+	long[] getRuleHits();
+
+	/**
+	 * @return a report of all the counters
+	 */
+	String dump();
+
+	/**
+	 * Sets all the counters back to zero.
+	 */
+	void reset();
+}
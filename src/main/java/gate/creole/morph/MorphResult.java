@@ -0,0 +1,116 @@
+package gate.creole.morph;
+
+/**
+ * <p>
+ * Title: MorphResult.java
+ * </p>
+ * <p>
+ * Description: Holds the result of analysing one word with
+ * {@link Interpret#analyse(String, String, MorphResult)}: the root, the affix
+ * and the index of the pattern of the rule that was applied, and whether the
+ * root was found in the {@link MorphLexicon}. Instances are
+ * meant to be owned by the caller and reused from one word to the next, so
+ * they must not be shared between threads.
+ * </p>
+ */
+public class MorphResult {
+
+	private String root;
+
+	private String affix;
+
+	private int patternIndex = -1;
+
+	private boolean fromLexicon;
+
+	/** number of rules tried on the last word, for {@link MorphProfiler} */
+	int candidates;
+
+	/**
+	 * time at which the last word was read by the automaton, for
+	 * {@link MorphProfiler}, 0 if it was not read
+	 */
+	long traversalEnd;
+
+	/** reused to build the roots of case folded words */
+	private byte[] buffer;
+
+	/** reused to walk the FSM of rules that are not compiled */
+	private FrozenFSM.Walk walk;
+
+	/**
+	 * @return the root of the word, the word itself if no rule applied
+	 */
+	public String getRoot() {
+		return root;
+	}
+
+	/**
+	 * @return the affix, null if no rule applied
+	 */
+	public String getAffix() {
+		return affix;
+	}
+
+	/**
+	 * @return the index of the pattern of the applied rule, or of the rule
+	 *         giving its affix to a word found in the lexicon, -1 if none
+	 */
+	public int getPatternIndex() {
+		return patternIndex;
+	}
+
+	/**
+	 * @return true if the root is the lemma of the word in the lexicon, the
+	 *         affix being that of the rule the pattern index refers to
+	 */
+	public boolean isFromLexicon() {
+		return fromLexicon;
+	}
+
+	/**
+	 * @return true if a rule was applied to the word or it was found in the
+	 *         lexicon
+	 */
+	public boolean isFound() {
+		return patternIndex >= 0 || fromLexicon;
+	}
+
+	void set(String root, String affix, int patternIndex) {
+		set(root, affix, patternIndex, false);
+	}
+
+	void set(String root, String affix, int patternIndex, boolean fromLexicon) {
+		this.root = root;
+		this.affix = affix;
+		this.patternIndex = patternIndex;
+		this.fromLexicon = fromLexicon;
+	}
+
+	/**
+	 * @return a buffer of at least the given length, reused from one word to
+	 *         the next
+	 */
+	byte[] buffer(int length) {
+		if (buffer == null || buffer.length < length) {
+			buffer = new byte[Math.max(length, 32)];
+		}
+		return buffer;
+	}
+
+	/**
+	 * @return the sets of states of the walks of the FSM, reused from one word
+	 *         to the next
+	 */
+	FrozenFSM.Walk walk() {
+		if (walk == null) {
+			walk = new FrozenFSM.Walk();
+		}
+		return walk;
+	}
+
+	@Override
+	public String toString() {
+		return root + "+" + affix;
+	}
+}
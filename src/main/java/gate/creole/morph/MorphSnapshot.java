@@ -0,0 +1,281 @@
+package gate.creole.morph;
+
+import gate.creole.ResourceInstantiationException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Title: MorphSnapshot.java
+ * </p>
+ * <p>
+ * Description: Binary snapshot of the compiled form of a rule file: the
+ * patterns, the RHS of every rule and the tables of the
+ * {@link MorphAutomaton}. Loading a snapshot skips the parsing of the rules
+ * and the compilation of the automaton. The snapshot records the SHA-256 hash
+ * of the rule file it was built from and is ignored if the rule file has
+ * changed since.
+ * </p>
+ * <p>
+ * The snapshot is a big endian stream of fixed size fields, written with
+ * {@link DataOutputStream}, so that the tables can be read with bulk copies
+ * from a memory mapped file. It starts with {@link #MAGIC} and
+ * {@link #VERSION}; snapshots of another version are ignored.
+ * </p>
+ * <p>
+ * The snapshot of a rule file is expected next to it, with
+ * {@link #SUFFIX} appended to its name. The {@link #main(String[])} method
+ * writes it, and is run by the build to produce <tt>default.rul.bin</tt>.
+ * </p>
+ */
+public final class MorphSnapshot {
+
+	/** first bytes of every snapshot, "MRPH" */
+	public static final int MAGIC = 0x4D525048;
+
+	/** version of the format, to be increased whenever it changes */
+	public static final int VERSION = 4;
+
+	/** appended to the name of a rule file to get the name of its snapshot */
+	public static final String SUFFIX = ".bin";
+
+	private static final String HASH_ALGORITHM = "SHA-256";
+
+	private MorphSnapshot() {
+	}
+
+	/**
+	 * @return the URL at which the snapshot of the given rule file is
+	 *         expected
+	 */
+	public static URL snapshotURL(URL rulesURL) throws MalformedURLException {
+		return new URL(rulesURL.toExternalForm() + SUFFIX);
+	}
+
+	/**
+	 * @return the SHA-256 hash of the content of the rule file
+	 */
+	public static byte[] sourceHash(URL rulesURL) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has to support SHA-256
+			throw new IOException(e);
+		}
+		InputStream in = rulesURL.openStream();
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * Writes the snapshot of a compiled {@link Interpret}.
+	 *
+	 * @param sourceHash
+	 *            hash of the rule file the interpret was initialised from
+	 */
+	static void write(Interpret interpret, byte[] sourceHash, OutputStream os)
+			throws IOException {
+		MorphAutomaton automaton = interpret.getAutomaton();
+		if (automaton == null) {
+			throw new IllegalStateException(
+					"Only rules compiled into an automaton can be saved");
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		writeBytes(out, sourceHash);
+
+		out.writeInt(interpret.rules.size());
+		for (int i = 0; i < interpret.rules.size(); i++) {
+			RHS rhs = interpret.rules.get(i);
+			writeString(out, interpret.patterns.get(i).pattern());
+			out.writeShort(rhs.getMethodIndex());
+			out.writeBoolean(rhs.isVerb());
+			out.writeBoolean(rhs.isNoun());
+			String[] parameters = rhs.getParameters();
+			out.writeInt(parameters.length);
+			for (String parameter : parameters) {
+				writeString(out, parameter);
+			}
+		}
+		automaton.write(out);
+		out.flush();
+	}
+
+	/**
+	 * Initialises the interpret from the snapshot, if it was built from a
+	 * rule file with the given hash.
+	 *
+	 * @return true if the interpret was initialised, false if there is no
+	 *         snapshot or it is for another version or another rule file
+	 * @throws IOException
+	 *             if the snapshot cannot be read or is corrupt
+	 */
+	static boolean read(Interpret interpret, byte[] sourceHash, URL snapshotURL)
+			throws IOException {
+		ByteBuffer in;
+		try {
+			in = open(snapshotURL);
+		} catch (FileNotFoundException e) {
+			return false;
+		}
+		try {
+			if (in.getInt() != MAGIC || in.getInt() != VERSION
+					|| !Arrays.equals(sourceHash, readBytes(in))) {
+				return false;
+			}
+
+			int ruleCount = in.getInt();
+			String[] regExps = new String[ruleCount];
+			List<RHS> rules = new ArrayList<RHS>(ruleCount);
+			for (int i = 0; i < ruleCount; i++) {
+				regExps[i] = readString(in);
+				short methodIndex = in.getShort();
+				boolean verb = in.get() != 0;
+				boolean noun = in.get() != 0;
+				String[] parameters = new String[in.getInt()];
+				for (int j = 0; j < parameters.length; j++) {
+					parameters[j] = readString(in).intern();
+				}
+				rules.add(new RHS(methodIndex, parameters, verb, noun, (short) i));
+			}
+			MorphAutomaton automaton = MorphAutomaton.read(in, rules
+					.toArray(new RHS[ruleCount]));
+			if (in.hasRemaining()) {
+				throw new IOException("Trailing data in " + snapshotURL);
+			}
+
+			interpret.patterns = new LazyPatternList(regExps);
+			interpret.rules = rules;
+			interpret.automaton = automaton;
+			return true;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Truncated snapshot " + snapshotURL, e);
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Corrupt snapshot " + snapshotURL, e);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Corrupt snapshot " + snapshotURL, e);
+		} catch (NegativeArraySizeException e) {
+			throw new IOException("Corrupt snapshot " + snapshotURL, e);
+		}
+	}
+
+	/**
+	 * Maps the snapshot into memory if it is a file, reads it otherwise.
+	 */
+	private static ByteBuffer open(URL snapshotURL) throws IOException {
+		if ("file".equals(snapshotURL.getProtocol())) {
+			File file;
+			try {
+				file = new File(snapshotURL.toURI());
+			} catch (URISyntaxException e) {
+				file = new File(snapshotURL.getPath());
+			}
+			FileInputStream in = new FileInputStream(file);
+			try {
+				FileChannel channel = in.getChannel();
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel
+						.size());
+			} finally {
+				// the mapping stays valid once the channel is closed
+				in.close();
+			}
+		}
+
+		InputStream in = snapshotURL.openStream();
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[65536];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				bytes.write(buffer, 0, read);
+			}
+			return ByteBuffer.wrap(bytes.toByteArray());
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes)
+			throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static byte[] readBytes(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return bytes;
+	}
+
+	private static void writeString(DataOutputStream out, String value)
+			throws IOException {
+		writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String readString(ByteBuffer in) {
+		return new String(readBytes(in), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Compiles a rule file and writes its snapshot.
+	 *
+	 * @param args
+	 *            the rule file, and optionally the snapshot file which
+	 *            defaults to the rule file with {@link #SUFFIX} appended
+	 */
+	public static void main(String[] args) throws IOException,
+			ResourceInstantiationException {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: MorphSnapshot <rules file> [<snapshot file>]");
+			System.exit(1);
+		}
+		File rulesFile = new File(args[0]);
+		File snapshotFile = new File(args.length > 1 ? args[1] : args[0]
+				+ SUFFIX);
+
+		Interpret interpret = new Interpret();
+		interpret.init(rulesFile.toURI().toURL());
+		if (!interpret.determinize()) {
+			throw new ResourceInstantiationException("Rules in " + rulesFile
+					+ " need more than " + Interpret.DEFAULT_MAX_DFA_STATES
+					+ " deterministic states");
+		}
+		File directory = snapshotFile.getAbsoluteFile().getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create " + directory);
+		}
+		interpret.saveSnapshot(rulesFile.toURI().toURL(), snapshotFile);
+		System.out.println("Wrote " + snapshotFile + " ("
+				+ snapshotFile.length() + " bytes)");
+	}
+}
@@ -0,0 +1,927 @@
+package gate.creole.morph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * Title: PatternCompiler.java
+ * </p>
+ * <p>
+ * Description: Compiles the left hand sides of the morpher rules into an
+ * exact deterministic automaton. Unlike the FSM built by
+ * {@link ParsingFunctions}, whose states are shared between rules by
+ * character and depth, every rule gets its own Thompson NFA which is then
+ * determinized together with the others. A word therefore reaches a state
+ * listing a rule if and only if the rule's pattern matches the whole word, so
+ * the regular expression of the rule does not need to be run again.
+ * </p>
+ * <p>
+ * The NFAs of the rules only share the states of their common prefixes,
+ * which keeps the sets of NFA states built by the subset construction small.
+ * A prefix is shared only when it is made of equal nodes, so a shared state
+ * is reached by exactly the same words in every rule using it.
+ * </p>
+ * <p>
+ * The finite part of every pattern, such as the whole word exceptions
+ * <tt>&lt;verb&gt;abode ==&gt; irreg_stem("abide","ed")</tt> or the literal
+ * alternatives of a string set variable, is not compiled into the automaton
+ * but expanded into the words it matches, which are stored in the
+ * {@link LiteralTable} of the automaton together with the rule that wins for
+ * them once the productive rules are taken into account.
+ * </p>
+ * <p>
+ * Rules whose regular expression uses a construct this class does not
+ * understand are not compiled into the automaton; they are recorded as
+ * inexact, and {@link Interpret} validates them with their regular
+ * expression for every word.
+ * </p>
+ */
+public class PatternCompiler {
+
+	/** transitions of the NFA states on character ranges */
+	private final List<char[]> edgeLows = new ArrayList<char[]>();
+
+	private final List<char[]> edgeHighs = new ArrayList<char[]>();
+
+	private final List<int[]> edgeTargets = new ArrayList<int[]>();
+
+	private final List<int[]> epsilons = new ArrayList<int[]>();
+
+	/** pattern index accepted by each NFA state, -1 if none */
+	private final List<Short> accepts = new ArrayList<Short>();
+
+	/** RHS of each rule, indexed by pattern index */
+	private final List<RHS> rules = new ArrayList<RHS>();
+
+	/** pattern indexes of the rules that could not be compiled */
+	private final List<Short> inexactRules = new ArrayList<Short>();
+
+	/** maximum number of words the finite part of a node is expanded to */
+	private static final int MAX_LITERAL_WORDS = 256;
+
+	/** the rule of each category class for the words of the finite parts */
+	private final Map<String, short[]> literals = new HashMap<String, short[]>();
+
+	/** NFA state at which every rule starts */
+	private final int initialState;
+
+	/** end state of the NFA built for a node from a given state */
+	private final Map<Prefix, Integer> prefixes = new HashMap<Prefix, Integer>();
+
+	/**
+	 * A node of the top level sequence of a rule, built from a given state
+	 */
+	private static class Prefix {
+		final int from;
+
+		final PatternNode node;
+
+		Prefix(int from, PatternNode node) {
+			this.from = from;
+			this.node = node;
+		}
+
+		@Override
+		public int hashCode() {
+			return from * 31 + node.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Prefix))
+				return false;
+			Prefix other = (Prefix) obj;
+			return from == other.from && node.equals(other.node);
+		}
+	}
+
+	/** true if the automaton reads the words from right to left */
+	private final boolean reverse;
+
+	public PatternCompiler() {
+		this(false);
+	}
+
+	/**
+	 * @param reverse
+	 *            true to compile the reversed patterns into an automaton that
+	 *            reads the words from right to left
+	 */
+	public PatternCompiler(boolean reverse) {
+		this.reverse = reverse;
+		initialState = newState();
+	}
+
+	/**
+	 * Adds a rule given as the regular expression built by
+	 * {@link PatternNode#toRegularExpression()}.
+	 *
+	 * @return true if the rule was compiled, false if it is inexact
+	 */
+	public boolean addRule(String regExp, RHS rhs) {
+		return addRule(parseRegularExpression(regExp), rhs);
+	}
+
+	/**
+	 * Adds a rule given as a pattern tree, or null if the pattern could not
+	 * be parsed in which case the rule is recorded as inexact.
+	 *
+	 * @return true if the rule was compiled, false if it is inexact
+	 */
+	public boolean addRule(PatternNode lhs, RHS rhs) {
+		short patternIndex = rhs.getPatternIndex();
+		while (rules.size() <= patternIndex) {
+			rules.add(null);
+		}
+		rules.set(patternIndex, rhs);
+		if (lhs == null) {
+			inexactRules.add(patternIndex);
+			return false;
+		}
+		Split split = split(lhs);
+		for (String word : split.words) {
+			short[] wordRules = literals.get(word);
+			if (wordRules == null) {
+				wordRules = new short[LiteralTable.CATEGORY_CLASSES];
+				Arrays.fill(wordRules, LiteralTable.NO_RULE);
+				literals.put(word, wordRules);
+			}
+			updateRules(wordRules, rhs);
+		}
+		if (split.residual == null) {
+			return true;
+		}
+
+		// building a node only adds transitions leaving its start state, so
+		// the words reaching a state never change once it is built
+		int end = initialState;
+		PatternNode residual = reverse ? split.residual.reverse()
+				: split.residual;
+		for (PatternNode item : topLevelItems(residual)) {
+			Prefix prefix = new Prefix(end, item);
+			Integer shared = prefixes.get(prefix);
+			if (shared == null) {
+				shared = build(item, end);
+				prefixes.put(prefix, shared);
+			}
+			end = shared;
+		}
+		// rules with the same pattern each need their own accepting state
+		if (accepts.get(end) >= 0) {
+			int own = newState();
+			addEpsilon(end, own);
+			end = own;
+		}
+		accepts.set(end, patternIndex);
+		return true;
+	}
+
+	/**
+	 * Makes the rule the one of the category classes it applies to, unless
+	 * a rule with a lower pattern index already is.
+	 */
+	private static void updateRules(short[] wordRules, RHS rhs) {
+		short patternIndex = rhs.getPatternIndex();
+		for (int c = 0; c < wordRules.length; c++) {
+			if (Interpret.appliesTo(rhs, c)
+					&& (wordRules[c] == LiteralTable.NO_RULE || patternIndex < wordRules[c])) {
+				wordRules[c] = patternIndex;
+			}
+		}
+	}
+
+	/**
+	 * A node split into the finite set of words it matches and a residual
+	 * node matching the rest, so that the node matches exactly the words of
+	 * the set and the words matched by the residual.
+	 */
+	private static class Split {
+		final Set<String> words;
+
+		/** null if the node only matches the words */
+		final PatternNode residual;
+
+		Split(Set<String> words, PatternNode residual) {
+			this.words = words;
+			this.residual = residual;
+		}
+	}
+
+	private static Split split(PatternNode node) {
+		Set<String> words = new LinkedHashSet<String>();
+		if (node instanceof PatternNode.Literal) {
+			words.add(((PatternNode.Literal) node).getText());
+			return new Split(words, null);
+		} else if (node instanceof PatternNode.CharClass) {
+			PatternNode.CharClass cc = (PatternNode.CharClass) node;
+			for (int i = 0; i < cc.getRangeCount(); i++) {
+				for (int ch = cc.getLow(i); ch <= cc.getHigh(i); ch++) {
+					if (words.size() == MAX_LITERAL_WORDS)
+						return new Split(Collections.<String> emptySet(), node);
+					words.add(String.valueOf((char) ch));
+				}
+			}
+			return new Split(words, null);
+		} else if (node instanceof PatternNode.Alternation) {
+			List<PatternNode> residuals = new ArrayList<PatternNode>();
+			for (PatternNode alt : ((PatternNode.Alternation) node)
+					.getAlternatives()) {
+				Split split = split(alt);
+				words.addAll(split.words);
+				if (split.residual != null)
+					residuals.add(split.residual);
+				if (words.size() > MAX_LITERAL_WORDS)
+					return new Split(Collections.<String> emptySet(), node);
+			}
+			return new Split(words, alternation(residuals));
+		} else if (node instanceof PatternNode.Sequence) {
+			// (F1 | R1)(F2 | R2) = F1F2 | F1R2 | R1(F2 | R2)
+			words.add("");
+			PatternNode residual = null;
+			for (PatternNode item : ((PatternNode.Sequence) node).getItems()) {
+				Split split = split(item);
+				if ((long) words.size() * split.words.size() > MAX_LITERAL_WORDS)
+					return new Split(Collections.<String> emptySet(), node);
+				List<PatternNode> residuals = new ArrayList<PatternNode>();
+				if (residual != null)
+					residuals.add(sequence(residual, item));
+				if (split.residual != null && !words.isEmpty())
+					residuals.add(sequence(literals(words), split.residual));
+				Set<String> product = new LinkedHashSet<String>();
+				for (String prefix : words) {
+					for (String suffix : split.words) {
+						product.add(prefix + suffix);
+					}
+				}
+				words = product;
+				residual = alternation(residuals);
+			}
+			return new Split(words, residual);
+		} else {
+			PatternNode.Repeat repeat = (PatternNode.Repeat) node;
+			Split body = split(repeat.getNode());
+			if (repeat.getMax() == PatternNode.UNBOUNDED || body.residual != null)
+				return new Split(Collections.<String> emptySet(), node);
+			Set<String> power = new LinkedHashSet<String>();
+			power.add("");
+			for (int i = 1; i <= repeat.getMax(); i++) {
+				if (i - 1 >= repeat.getMin())
+					words.addAll(power);
+				Set<String> next = new LinkedHashSet<String>();
+				for (String prefix : power) {
+					for (String suffix : body.words) {
+						next.add(prefix + suffix);
+						if (next.size() + words.size() > MAX_LITERAL_WORDS)
+							return new Split(Collections.<String> emptySet(), node);
+					}
+				}
+				power = next;
+			}
+			words.addAll(power);
+			return new Split(words, null);
+		}
+	}
+
+	private static PatternNode alternation(List<PatternNode> nodes) {
+		if (nodes.isEmpty())
+			return null;
+		return nodes.size() == 1 ? nodes.get(0) : new PatternNode.Alternation(
+				nodes);
+	}
+
+	/**
+	 * @return the sequence of the two nodes, flattened
+	 */
+	private static PatternNode sequence(PatternNode first, PatternNode second) {
+		List<PatternNode> items = new ArrayList<PatternNode>();
+		for (PatternNode node : new PatternNode[] { first, second }) {
+			if (node instanceof PatternNode.Sequence)
+				items.addAll(((PatternNode.Sequence) node).getItems());
+			else
+				items.add(node);
+		}
+		return new PatternNode.Sequence(items);
+	}
+
+	/**
+	 * @return a node matching exactly the given words
+	 */
+	private static PatternNode literals(Set<String> words) {
+		List<PatternNode> nodes = new ArrayList<PatternNode>();
+		for (String word : words) {
+			nodes.add(new PatternNode.Literal(word));
+		}
+		return alternation(nodes);
+	}
+
+	/**
+	 * @return the nodes of the top level sequence of the pattern, with the
+	 *         literals split into single characters
+	 */
+	private static List<PatternNode> topLevelItems(PatternNode lhs) {
+		List<PatternNode> nodes = lhs instanceof PatternNode.Sequence ? ((PatternNode.Sequence) lhs)
+				.getItems()
+				: Collections.singletonList(lhs);
+		List<PatternNode> items = new ArrayList<PatternNode>();
+		for (PatternNode node : nodes) {
+			if (node instanceof PatternNode.Literal) {
+				String text = ((PatternNode.Literal) node).getText();
+				for (int i = 0; i < text.length(); i++) {
+					items.add(new PatternNode.Literal(text.substring(i, i + 1)));
+				}
+			} else {
+				items.add(node);
+			}
+		}
+		return items;
+	}
+
+	/**
+	 * @return the pattern indexes of the rules that are not compiled into the
+	 *         automaton and must be validated with their regular expression
+	 */
+	public short[] getInexactRules() {
+		short[] result = new short[inexactRules.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = inexactRules.get(i);
+		}
+		return result;
+	}
+
+	private int newState() {
+		edgeLows.add(new char[0]);
+		edgeHighs.add(new char[0]);
+		edgeTargets.add(new int[0]);
+		epsilons.add(new int[0]);
+		accepts.add((short) -1);
+		return accepts.size() - 1;
+	}
+
+	private void addEdge(int from, char low, char high, int to) {
+		int n = edgeTargets.get(from).length;
+		char[] lows = Arrays.copyOf(edgeLows.get(from), n + 1);
+		char[] highs = Arrays.copyOf(edgeHighs.get(from), n + 1);
+		int[] targets = Arrays.copyOf(edgeTargets.get(from), n + 1);
+		lows[n] = low;
+		highs[n] = high;
+		targets[n] = to;
+		edgeLows.set(from, lows);
+		edgeHighs.set(from, highs);
+		edgeTargets.set(from, targets);
+	}
+
+	private void addEpsilon(int from, int to) {
+		int[] old = epsilons.get(from);
+		int[] eps = Arrays.copyOf(old, old.length + 1);
+		eps[old.length] = to;
+		epsilons.set(from, eps);
+	}
+
+	/**
+	 * Thompson construction of the node starting at the given state.
+	 *
+	 * @return the state reached at the end of the node
+	 */
+	private int build(PatternNode node, int from) {
+		if (node instanceof PatternNode.Literal) {
+			String text = ((PatternNode.Literal) node).getText();
+			for (int i = 0; i < text.length(); i++) {
+				int to = newState();
+				addEdge(from, text.charAt(i), text.charAt(i), to);
+				from = to;
+			}
+			return from;
+		} else if (node instanceof PatternNode.CharClass) {
+			PatternNode.CharClass cc = (PatternNode.CharClass) node;
+			int to = newState();
+			for (int i = 0; i < cc.getRangeCount(); i++) {
+				addEdge(from, cc.getLow(i), cc.getHigh(i), to);
+			}
+			return to;
+		} else if (node instanceof PatternNode.Sequence) {
+			for (PatternNode item : ((PatternNode.Sequence) node).getItems()) {
+				from = build(item, from);
+			}
+			return from;
+		} else if (node instanceof PatternNode.Alternation) {
+			int to = newState();
+			for (PatternNode alt : ((PatternNode.Alternation) node)
+					.getAlternatives()) {
+				int start = newState();
+				addEpsilon(from, start);
+				addEpsilon(build(alt, start), to);
+			}
+			return to;
+		} else {
+			PatternNode.Repeat repeat = (PatternNode.Repeat) node;
+			for (int i = 0; i < repeat.getMin(); i++) {
+				from = build(repeat.getNode(), from);
+			}
+			if (repeat.getMax() == PatternNode.UNBOUNDED) {
+				int loop = newState();
+				addEpsilon(from, loop);
+				addEpsilon(build(repeat.getNode(), loop), loop);
+				return loop;
+			}
+			for (int i = repeat.getMin(); i < repeat.getMax(); i++) {
+				int to = newState();
+				addEpsilon(from, to);
+				addEpsilon(build(repeat.getNode(), from), to);
+				from = to;
+			}
+			return from;
+		}
+	}
+
+	/**
+	 * A set of NFA states, used as the key of a DFA state
+	 */
+	private static class StateSet {
+		final int[] states;
+
+		final int hash;
+
+		StateSet(int[] states) {
+			this.states = states;
+			this.hash = Arrays.hashCode(states);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof StateSet
+					&& Arrays.equals(states, ((StateSet) obj).states);
+		}
+	}
+
+	/**
+	 * A list of pattern indexes, used to share RHS lists between states
+	 */
+	private static class PatternList {
+		final short[] indexes;
+
+		final int hash;
+
+		PatternList(short[] indexes) {
+			this.indexes = indexes;
+			this.hash = Arrays.hashCode(indexes);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof PatternList
+					&& Arrays.equals(indexes, ((PatternList) obj).indexes);
+		}
+	}
+
+	/** stamp of the last closure each NFA state was added to */
+	private int[] marks;
+
+	private int stamp;
+
+	/**
+	 * @return the sorted epsilon closure of the given states
+	 */
+	private int[] closure(int[] states, int count) {
+		stamp++;
+		int[] stack = new int[Math.max(16, count)];
+		int size = 0;
+		int[] result = new int[Math.max(16, count)];
+		int resultSize = 0;
+		for (int i = 0; i < count; i++) {
+			if (marks[states[i]] != stamp) {
+				marks[states[i]] = stamp;
+				if (size == stack.length)
+					stack = Arrays.copyOf(stack, size * 2);
+				stack[size++] = states[i];
+			}
+		}
+		while (size > 0) {
+			int st = stack[--size];
+			if (resultSize == result.length)
+				result = Arrays.copyOf(result, resultSize * 2);
+			result[resultSize++] = st;
+			int[] eps = epsilons.get(st);
+			for (int i = 0; i < eps.length; i++) {
+				if (marks[eps[i]] != stamp) {
+					marks[eps[i]] = stamp;
+					if (size == stack.length)
+						stack = Arrays.copyOf(stack, size * 2);
+					stack[size++] = eps[i];
+				}
+			}
+		}
+		result = Arrays.copyOf(result, resultSize);
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * Runs the subset construction over the rules added so far.
+	 *
+	 * @param maxStates
+	 *            upper bound on the number of states
+	 * @return the automaton, or null if it would need more than maxStates
+	 *         states
+	 */
+	public MorphAutomaton compile(int maxStates) {
+		marks = new int[accepts.size()];
+		stamp = 0;
+
+		Map<StateSet, Integer> ids = new HashMap<StateSet, Integer>();
+		List<int[]> dStates = new ArrayList<int[]>();
+		int[] initial = closure(new int[] { initialState }, 1);
+		ids.put(new StateSet(initial), 0);
+		dStates.add(initial);
+
+		IntArray transitionOffsets = new IntArray();
+		CharArray transitionLows = new CharArray();
+		CharArray transitionHighs = new CharArray();
+		IntArray transitionTargets = new IntArray();
+		IntArray rhsStarts = new IntArray();
+		IntArray rhsEnds = new IntArray();
+		List<Short> rhsTable = new ArrayList<Short>();
+		Map<PatternList, Integer> sharedLists = new HashMap<PatternList, Integer>();
+
+		List<IntArray> buckets = new ArrayList<IntArray>();
+		for (int d = 0; d < dStates.size(); d++) {
+			int[] members = dStates.get(d);
+			int firstTransition = transitionTargets.size();
+			transitionOffsets.add(firstTransition);
+
+			// the RHS list, sorted by pattern index
+			short[] patterns = new short[members.length];
+			int patternCount = 0;
+			for (int m : members) {
+				if (accepts.get(m) >= 0)
+					patterns[patternCount++] = accepts.get(m);
+			}
+			patterns = Arrays.copyOf(patterns, patternCount);
+			Arrays.sort(patterns);
+			PatternList list = new PatternList(patterns);
+			Integer start = sharedLists.get(list);
+			if (start == null) {
+				start = rhsTable.size();
+				for (short p : patterns)
+					rhsTable.add(p);
+				sharedLists.put(list, start);
+			}
+			rhsStarts.add(start);
+			rhsEnds.add(start + patterns.length);
+
+			// boundaries of the character intervals on which the members move
+			IntArray bounds = new IntArray();
+			for (int m : members) {
+				char[] lows = edgeLows.get(m);
+				char[] highs = edgeHighs.get(m);
+				for (int e = 0; e < lows.length; e++) {
+					bounds.add(lows[e]);
+					bounds.add(highs[e] + 1);
+				}
+			}
+			int[] points = bounds.toSortedSet();
+
+			// targets of the members on each interval
+			int intervals = points.length - 1;
+			while (buckets.size() < intervals)
+				buckets.add(new IntArray());
+			for (int i = 0; i < intervals; i++)
+				buckets.get(i).clear();
+			for (int m : members) {
+				char[] lows = edgeLows.get(m);
+				char[] highs = edgeHighs.get(m);
+				int[] tos = edgeTargets.get(m);
+				for (int e = 0; e < lows.length; e++) {
+					int first = Arrays.binarySearch(points, lows[e]);
+					int last = Arrays.binarySearch(points, highs[e] + 1);
+					for (int i = first; i < last; i++)
+						buckets.get(i).add(tos[e]);
+				}
+			}
+
+			for (int b = 0; b < intervals; b++) {
+				int low = points[b];
+				int high = points[b + 1] - 1;
+				IntArray bucket = buckets.get(b);
+				int count = bucket.size();
+				if (count == 0)
+					continue;
+
+				int[] next = closure(bucket.data, count);
+				StateSet key = new StateSet(next);
+				Integer id = ids.get(key);
+				if (id == null) {
+					if (dStates.size() >= maxStates) {
+						return null;
+					}
+					id = dStates.size();
+					ids.put(key, id);
+					dStates.add(next);
+				}
+				// the interval extends the previous one if it leads to the same
+				// state, as the intervals of a class edge do when the boundaries
+				// of other edges fall inside it
+				int last = transitionTargets.size() - 1;
+				if (last >= firstTransition
+						&& transitionHighs.get(last) + 1 == low
+						&& transitionTargets.get(last) == id) {
+					transitionHighs.set(last, (char) high);
+				} else {
+					transitionLows.add((char) low);
+					transitionHighs.add((char) high);
+					transitionTargets.add(id);
+				}
+			}
+		}
+		transitionOffsets.add(transitionTargets.size());
+
+		short[] patternIndexes = new short[rhsTable.size()];
+		for (int i = 0; i < patternIndexes.length; i++) {
+			patternIndexes[i] = rhsTable.get(i);
+		}
+		marks = null;
+		int[] offsets = transitionOffsets.toArray();
+		char[] lows = transitionLows.toArray();
+		char[] highs = transitionHighs.toArray();
+		int[] targets = transitionTargets.toArray();
+		int[] starts = rhsStarts.toArray();
+		int[] ends = rhsEnds.toArray();
+		RHS[] ruleArray = rules.toArray(new RHS[rules.size()]);
+		MorphAutomaton productive = new MorphAutomaton(offsets, lows, highs,
+				targets, starts, ends, patternIndexes, ruleArray, true,
+				getInexactRules(),
+				new LiteralTable(new HashMap<String, short[]>()), reverse);
+
+		// a productive rule with a lower index wins over the literal rules
+		Map<String, short[]> words = new HashMap<String, short[]>();
+		for (Map.Entry<String, short[]> entry : literals.entrySet()) {
+			String word = entry.getKey();
+			short[] wordRules = entry.getValue().clone();
+			int state = productive.walk(word);
+			if (state != MorphAutomaton.NO_STATE) {
+				for (int i = productive.getRHSStart(state); i < productive
+						.getRHSEnd(state); i++) {
+					updateRules(wordRules, productive.getRHS(i));
+				}
+			}
+			words.put(word, wordRules);
+		}
+		return new MorphAutomaton(offsets, lows, highs, targets, starts, ends,
+				patternIndexes, ruleArray, true, getInexactRules(),
+				new LiteralTable(words), reverse);
+	}
+
+	/**
+	 * Parses the subset of the regular expression syntax produced by
+	 * {@link PatternNode#toRegularExpression()}: literal characters, escaped
+	 * punctuation, groups, alternations, character classes with ranges and
+	 * the <tt>*</tt>, <tt>+</tt>, <tt>?</tt> and <tt>{n,m}</tt> quantifiers.
+	 *
+	 * @return the pattern tree, or null if the expression uses anything else
+	 */
+	public static PatternNode parseRegularExpression(String regExp) {
+		if (regExp == null)
+			return null;
+		int[] pos = { 0 };
+		PatternNode node = parseAlternation(regExp, pos);
+		if (node == null || pos[0] != regExp.length())
+			return null;
+		return node;
+	}
+
+	private static PatternNode parseAlternation(String re, int[] pos) {
+		List<PatternNode> alternatives = new ArrayList<PatternNode>();
+		while (true) {
+			PatternNode seq = parseSequence(re, pos);
+			if (seq == null)
+				return null;
+			alternatives.add(seq);
+			if (pos[0] < re.length() && re.charAt(pos[0]) == '|') {
+				pos[0]++;
+			} else {
+				break;
+			}
+		}
+		return alternatives.size() == 1 ? alternatives.get(0)
+				: new PatternNode.Alternation(alternatives);
+	}
+
+	private static PatternNode parseSequence(String re, int[] pos) {
+		List<PatternNode> items = new ArrayList<PatternNode>();
+		while (pos[0] < re.length()) {
+			char ch = re.charAt(pos[0]);
+			if (ch == '|' || ch == ')')
+				break;
+			PatternNode atom;
+			if (ch == '(') {
+				pos[0]++;
+				atom = parseAlternation(re, pos);
+				if (atom == null || pos[0] >= re.length()
+						|| re.charAt(pos[0]) != ')')
+					return null;
+				pos[0]++;
+			} else if (ch == '[') {
+				atom = parseClass(re, pos);
+			} else if (isEscape(re, pos[0])) {
+				atom = new PatternNode.Literal(String.valueOf(re.charAt(pos[0] + 1)));
+				pos[0] += 2;
+			} else if ("\\.^$?*+{}]".indexOf(ch) >= 0) {
+				return null;
+			} else {
+				atom = new PatternNode.Literal(String.valueOf(ch));
+				pos[0]++;
+			}
+			if (atom == null)
+				return null;
+			atom = parseQuantifiers(atom, re, pos);
+			if (atom == null)
+				return null;
+			items.add(atom);
+		}
+		return items.size() == 1 ? items.get(0) : new PatternNode.Sequence(
+				items);
+	}
+
+	private static PatternNode parseQuantifiers(PatternNode atom, String re,
+			int[] pos) {
+		while (pos[0] < re.length()) {
+			char ch = re.charAt(pos[0]);
+			if (ch == '*') {
+				atom = PatternNode.Repeat.star(atom);
+			} else if (ch == '+') {
+				atom = PatternNode.Repeat.plus(atom);
+			} else if (ch == '?') {
+				atom = new PatternNode.Repeat(atom, 0, 1);
+			} else if (ch == '{') {
+				int close = re.indexOf('}', pos[0]);
+				if (close < 0)
+					return null;
+				String[] bounds = re.substring(pos[0] + 1, close).split(",", -1);
+				try {
+					int min = Integer.parseInt(bounds[0]);
+					int max = bounds.length == 1 ? min
+							: bounds[1].length() == 0 ? PatternNode.UNBOUNDED
+									: Integer.parseInt(bounds[1]);
+					if (bounds.length > 2 || min < 0
+							|| (max != PatternNode.UNBOUNDED && max < min))
+						return null;
+					atom = new PatternNode.Repeat(atom, min, max);
+				} catch (NumberFormatException nfe) {
+					return null;
+				}
+				pos[0] = close;
+			} else {
+				break;
+			}
+			pos[0]++;
+			// possessive and reluctant quantifiers are not supported
+			if (pos[0] < re.length()
+					&& (re.charAt(pos[0]) == '?' || re.charAt(pos[0]) == '+'))
+				return null;
+		}
+		return atom;
+	}
+
+	private static PatternNode parseClass(String re, int[] pos) {
+		int i = pos[0] + 1;
+		StringBuilder chars = new StringBuilder();
+		boolean first = true;
+		while (i < re.length() && (re.charAt(i) != ']' || first)) {
+			char ch = re.charAt(i);
+			int next = i + 1;
+			if (isEscape(re, i)) {
+				ch = re.charAt(i + 1);
+				next = i + 2;
+			} else if (ch == '\\' || ch == '[' || ch == '&'
+					|| (ch == '^' && first)) {
+				return null;
+			}
+			first = false;
+			if (next + 1 < re.length() && re.charAt(next) == '-'
+					&& re.charAt(next + 1) != ']') {
+				char end = re.charAt(next + 1);
+				int after = next + 2;
+				if (isEscape(re, next + 1)) {
+					end = re.charAt(next + 2);
+					after = next + 3;
+				} else if (end == '\\' || end == '[') {
+					return null;
+				}
+				if (end < ch)
+					return null;
+				for (char c = ch; c <= end; c++) {
+					chars.append(c);
+					if (c == Character.MAX_VALUE)
+						break;
+				}
+				i = after;
+			} else {
+				chars.append(ch);
+				i = next;
+			}
+		}
+		if (i >= re.length())
+			return null;
+		pos[0] = i + 1;
+		return PatternNode.CharClass.of(chars.toString());
+	}
+
+	/**
+	 * @return true if there is a backslash at the given position escaping a
+	 *         character that is neither a letter nor a digit
+	 */
+	private static boolean isEscape(String re, int i) {
+		return re.charAt(i) == '\\' && i + 1 < re.length()
+				&& !Character.isLetterOrDigit(re.charAt(i + 1));
+	}
+
+
+	/**
+	 * Growable array of ints
+	 */
+	private static class IntArray {
+		private int[] data = new int[16];
+
+		private int size;
+
+		void add(int value) {
+			if (size == data.length)
+				data = Arrays.copyOf(data, size * 2);
+			data[size++] = value;
+		}
+
+		int size() {
+			return size;
+		}
+
+		int get(int index) {
+			return data[index];
+		}
+
+		void clear() {
+			size = 0;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(data, size);
+		}
+
+		int[] toSortedSet() {
+			int[] sorted = toArray();
+			Arrays.sort(sorted);
+			int n = 0;
+			for (int i = 0; i < sorted.length; i++) {
+				if (n == 0 || sorted[n - 1] != sorted[i])
+					sorted[n++] = sorted[i];
+			}
+			return Arrays.copyOf(sorted, n);
+		}
+	}
+
+	/**
+	 * Growable array of chars
+	 */
+	private static class CharArray {
+		private char[] data = new char[16];
+
+		private int size;
+
+		void add(char value) {
+			if (size == data.length)
+				data = Arrays.copyOf(data, size * 2);
+			data[size++] = value;
+		}
+
+		int size() {
+			return size;
+		}
+
+		char get(int index) {
+			return data[index];
+		}
+
+		void set(int index, char value) {
+			data[index] = value;
+		}
+
+		char[] toArray() {
+			return Arrays.copyOf(data, size);
+		}
+	}
+}
@@ -0,0 +1,403 @@
+package gate.creole.morph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ * Title: PatternNode.java
+ * </p>
+ * <p>
+ * Description: Node of the abstract syntax tree of the left hand side of a
+ * morpher rule. A pattern is made of literals, character classes, sequences,
+ * alternations and repetitions, which is all that is needed to compile it
+ * into an exact automaton with {@link PatternCompiler}. Nodes are immutable.
+ * </p>
+ */
+public abstract class PatternNode {
+
+	/**
+	 * Nodes are compared by structure, so that {@link PatternCompiler} can
+	 * share the states of the common prefixes of the rules.
+	 */
+	@Override
+	public abstract boolean equals(Object obj);
+
+	@Override
+	public abstract int hashCode();
+
+	/**
+	 * @return a node matching the reverse of the words matched by this node
+	 */
+	public abstract PatternNode reverse();
+
+	/** used as the maximum of a repetition without upper bound */
+	public static final int UNBOUNDED = -1;
+
+	/** characters that have to be escaped in a regular expression */
+	private static final String META_CHARACTERS = "\\.[]{}()*+?^$|";
+
+	/** characters that have to be escaped in a character class */
+	private static final String CLASS_META_CHARACTERS = "\\[]^&-";
+
+	/**
+	 * @return a regular expression matching the same words as this node, in
+	 *         the syntax read by
+	 *         {@link PatternCompiler#parseRegularExpression(String)}
+	 */
+	public String toRegularExpression() {
+		StringBuilder sb = new StringBuilder();
+		appendRegularExpression(sb);
+		return sb.toString();
+	}
+
+	abstract void appendRegularExpression(StringBuilder sb);
+
+	private static void appendEscaped(StringBuilder sb, char ch, String meta) {
+		if (meta.indexOf(ch) >= 0)
+			sb.append('\\');
+		sb.append(ch);
+	}
+
+	/**
+	 * A literal string, such as <tt>"ing"</tt>
+	 */
+	public static class Literal extends PatternNode {
+		private final String text;
+
+		public Literal(String text) {
+			this.text = text;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		@Override
+		public PatternNode reverse() {
+			return new Literal(new StringBuilder(text).reverse().toString());
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Literal && text.equals(((Literal) obj).text);
+		}
+
+		@Override
+		public int hashCode() {
+			return text.hashCode();
+		}
+
+		@Override
+		void appendRegularExpression(StringBuilder sb) {
+			for (int i = 0; i < text.length(); i++)
+				appendEscaped(sb, text.charAt(i), META_CHARACTERS);
+		}
+
+		@Override
+		public String toString() {
+			return "\"" + text + "\"";
+		}
+	}
+
+	/**
+	 * A set of characters, given as sorted, disjoint and non adjacent
+	 * inclusive ranges, such as <tt>[aeiou]</tt>
+	 */
+	public static class CharClass extends PatternNode {
+		private final char[] lows;
+
+		private final char[] highs;
+
+		/**
+		 * @param lows
+		 *            first character of each range
+		 * @param highs
+		 *            last character of each range
+		 */
+		public CharClass(char[] lows, char[] highs) {
+			this.lows = lows;
+			this.highs = highs;
+		}
+
+		/**
+		 * @return a class holding the characters of the given string
+		 */
+		public static CharClass of(String chars) {
+			return of(CharBitmap.of(chars));
+		}
+
+		/**
+		 * @return a class holding the characters of the set
+		 */
+		public static CharClass of(CharBitmap chars) {
+			char[] lows = new char[chars.getRangeCount()];
+			char[] highs = new char[lows.length];
+			for (int i = 0; i < lows.length; i++) {
+				lows[i] = chars.getLow(i);
+				highs[i] = chars.getHigh(i);
+			}
+			return new CharClass(lows, highs);
+		}
+
+		public int getRangeCount() {
+			return lows.length;
+		}
+
+		public char getLow(int range) {
+			return lows[range];
+		}
+
+		public char getHigh(int range) {
+			return highs[range];
+		}
+
+		@Override
+		public PatternNode reverse() {
+			return this;
+		}
+
+		public boolean contains(char ch) {
+			for (int i = 0; i < lows.length; i++) {
+				if (ch < lows[i])
+					return false;
+				if (ch <= highs[i])
+					return true;
+			}
+			return false;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof CharClass
+					&& Arrays.equals(lows, ((CharClass) obj).lows)
+					&& Arrays.equals(highs, ((CharClass) obj).highs);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * Arrays.hashCode(lows) + Arrays.hashCode(highs);
+		}
+
+		@Override
+		void appendRegularExpression(StringBuilder sb) {
+			sb.append('[');
+			for (int i = 0; i < lows.length; i++) {
+				appendEscaped(sb, lows[i], CLASS_META_CHARACTERS);
+				if (highs[i] != lows[i]) {
+					sb.append('-');
+					appendEscaped(sb, highs[i], CLASS_META_CHARACTERS);
+				}
+			}
+			sb.append(']');
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder("[");
+			for (int i = 0; i < lows.length; i++) {
+				sb.append(lows[i]);
+				if (highs[i] != lows[i])
+					sb.append('-').append(highs[i]);
+			}
+			return sb.append(']').toString();
+		}
+	}
+
+	/**
+	 * Nodes that must match one after the other
+	 */
+	public static class Sequence extends PatternNode {
+		private final List<PatternNode> items;
+
+		public Sequence(List<PatternNode> items) {
+			this.items = Collections.unmodifiableList(new ArrayList<PatternNode>(
+					items));
+		}
+
+		public List<PatternNode> getItems() {
+			return items;
+		}
+
+		@Override
+		public PatternNode reverse() {
+			List<PatternNode> reversed = new ArrayList<PatternNode>();
+			for (int i = items.size() - 1; i >= 0; i--)
+				reversed.add(items.get(i).reverse());
+			return new Sequence(reversed);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Sequence && items.equals(((Sequence) obj).items);
+		}
+
+		@Override
+		public int hashCode() {
+			return items.hashCode();
+		}
+
+		@Override
+		void appendRegularExpression(StringBuilder sb) {
+			for (PatternNode item : items)
+				item.appendRegularExpression(sb);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (PatternNode item : items)
+				sb.append(item);
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * Nodes of which exactly one must match, such as the values of a string
+	 * set variable
+	 */
+	public static class Alternation extends PatternNode {
+		private final List<PatternNode> alternatives;
+
+		public Alternation(List<PatternNode> alternatives) {
+			this.alternatives = Collections
+					.unmodifiableList(new ArrayList<PatternNode>(alternatives));
+		}
+
+		public List<PatternNode> getAlternatives() {
+			return alternatives;
+		}
+
+		@Override
+		public PatternNode reverse() {
+			List<PatternNode> reversed = new ArrayList<PatternNode>();
+			for (PatternNode alt : alternatives)
+				reversed.add(alt.reverse());
+			return new Alternation(reversed);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Alternation
+					&& alternatives.equals(((Alternation) obj).alternatives);
+		}
+
+		@Override
+		public int hashCode() {
+			return 7 * alternatives.hashCode();
+		}
+
+		@Override
+		void appendRegularExpression(StringBuilder sb) {
+			sb.append('(');
+			for (int i = 0; i < alternatives.size(); i++) {
+				if (i > 0)
+					sb.append('|');
+				alternatives.get(i).appendRegularExpression(sb);
+			}
+			sb.append(')');
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder("(");
+			for (int i = 0; i < alternatives.size(); i++) {
+				if (i > 0)
+					sb.append(" OR ");
+				sb.append(alternatives.get(i));
+			}
+			return sb.append(')').toString();
+		}
+	}
+
+	/**
+	 * A node matching between min and max times, which covers the
+	 * <tt>*</tt> and <tt>+</tt> operators of the rules
+	 */
+	public static class Repeat extends PatternNode {
+		private final PatternNode node;
+
+		private final int min;
+
+		private final int max;
+
+		/**
+		 * @param max
+		 *            maximum number of repetitions, or {@link #UNBOUNDED}
+		 */
+		public Repeat(PatternNode node, int min, int max) {
+			this.node = node;
+			this.min = min;
+			this.max = max;
+		}
+
+		public static Repeat star(PatternNode node) {
+			return new Repeat(node, 0, UNBOUNDED);
+		}
+
+		public static Repeat plus(PatternNode node) {
+			return new Repeat(node, 1, UNBOUNDED);
+		}
+
+		public PatternNode getNode() {
+			return node;
+		}
+
+		public int getMin() {
+			return min;
+		}
+
+		public int getMax() {
+			return max;
+		}
+
+		@Override
+		public PatternNode reverse() {
+			return new Repeat(node.reverse(), min, max);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Repeat))
+				return false;
+			Repeat other = (Repeat) obj;
+			return min == other.min && max == other.max
+					&& node.equals(other.node);
+		}
+
+		@Override
+		public int hashCode() {
+			return (node.hashCode() * 31 + min) * 31 + max;
+		}
+
+		@Override
+		void appendRegularExpression(StringBuilder sb) {
+			sb.append('(');
+			node.appendRegularExpression(sb);
+			sb.append(')');
+			if (min == 0 && max == UNBOUNDED)
+				sb.append('*');
+			else if (min == 1 && max == UNBOUNDED)
+				sb.append('+');
+			else if (min == 0 && max == 1)
+				sb.append('?');
+			else if (min == max)
+				sb.append('{').append(min).append('}');
+			else
+				sb.append('{').append(min).append(',').append(
+						max == UNBOUNDED ? "" : String.valueOf(max)).append('}');
+		}
+
+		@Override
+		public String toString() {
+			if (min == 0 && max == UNBOUNDED)
+				return "(" + node + ")*";
+			if (min == 1 && max == UNBOUNDED)
+				return "(" + node + ")+";
+			return "(" + node + "){" + min + ","
+					+ (max == UNBOUNDED ? "" : String.valueOf(max)) + "}";
+		}
+	}
+}
@@ -6,10 +6,11 @@ public class RHS {
 	private boolean verb = false;
 	private boolean noun = false;
 	private short patternIndex = 0; 
+	private int deleteCount = 0;
 	
 	public RHS(String function, String category, short patternIndex) {
 		methodIndex = ParsingFunctions.getMethodIndex(function.trim());
-		parameters = ParsingFunctions.getParameterValues(function.trim());
+		setParameters(ParsingFunctions.getParameterValues(function.trim()));
 		if(category.equals("verb"))
 			verb = true;
 		else if(category.equals("noun"))
@@ -21,6 +22,19 @@ public class RHS {
 		this.patternIndex = patternIndex;
 	}
 
+	/**
+	 * Recreates an RHS from its parsed form, as stored by
+	 * {@link MorphSnapshot}.
+	 */
+	RHS(short methodIndex, String[] parameters, boolean verb, boolean noun,
+			short patternIndex) {
+		this.methodIndex = methodIndex;
+		setParameters(parameters);
+		this.verb = verb;
+		this.noun = noun;
+		this.patternIndex = patternIndex;
+	}
+
 	public short getMethodIndex() {
 		return methodIndex;
 	}
@@ -31,6 +45,19 @@ public class RHS {
 
 	public void setParameters(String[] parameters) {
 		this.parameters = parameters;
+		// stem and semi_reg_stem take the number of characters to delete first
+		if (methodIndex == ParsingFunctions.STEM
+				|| methodIndex == ParsingFunctions.SEMIREG_STEM) {
+			deleteCount = Integer.parseInt(parameters[0]);
+		}
+	}
+
+	/**
+	 * @return the number of characters stem and semi_reg_stem delete from the
+	 *         end of the word
+	 */
+	public int getDeleteCount() {
+		return deleteCount;
 	}
 
 	public boolean isNoun() {
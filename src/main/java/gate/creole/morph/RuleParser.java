@@ -0,0 +1,421 @@
+package gate.creole.morph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Title: RuleParser.java
+ * </p>
+ * <p>
+ * Description: Tokenizer and recursive descent parser of the left hand side
+ * of the morpher rules, which builds the {@link PatternNode} tree of a rule
+ * in one pass over its text. The grammar is
+ * </p>
+ *
+ * <pre>
+ * alternation := sequence ( OR sequence )*
+ * sequence    := repetition*
+ * repetition  := atom ( * | + | ? | {n} | {n,} | {n,m} )*
+ * atom        := "string" | {VARIABLE} | ( alternation ) | [class] | character
+ * </pre>
+ * <p>
+ * where <tt>OR</tt> is written <tt>" OR "</tt>, with one space on each side,
+ * or <tt>|</tt>. Any other character, spaces included, stands for itself.
+ * A class is a list of characters and ranges such as <tt>[a-z0-9-]</tt>, a
+ * leading <tt>-</tt> being ignored. The variables are the string sets,
+ * character sets and character ranges of the <tt>defineVars</tt> section,
+ * which must be declared before they are used.
+ * </p>
+ * <p>
+ * Errors are reported with a {@link RuleSyntaxException} giving the line and
+ * the column of the offending token. The rules used to be run as regular
+ * expressions, which let through some text that this grammar does not
+ * give a meaning to: an undefined variable is matched as its name, and the
+ * characters <tt>. ^ $ \ ] }</tt> outside a class, as well as <tt>[</tt>,
+ * <tt>\</tt> and a leading <tt>^</tt> inside a class, are matched as
+ * themselves. A warning giving the line and the column is logged for each
+ * of them, so that existing rule files still load.
+ * </p>
+ */
+public class RuleParser {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(RuleParser.class);
+
+	private static final int STRING = 0;
+
+	private static final int VARIABLE = 1;
+
+	private static final int REPEAT = 2;
+
+	private static final int CLASS = 3;
+
+	private static final int OPEN = 4;
+
+	private static final int CLOSE = 5;
+
+	private static final int OR = 6;
+
+	private static final int CHARACTER = 7;
+
+	private static final int END = 8;
+
+	/** the pattern of every variable declared so far */
+	private final Map<String, PatternNode> variables = new HashMap<String, PatternNode>();
+
+	/** text being parsed */
+	private String source;
+
+	/** line of the text, for the errors */
+	private int line;
+
+	/** column of the first character of the text, for the errors */
+	private int firstColumn;
+
+	/** position of the next character to tokenize */
+	private int position;
+
+	/** the current token */
+	private Token token;
+
+	/**
+	 * A token of the rule language.
+	 */
+	private static class Token {
+		int type;
+
+		/** position of the token in the source */
+		int start;
+
+		/** text of a string, name of a variable */
+		String text;
+
+		/** pattern of a class */
+		PatternNode node;
+
+		/** bounds of a repetition */
+		int min, max;
+
+		Token(int type, int start) {
+			this.type = type;
+			this.start = start;
+		}
+	}
+
+	/**
+	 * Declares a variable of the <tt>defineVars</tt> section, once its value
+	 * has been checked and stored by the variable.
+	 *
+	 * @param value
+	 *            the value as written in the rule file
+	 * @param line
+	 *            line of the declaration, for the errors
+	 * @param column
+	 *            column of the first character of the value
+	 * @throws RuleSyntaxException
+	 *             if a character set or range is not well formed
+	 */
+	public void defineVariable(String name, Variable variable, String value,
+			int line, int column) throws RuleSyntaxException {
+		PatternNode node;
+		if (variable instanceof StringSet) {
+			List<PatternNode> alternatives = new ArrayList<PatternNode>();
+			while (variable.hasNext()) {
+				alternatives.add(new PatternNode.Literal(variable.next()));
+			}
+			variable.resetPointer();
+			node = alternatives.size() == 1 ? alternatives.get(0)
+					: new PatternNode.Alternation(alternatives);
+		} else {
+			// character sets and ranges are written as a class
+			start(value, line, column);
+			if (token.type != CLASS) {
+				throw error("character class expected for variable " + name);
+			}
+			node = token.node;
+			next();
+			if (token.type != END) {
+				throw error("unexpected text after the value of variable "
+						+ name);
+			}
+		}
+		variables.put(name, node);
+	}
+
+	/**
+	 * Parses the left hand side of a rule, without its category.
+	 *
+	 * @param line
+	 *            line of the rule, for the errors
+	 * @param column
+	 *            column of the first character of the left hand side
+	 * @return the pattern of the rule
+	 */
+	public PatternNode parse(String lhs, int line, int column)
+			throws RuleSyntaxException {
+		start(lhs, line, column);
+		PatternNode node = alternation();
+		if (token.type == CLOSE) {
+			throw error("unmatched ')'");
+		}
+		return node;
+	}
+
+	private void start(String text, int line, int column)
+			throws RuleSyntaxException {
+		this.source = text;
+		this.line = line;
+		this.firstColumn = column;
+		this.position = 0;
+		next();
+	}
+
+	private PatternNode alternation() throws RuleSyntaxException {
+		List<PatternNode> alternatives = new ArrayList<PatternNode>();
+		alternatives.add(sequence());
+		while (token.type == OR) {
+			next();
+			alternatives.add(sequence());
+		}
+		return alternatives.size() == 1 ? alternatives.get(0)
+				: new PatternNode.Alternation(alternatives);
+	}
+
+	private PatternNode sequence() throws RuleSyntaxException {
+		List<PatternNode> items = new ArrayList<PatternNode>();
+		while (token.type != OR && token.type != CLOSE && token.type != END) {
+			PatternNode atom = atom();
+			boolean repeated = false;
+			while (token.type == REPEAT) {
+				atom = new PatternNode.Repeat(atom, token.min, token.max);
+				repeated = true;
+				next();
+			}
+			// consecutive characters and strings make a single literal
+			int last = items.size() - 1;
+			if (!repeated && atom instanceof PatternNode.Literal && last >= 0
+					&& items.get(last) instanceof PatternNode.Literal) {
+				items.set(last, new PatternNode.Literal(
+						((PatternNode.Literal) items.get(last)).getText()
+								+ ((PatternNode.Literal) atom).getText()));
+			} else {
+				items.add(atom);
+			}
+		}
+		return items.size() == 1 ? items.get(0) : new PatternNode.Sequence(
+				items);
+	}
+
+	private PatternNode atom() throws RuleSyntaxException {
+		PatternNode node;
+		switch (token.type) {
+		case STRING:
+		case CHARACTER:
+			node = new PatternNode.Literal(token.text);
+			break;
+		case VARIABLE:
+			node = variables.get(token.text);
+			if (node == null) {
+				warn(token.start, "undefined variable " + token.text
+						+ " is matched as its name");
+				node = new PatternNode.Literal(token.text);
+			}
+			break;
+		case CLASS:
+			node = token.node;
+			break;
+		case OPEN:
+			Token open = token;
+			next();
+			node = alternation();
+			if (token.type != CLOSE) {
+				token = open;
+				throw error("unmatched '('");
+			}
+			break;
+		default:
+			// a repetition with nothing to repeat
+			throw error("nothing to repeat before '"
+					+ source.substring(token.start, position) + "'");
+		}
+		next();
+		return node;
+	}
+
+	/**
+	 * Reads the next token into {@link #token}.
+	 */
+	private void next() throws RuleSyntaxException {
+		int start = position;
+		if (start >= source.length()) {
+			token = new Token(END, start);
+			return;
+		}
+		char ch = source.charAt(start);
+		if (source.startsWith(" OR ", start) || ch == '|') {
+			token = new Token(OR, start);
+			position += ch == '|' ? 1 : 4;
+			return;
+		}
+		switch (ch) {
+		case '"': {
+			int close = source.indexOf('"', start + 1);
+			if (close < 0) {
+				throw error(start, "unterminated string");
+			}
+			token = new Token(STRING, start);
+			token.text = source.substring(start + 1, close);
+			position = close + 1;
+			return;
+		}
+		case '{': {
+			int close = source.indexOf('}', start + 1);
+			if (close < 0) {
+				throw error(start, "unterminated '{'");
+			}
+			String content = source.substring(start + 1, close).trim();
+			position = close + 1;
+			if (content.length() > 0 && Character.isDigit(content.charAt(0))) {
+				token = new Token(REPEAT, start);
+				count(content);
+			} else if (isName(content)) {
+				token = new Token(VARIABLE, start);
+				token.text = content;
+			} else {
+				throw error(start, "variable name or repetition count expected");
+			}
+			return;
+		}
+		case '[':
+			token = new Token(CLASS, start);
+			token.node = characterClass(start);
+			return;
+		case '(':
+			token = new Token(OPEN, start);
+			position++;
+			return;
+		case ')':
+			token = new Token(CLOSE, start);
+			position++;
+			return;
+		case '*':
+		case '+':
+		case '?':
+			token = new Token(REPEAT, start);
+			token.min = ch == '+' ? 1 : 0;
+			token.max = ch == '?' ? 1 : PatternNode.UNBOUNDED;
+			position++;
+			return;
+		case '\\':
+		case '.':
+		case '^':
+		case '$':
+		case ']':
+		case '}':
+			warn(start, "'" + ch + "' is matched as itself");
+			// fall through
+		default:
+			token = new Token(CHARACTER, start);
+			token.text = String.valueOf(ch);
+			position++;
+		}
+	}
+
+	/**
+	 * Reads the bounds of a <tt>{n}</tt>, <tt>{n,}</tt> or <tt>{n,m}</tt>
+	 * repetition into the current token.
+	 */
+	private void count(String content) throws RuleSyntaxException {
+		String[] bounds = content.split(",", -1);
+		try {
+			token.min = Integer.parseInt(bounds[0].trim());
+			token.max = bounds.length == 1 ? token.min
+					: bounds[1].trim().length() == 0 ? PatternNode.UNBOUNDED
+							: Integer.parseInt(bounds[1].trim());
+		} catch (NumberFormatException e) {
+			throw error("malformed repetition count");
+		}
+		if (bounds.length > 2
+				|| (token.max != PatternNode.UNBOUNDED && token.max < token.min)) {
+			throw error("malformed repetition count");
+		}
+	}
+
+	/**
+	 * Reads the class starting at the given position, up to the first
+	 * <tt>]</tt>.
+	 */
+	private PatternNode characterClass(int start) throws RuleSyntaxException {
+		int close = source.indexOf(']', start + 1);
+		if (close < 0) {
+			throw error(start, "unterminated '['");
+		}
+		int i = start + 1;
+		// [-a-z] is the syntax of the character range variables
+		if (i < close && source.charAt(i) == '-') {
+			i++;
+		}
+		// the single characters are ranges of one character
+		char[] lows = new char[close - i];
+		char[] highs = new char[lows.length];
+		int ranges = 0;
+		while (i < close) {
+			char ch = source.charAt(i);
+			if (ch == '\\' || ch == '[' || (ch == '^' && i == start + 1)) {
+				warn(i, "'" + ch + "' is matched as itself in character class");
+			}
+			lows[ranges] = ch;
+			if (i + 2 < close && source.charAt(i + 1) == '-') {
+				char end = source.charAt(i + 2);
+				if (end < ch) {
+					throw error(i, "invalid range " + ch + "-" + end);
+				}
+				highs[ranges++] = end;
+				i += 3;
+			} else {
+				highs[ranges++] = ch;
+				i++;
+			}
+		}
+		if (ranges == 0) {
+			throw error(start, "empty character class");
+		}
+		position = close + 1;
+		return PatternNode.CharClass.of(CharBitmap.ofRanges(lows, highs, ranges));
+	}
+
+	private static boolean isName(String text) {
+		if (text.length() == 0) {
+			return false;
+		}
+		for (int i = 0; i < text.length(); i++) {
+			if (!Character.isLetterOrDigit(text.charAt(i))
+					&& text.charAt(i) != '_') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Logs a warning about text that is accepted for compatibility.
+	 */
+	private void warn(int offset, String message) {
+		logger.warn("Rule file line " + line + ", column "
+				+ (firstColumn + offset) + ": " + message);
+	}
+
+	private RuleSyntaxException error(String message) {
+		return error(token.start, message);
+	}
+
+	private RuleSyntaxException error(int offset, String message) {
+		return new RuleSyntaxException(message, line, firstColumn + offset);
+	}
+}
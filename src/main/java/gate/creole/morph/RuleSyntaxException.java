@@ -0,0 +1,43 @@
+package gate.creole.morph;
+
+import gate.creole.ResourceInstantiationException;
+
+/**
+ * <p>
+ * Title: RuleSyntaxException.java
+ * </p>
+ * <p>
+ * Description: Thrown by {@link RuleParser} for a rule or a variable that
+ * cannot be parsed, with the line and the column at which the problem was
+ * found.
+ * </p>
+ */
+public class RuleSyntaxException extends ResourceInstantiationException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int line;
+
+	private final int column;
+
+	public RuleSyntaxException(String message, int line, int column) {
+		super("Syntax error at line " + line + ", column " + column + ": "
+				+ message);
+		this.line = line;
+		this.column = column;
+	}
+
+	/**
+	 * @return the line of the rule file, starting from 1
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	/**
+	 * @return the column of the line, starting from 1
+	 */
+	public int getColumn() {
+		return column;
+	}
+}
@@ -0,0 +1,233 @@
+package gate.creole.morph;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Title: RulesWatcher.java
+ * </p>
+ * <p>
+ * Description: Checks a rule file at a regular interval and, once its
+ * content has changed, loads the new rules on a background thread and
+ * publishes them through a volatile reference. The {@link Morph}s sharing a
+ * watcher pick the new rules up at the start of their next document, so
+ * that no document is interrupted and nothing waits for the rules to be
+ * compiled. If the new rules cannot be loaded the previous ones stay in use,
+ * the error is logged and available from {@link #getLastError()}, and the
+ * file is only loaded again once its content changes again.
+ * </p>
+ * <p>
+ * The new rules are published once for all the morphers sharing the
+ * watcher, with a new {@link LemmaCache} of the capacity of the cache of the
+ * rules given to the watcher and with their {@link MorphLexicon}, so that
+ * the duplicates keep sharing one cache and one lexicon after a reload.
+ * </p>
+ * <p>
+ * A watcher is shared by a morpher and its duplicates, which each
+ * {@link #acquire()} it and {@link #release()} it when they are deleted; the
+ * background thread stops with the last release.
+ * </p>
+ */
+public class RulesWatcher {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(RulesWatcher.class);
+
+	private final URL rulesURL;
+
+	private final boolean compile;
+
+	private final boolean reverse;
+
+	/** the rules currently in use, with the cache and lexicon of the users */
+	private volatile Interpret interpret;
+
+	/** capacity of the cache of the reloaded rules, 0 for no cache */
+	private final int cacheSize;
+
+	/** lexicon of the reloaded rules, null if there is none */
+	private final MorphLexicon lexicon;
+
+	/** hash of the content of the rules in use, guarded by this */
+	private byte[] loadedHash;
+
+	/** hash of the content that last failed to load, or null, guarded by this */
+	private byte[] failedHash;
+
+	private volatile Exception lastError;
+
+	/** number of times new rules were published */
+	private volatile int reloadCount;
+
+	private int users = 1;
+
+	/** held while checking the file, apart from the monitor of the watcher */
+	private final Object checkLock = new Object();
+
+	private final ScheduledExecutorService executor;
+
+	/**
+	 * Starts watching the rule file.
+	 *
+	 * @param interpret
+	 *            the rules loaded from the current content of the file, whose
+	 *            cache capacity and lexicon are given to the reloaded rules
+	 * @param compile
+	 *            true if the rules are to be compiled into an automaton
+	 * @param reverse
+	 *            true if the automaton reads the words from right to left
+	 * @param interval
+	 *            milliseconds between two checks of the file
+	 */
+	public RulesWatcher(URL rulesURL, Interpret interpret, boolean compile,
+			boolean reverse, long interval) throws IOException {
+		this.rulesURL = rulesURL;
+		this.interpret = interpret;
+		LemmaCache cache = interpret.getLemmaCache();
+		this.cacheSize = cache == null ? 0 : cache.getCapacity();
+		this.lexicon = interpret.getLexicon();
+		this.compile = compile;
+		this.reverse = reverse;
+		this.loadedHash = MorphSnapshot.sourceHash(rulesURL);
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Morph rules watcher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				check();
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the rules to use for the next document, to be shared by
+	 *         initialising the Interpret of every user from them
+	 */
+	public Interpret getInterpret() {
+		return interpret;
+	}
+
+	/**
+	 * @return the error raised by the last failed attempt to load the rules,
+	 *         null if the rules in use are those of the file
+	 */
+	public Exception getLastError() {
+		return lastError;
+	}
+
+	/**
+	 * @return the number of times the rules were reloaded
+	 */
+	public int getReloadCount() {
+		return reloadCount;
+	}
+
+	/**
+	 * Loads the rules again if the content of the file has changed since
+	 * they were last loaded. Called by the background thread, but can be
+	 * called directly to check the file immediately. The rules are compiled
+	 * without holding the monitor of the watcher, which is only taken to
+	 * publish them, so that {@link #acquire()} and {@link #release()} never
+	 * wait for a compilation.
+	 *
+	 * @return true if new rules were published
+	 */
+	public boolean check() {
+		// one check at a time, so that the same content is not compiled twice
+		synchronized (checkLock) {
+			byte[] hash;
+			try {
+				hash = MorphSnapshot.sourceHash(rulesURL);
+			} catch (IOException e) {
+				// the file may be in the middle of being replaced
+				logger.debug("Could not read " + rulesURL, e);
+				return false;
+			}
+			synchronized (this) {
+				if (Arrays.equals(hash, loadedHash)
+						|| Arrays.equals(hash, failedHash)) {
+					return false;
+				}
+			}
+
+			Interpret published;
+			try {
+				Interpret reloaded = new Interpret();
+				reloaded.init(rulesURL);
+				if (compile
+						&& !reloaded.determinize(Interpret.DEFAULT_MAX_DFA_STATES,
+								reverse)) {
+					logger.warn("Rules in " + rulesURL + " need more than "
+							+ Interpret.DEFAULT_MAX_DFA_STATES
+							+ " deterministic states, the non-deterministic automaton will be used instead");
+				}
+				if (!reloaded.isDeterministic()) {
+					reloaded.getFrozenFSM();
+				}
+				Interpret registered = InterpretRegistry.register(
+						InterpretRegistry.key(rulesURL, compile, reverse), reloaded);
+				published = new Interpret();
+				published.init(registered);
+				published.setCacheSize(cacheSize);
+				published.setLexicon(lexicon);
+			} catch (Exception e) {
+				synchronized (this) {
+					failedHash = hash;
+					lastError = e;
+				}
+				logger.error("Could not reload the rules of " + rulesURL
+						+ ", the previous rules are still in use", e);
+				return false;
+			}
+
+			synchronized (this) {
+				interpret = published;
+				loadedHash = hash;
+				failedHash = null;
+				lastError = null;
+				reloadCount++;
+			}
+			logger.info("Reloaded the rules of " + rulesURL);
+			return true;
+		}
+	}
+
+	/**
+	 * Registers one more user of this watcher.
+	 *
+	 * @return this watcher
+	 */
+	public synchronized RulesWatcher acquire() {
+		if (users == 0) {
+			throw new IllegalStateException("The watcher of " + rulesURL
+					+ " is stopped");
+		}
+		users++;
+		return this;
+	}
+
+	/**
+	 * Unregisters a user of this watcher, and stops watching the file once
+	 * there are none left.
+	 */
+	public synchronized void release() {
+		if (users > 0 && --users == 0) {
+			executor.shutdownNow();
+		}
+	}
+}
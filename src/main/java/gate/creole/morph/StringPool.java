@@ -0,0 +1,126 @@
+package gate.creole.morph;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Title: StringPool.java
+ * </p>
+ * <p>
+ * Description: Bounded pool of canonical strings, through which {@link Morph}
+ * passes the roots and affixes it puts on the tokens, so that the tokens of
+ * a document, or of a whole corpus, share one instance of each frequent
+ * value such as "be", "have" or "s" instead of holding a string of their own.
+ * The pool is a hash table with a single string per slot and no probing: a
+ * string that hashes to a taken slot replaces the string there, so the pool
+ * never grows beyond its capacity and the most recent values stay in it.
+ * Reads and writes of the slots are atomic and lock free, so the pool can be
+ * shared by all the duplicates of a {@link Morph}. The affixes and the
+ * <tt>irreg_stem</tt> roots are already the interned constants of the rules;
+ * the pool is what shares the roots built by <tt>stem</tt>,
+ * <tt>semi_reg_stem</tt> and the case folding.
+ * </p>
+ */
+public class StringPool {
+
+	private final AtomicReferenceArray<String> slots;
+
+	private final int mask;
+
+	/** counted without a shared lock as every value updates one of them */
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * @param capacity
+	 *            maximum number of strings, must be positive, rounded up to a
+	 *            power of two
+	 */
+	public StringPool(int capacity) {
+		if (capacity <= 0 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Pool capacity must be positive: "
+					+ capacity);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		slots = new AtomicReferenceArray<String>(size);
+		mask = size - 1;
+	}
+
+	/**
+	 * @return the pooled string equal to value, which is value itself if
+	 *         there was none, or null if value is null
+	 */
+	public String canonicalize(String value) {
+		if (value == null) {
+			return null;
+		}
+		int h = value.hashCode();
+		h ^= (h >>> 16);
+		int slot = h & mask;
+		String pooled = slots.get(slot);
+		if (pooled != null && (pooled == value || pooled.equals(value))) {
+			hits.increment();
+			return pooled;
+		}
+		// the string of another value is evicted by this one
+		slots.lazySet(slot, value);
+		misses.increment();
+		return value;
+	}
+
+	/**
+	 * @return the maximum number of strings
+	 */
+	public int getCapacity() {
+		return slots.length();
+	}
+
+	/**
+	 * @return the current number of strings in the pool
+	 */
+	public int size() {
+		int size = 0;
+		for (int i = 0; i < slots.length(); i++) {
+			if (slots.get(i) != null) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return the number of values for which a pooled string was returned
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of values that were added to the pool
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Removes all the strings and resets the counters.
+	 */
+	public void clear() {
+		for (int i = 0; i < slots.length(); i++) {
+			slots.set(i, null);
+		}
+		hits.reset();
+		misses.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "StringPool[size=" + size() + ", capacity=" + getCapacity()
+				+ ", hits=" + getHits() + ", misses=" + getMisses() + "]";
+	}
+}
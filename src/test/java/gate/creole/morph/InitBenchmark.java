@@ -0,0 +1,90 @@
+package gate.creole.morph;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.Random;
+
+/**
+ * Measures the time it takes to load a rule file the way {@link Morph} does
+ * when the rules are not compiled: {@link Interpret#init(URL)} parses the
+ * rules and {@link Interpret#getFrozenFSM()} builds their FSM, for the
+ * default rules and for a synthetic rule file.
+ * Not a unit test, run it with
+ * <tt>java gate.creole.morph.InitBenchmark [rules] [rounds]</tt> with the
+ * test classes and resources on the classpath; the synthetic file has 50000
+ * rules by default.
+ */
+public class InitBenchmark {
+
+	private static final String[] SUFFIXES = { "", "{EDING}", "{ESEDING}",
+			"s", "es" };
+
+	public static void main(String[] args) throws Exception {
+		int ruleCount = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		URL defaultRules = InitBenchmark.class
+				.getResource("/resources/morph/default.rul");
+		time("default.rul", defaultRules, rounds);
+
+		File synthetic = File.createTempFile("synthetic", ".rul");
+		try {
+			writeRules(synthetic, ruleCount);
+			time(ruleCount + " rules", synthetic.toURI().toURL(), rounds);
+		} finally {
+			synthetic.delete();
+		}
+	}
+
+	private static void time(String name, URL rules, int rounds)
+			throws Exception {
+		long best = Long.MAX_VALUE;
+		long bestParse = Long.MAX_VALUE;
+		for (int r = 0; r < rounds; r++) {
+			Interpret interpret = new Interpret();
+			long start = System.nanoTime();
+			interpret.init(rules);
+			long parsed = System.nanoTime();
+			interpret.getFrozenFSM();
+			long end = System.nanoTime();
+			bestParse = Math.min(bestParse, parsed - start);
+			best = Math.min(best, end - start);
+		}
+		System.out.printf(
+				"%-12s %8d ms to initialise, %d ms of which parsing (best of %d)%n",
+				name, best / 1000000, bestParse / 1000000, rounds);
+	}
+
+	/**
+	 * Writes a rule file with the variables of the default rules and
+	 * <tt>ruleCount</tt> rules on random words.
+	 */
+	private static void writeRules(File file, int ruleCount) throws IOException {
+		Random random = new Random(42);
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			out.write("defineVars\n");
+			out.write("A ==> [abcdefghijklmnopqrstuvwxyz0123456789-]\n");
+			out.write("EDING ==> \"ed\" OR \"ing\"\n");
+			out.write("ESEDING ==> \"es\" OR \"ed\" OR \"ing\"\n\n");
+			out.write("defineRules\n");
+			for (int i = 0; i < ruleCount; i++) {
+				StringBuilder word = new StringBuilder();
+				int length = 3 + random.nextInt(8);
+				for (int j = 0; j < length; j++) {
+					word.append((char) ('a' + random.nextInt(26)));
+				}
+				String suffix = SUFFIXES[random.nextInt(SUFFIXES.length)];
+				out.write((random.nextBoolean() ? "<verb>" : "<noun>") + word
+						+ suffix + "  ==> irreg_stem(\"" + word + "\",\"s\")\n");
+			}
+			out.write("<*>{A}+  ==> null_stem()\n");
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package gate.creole.morph;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the forward and the reverse automata of the default rules: size,
+ * compilation time, number of characters read before a word is accepted or
+ * rejected, and time per lookup. Not a unit test, run it with
+ * <tt>java gate.creole.morph.MorphBenchmark [rounds]</tt> with the test
+ * classes and resources on the classpath.
+ */
+public class MorphBenchmark {
+
+	private static final String[] CATEGORIES = { "*", "VB", "VBD", "NN",
+			"NNS", "JJ" };
+
+	public static void main(String[] args) throws Exception {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		URL rulesURL = MorphBenchmark.class
+				.getResource("/resources/morph/default.rul");
+
+		List<String> words = new ArrayList<String>();
+		for (String list : new String[] { "verbTest", "verbAnswer", "nounTest",
+				"nounAnswer" }) {
+			readWords("/tests/morph/" + list + ".dat", words);
+		}
+
+		Interpret interpret = new Interpret();
+		interpret.init(rulesURL);
+		System.out.println(words.size() + " words, " + CATEGORIES.length
+				+ " categories, " + rounds + " rounds");
+		for (boolean reverse : new boolean[] { false, true }) {
+			long start = System.nanoTime();
+			if (!interpret.determinize(Interpret.DEFAULT_MAX_DFA_STATES, reverse)) {
+				System.out.println("too many states");
+				continue;
+			}
+			long compile = System.nanoTime() - start;
+			MorphAutomaton automaton = interpret.getAutomaton();
+
+			long read = 0;
+			for (String word : words) {
+				read += charactersRead(automaton, word);
+			}
+
+			MorphResult result = new MorphResult();
+			long time = 0;
+			int lookups = 0;
+			for (int r = 0; r < rounds; r++) {
+				start = System.nanoTime();
+				for (String word : words) {
+					for (String category : CATEGORIES) {
+						interpret.analyse(word, category, result);
+					}
+				}
+				// the first rounds only warm up the JIT
+				if (r >= rounds / 2) {
+					time += System.nanoTime() - start;
+					lookups += words.size() * CATEGORIES.length;
+				}
+			}
+
+			System.out.printf("%-8s %6d states %7d transitions %8d bytes "
+					+ "%6d ms to compile %5.2f chars read per word "
+					+ "%6.1f ns per lookup%n", reverse ? "reverse" : "forward",
+					automaton.getStateCount(), automaton.getTransitionCount(),
+					automaton.estimateHeapSize(), compile / 1000000,
+					(double) read / words.size(), (double) time / lookups);
+		}
+	}
+
+	/**
+	 * @return the number of characters read before the automaton stops, the
+	 *         words of the literal table cost none
+	 */
+	private static int charactersRead(MorphAutomaton automaton, String word) {
+		if (automaton.getLiterals().find(word) >= 0) {
+			return 0;
+		}
+		int state = MorphAutomaton.INITIAL_STATE;
+		int read = 0;
+		for (int i = 0; i < word.length(); i++) {
+			char ch = word.charAt(automaton.isReverse() ? word.length() - 1 - i
+					: i);
+			read++;
+			state = automaton.next(state, ch);
+			if (state == MorphAutomaton.NO_STATE) {
+				break;
+			}
+		}
+		return read;
+	}
+
+	private static void readWords(String resource, List<String> words)
+			throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				MorphBenchmark.class.getResourceAsStream(resource), "UTF-8"));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.length() > 0) {
+					words.add(line);
+					words.add(Character.toUpperCase(line.charAt(0))
+							+ line.substring(1));
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+}
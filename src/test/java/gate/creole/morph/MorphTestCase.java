@@ -0,0 +1,170 @@
+package gate.creole.morph;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Fixture of the morpher tests: the default rules loaded into the
+ * non-deterministic automaton built by {@link ParsingFunctions}, which is
+ * used as the reference implementation, the words of the test documents,
+ * and a temporary directory for the rule files a test writes, deleted once
+ * the test is over.
+ */
+public abstract class MorphTestCase extends TestCase {
+
+	protected static final String[] CATEGORIES = { "*", "VB", "VBD", "NN",
+			"NNS", "JJ" };
+
+	protected URL rulesURL;
+
+	protected Interpret reference;
+
+	protected List<String> words;
+
+	/** the temporary directory of the test, null until it is needed */
+	private File tempDir;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		rulesURL = this.getClass().getResource("/resources/morph/default.rul");
+		reference = new Interpret();
+		reference.init(rulesURL);
+
+		words = new ArrayList<String>();
+		readWords("/tests/morph/verbTest.dat", words);
+		readWords("/tests/morph/verbAnswer.dat", words);
+		readWords("/tests/morph/nounTest.dat", words);
+		readWords("/tests/morph/nounAnswer.dat", words);
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		if (tempDir != null) {
+			deleteAll(tempDir);
+			tempDir = null;
+		}
+		super.tearDown();
+	}
+
+	/**
+	 * @return the temporary directory of the test, created on the first call
+	 */
+	protected File tempDir() throws IOException {
+		if (tempDir == null) {
+			tempDir = File.createTempFile("morph", "");
+			assertTrue(tempDir.delete() && tempDir.mkdir());
+		}
+		return tempDir;
+	}
+
+	/**
+	 * @return a copy of the default rules named <tt>default.rul</tt> in the
+	 *         temporary directory
+	 */
+	protected File copyRules() throws IOException {
+		File rules = new File(tempDir(), "default.rul");
+		InputStream in = rulesURL.openStream();
+		OutputStream out = new FileOutputStream(rules);
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			out.close();
+			in.close();
+		}
+		return rules;
+	}
+
+	/**
+	 * @return a new rule file of the temporary directory holding the text
+	 */
+	protected File writeRules(String text) throws IOException {
+		File rules = File.createTempFile("rules", ".rul", tempDir());
+		OutputStream out = new FileOutputStream(rules);
+		try {
+			out.write(text.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		return rules;
+	}
+
+	/**
+	 * Appends the text to the file.
+	 */
+	protected static void append(File file, String text) throws IOException {
+		OutputStream out = new FileOutputStream(file, true);
+		try {
+			out.write(text.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	protected static void collectGarbage() throws InterruptedException {
+		System.gc();
+		Thread.sleep(10);
+	}
+
+	private static void deleteAll(File dir) {
+		for (File file : dir.listFiles()) {
+			if (file.isDirectory()) {
+				deleteAll(file);
+			} else {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	/**
+	 * Checks that the interpret gives the words the roots and the affixes of
+	 * the reference implementation.
+	 */
+	protected void assertEquivalent(Interpret interpret) {
+		for (String word : words) {
+			for (String category : CATEGORIES) {
+				String expectedRoot = reference.runMorpher(word, category);
+				String expectedAffix = reference.getAffix();
+				String root = interpret.runMorpher(word, category);
+				assertEquals(word + "/" + category, expectedRoot, root);
+				assertEquals(word + "/" + category, expectedAffix,
+						interpret.getAffix());
+			}
+		}
+	}
+
+	private void readWords(String resource, List<String> words)
+			throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(this
+				.getClass().getResourceAsStream(resource), "UTF-8"));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.length() > 0) {
+					words.add(line);
+					// capitalised forms exercise the no match paths
+					words.add(Character.toUpperCase(line.charAt(0))
+							+ line.substring(1));
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package gate.creole.morph;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the {@link FrozenFSM} walked when the rules are not compiled.
+ */
+public class TestFrozenFSM extends MorphTestCase {
+
+	/**
+	 * The FSM walked when the rules are not compiled, as {@link Morph} does
+	 * by default, must take less memory frozen into tables than as the graph
+	 * of {@link FSMState}s it is frozen from, and lead every word to the same
+	 * rules.
+	 */
+	public void testFrozenFSMHeapSize() throws Exception {
+		FSMState root = reference.getInitialState();
+		FrozenFSM frozen = reference.getFrozenFSM();
+		long tables = frozen.estimateHeapSize();
+		long graph = HeapSize.fsmGraph(root);
+		assertTrue("frozen FSM uses " + tables + " bytes, the FSM " + graph,
+				tables < graph);
+
+		FrozenFSM.Walk walk = new FrozenFSM.Walk();
+		for (String word : words) {
+			Set<FSMState> states = new HashSet<FSMState>();
+			states.add(root);
+			for (int i = 0; i < word.length(); i++) {
+				Set<FSMState> next = new HashSet<FSMState>();
+				for (FSMState st : states) {
+					st.addNext(word.charAt(i), next);
+				}
+				states = next;
+			}
+			SortedSet<Integer> expected = new TreeSet<Integer>();
+			for (FSMState st : states) {
+				for (RHS rhs : st.getRHSes()) {
+					expected.add((int) rhs.getPatternIndex());
+				}
+			}
+			frozen.walk(word, false, walk);
+			int count = frozen.collectRules(walk);
+			List<Integer> actual = new ArrayList<Integer>();
+			for (int i = 0; i < count; i++) {
+				actual.add(walk.getRule(i));
+			}
+			assertEquals(word, new ArrayList<Integer>(expected), actual);
+		}
+	}
+
+	/**
+	 * The rules are applied to the words reaching them in the frozen FSM
+	 * without running their patterns, so a word must reach exactly the rules
+	 * whose patterns match it.
+	 */
+	public void testFrozenFSMExact() throws Exception {
+		FrozenFSM frozen = reference.getFrozenFSM();
+		FrozenFSM.Walk walk = new FrozenFSM.Walk();
+		for (int w = 0; w < words.size(); w += 3) {
+			String word = words.get(w);
+			List<Integer> expected = new ArrayList<Integer>();
+			for (int i = 0; i < reference.patterns.size(); i++) {
+				if (reference.patterns.get(i).matcher(word).matches()) {
+					expected.add(i);
+				}
+			}
+			frozen.walk(word, false, walk);
+			int count = frozen.collectRules(walk);
+			List<Integer> actual = new ArrayList<Integer>();
+			for (int i = 0; i < count; i++) {
+				actual.add(walk.getRule(i));
+			}
+			assertEquals(word, expected, actual);
+		}
+	}
+
+	/**
+	 * Walking the FSM of rules that are not compiled must allocate no more
+	 * than the compiled automaton, which only allocates the roots.
+	 */
+	public void testFrozenFSMAllocation() throws Exception {
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+			return;
+		}
+		Interpret compiled = new Interpret();
+		compiled.init(rulesURL);
+		assertTrue(compiled.determinize());
+		long walked = allocatedBytes(reference);
+		long dfa = allocatedBytes(compiled);
+		assertTrue("FSM walk allocated " + walked + " bytes, the automaton "
+				+ dfa, walked <= dfa + dfa / 10);
+	}
+
+	/**
+	 * @return the bytes allocated by the second analysis of the words
+	 */
+	private long allocatedBytes(Interpret interpret) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		MorphResult result = new MorphResult();
+		long allocated = 0;
+		for (int run = 0; run < 2; run++) {
+			long start = threads.getThreadAllocatedBytes(Thread.currentThread()
+					.getId());
+			for (String word : words) {
+				interpret.analyse(word, "VBD", result);
+				interpret.analyse(word, "NNS", result);
+			}
+			allocated = threads.getThreadAllocatedBytes(Thread.currentThread()
+					.getId())
+					- start;
+		}
+		return allocated;
+	}
+
+	/**
+	 * A repeated variable must be a single class transition of the FSM
+	 * rather than one state and one transition per character.
+	 */
+	public void testClassTransitions() throws Exception {
+		File rules = writeRules("defineVars\n"
+				+ "A ==> [abcdefghijklmnopqrstuvwxyz0123456789-]\n"
+				+ "\ndefineRules\n<noun>{A}*\"men\"  ==> stem(2,\"an\",\"s\")\n");
+		Interpret interpret = new Interpret();
+		interpret.init(rules.toURI().toURL());
+		FSMState root = interpret.getInitialState();
+		assertEquals(1, root.getClassCount());
+		FSMState loop = root.getClassTarget(0);
+		assertEquals(37, root.getClassChars(0).size());
+		assertEquals(1, loop.getClassCount());
+		assertSame(loop, loop.getClassTarget(0));
+		// "men" is read from the root as well as from the loop
+		assertNotNull(root.next('m', FSMState.CHILD_STATE));
+		assertSame(root.next('m', FSMState.CHILD_STATE), loop.next('m',
+				FSMState.CHILD_STATE));
+
+		assertEquals("chairman", interpret.runMorpher("chairmen", "NNS"));
+		assertEquals("man", interpret.runMorpher("men", "NNS"));
+		assertEquals("Chairmen", interpret.runMorpher("Chairmen", "NNS"));
+
+		// the same results once compiled
+		assertTrue(interpret.determinize());
+		assertEquals("chairman", interpret.runMorpher("chairmen", "NNS"));
+		assertEquals("Chairmen", interpret.runMorpher("Chairmen", "NNS"));
+	}
+
+	public static Test suite() {
+		return new TestSuite(TestFrozenFSM.class);
+	}
+}
@@ -0,0 +1,251 @@
+package gate.creole.morph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the analyses of the {@link Interpret} API against the
+ * reference implementation, one word, a batch of words or every category
+ * at a time.
+ */
+public class TestInterpret extends MorphTestCase {
+
+	/**
+	 * The deterministic automaton must give exactly the same results as the
+	 * non-deterministic one.
+	 */
+	public void testDeterministicEquivalence() throws Exception {
+		Interpret dfa = new Interpret();
+		dfa.init(rulesURL);
+		assertTrue(dfa.determinize());
+		assertTrue(dfa.isDeterministic());
+		assertFalse(reference.isDeterministic());
+		assertEquivalent(dfa);
+
+		// a duplicate shares the compiled automaton
+		Interpret duplicate = new Interpret();
+		duplicate.init(dfa);
+		assertTrue(duplicate.isDeterministic());
+		assertEquivalent(duplicate);
+	}
+
+	/**
+	 * Analysing a word ignoring its case must give exactly the results of
+	 * analysing the word in lower case.
+	 */
+	public void testIgnoringCase() throws Exception {
+		Interpret dfa = new Interpret();
+		dfa.init(rulesURL);
+		assertTrue(dfa.determinize());
+		Interpret reverse = new Interpret();
+		reverse.init(rulesURL);
+		assertTrue(reverse.determinize(Interpret.DEFAULT_MAX_DFA_STATES, true));
+
+		List<String> cased = new ArrayList<String>();
+		for (String word : words) {
+			cased.add(word);
+			cased.add(word.toUpperCase());
+			if (word.length() > 1) {
+				cased.add(Character.toUpperCase(word.charAt(0))
+						+ word.substring(1));
+			}
+		}
+		cased.add("\u00C9T\u00C9S");
+		cased.add("Stra\u00DFE");
+
+		MorphResult expected = new MorphResult();
+		MorphResult actual = new MorphResult();
+		for (int i = 0; i < cased.size(); i++) {
+			String word = cased.get(i);
+			// the FSM is slow, only fold some of the words with it
+			Interpret[] interprets = i % 10 == 0 ? new Interpret[] { dfa,
+					reverse, reference } : new Interpret[] { dfa, reverse };
+			for (String category : CATEGORIES) {
+				boolean found = dfa.analyse(word.toLowerCase(), category,
+						expected);
+				for (Interpret interpret : interprets) {
+					assertEquals(word, found, interpret.analyseIgnoringCase(word,
+							category, actual));
+					assertEquals(word, expected.getRoot(), actual.getRoot());
+					assertEquals(word, expected.getAffix(), actual.getAffix());
+					assertEquals(word, expected.getPatternIndex(), actual
+							.getPatternIndex());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Analysing a batch of words must give the results of analysing them one
+	 * at a time.
+	 */
+	public void testBatchAnalyse() throws Exception {
+		Interpret dfa = new Interpret();
+		dfa.init(rulesURL);
+		assertTrue(dfa.determinize());
+
+		int count = words.size();
+		String[] batch = new String[count];
+		String[] categories = new String[count];
+		for (int i = 0; i < count; i++) {
+			batch[i] = i % 3 == 0 ? words.get(i).toUpperCase() : words.get(i);
+			// runs of the same category as well as changes
+			categories[i] = CATEGORIES[(i / 4) % CATEGORIES.length];
+		}
+
+		MorphResult expected = new MorphResult();
+		for (boolean ignoreCase : new boolean[] { false, true }) {
+			String[] roots = new String[count];
+			String[] affixes = new String[count];
+			int found = dfa.analyse(batch, categories, 1, count - 1, ignoreCase,
+					roots, affixes);
+			assertNull(roots[0]);
+			assertNull(roots[count - 1]);
+			int expectedFound = 0;
+			for (int i = 1; i < count - 1; i++) {
+				if (ignoreCase ? dfa.analyseIgnoringCase(batch[i],
+						categories[i], expected) : dfa.analyse(batch[i],
+						categories[i], expected)) {
+					expectedFound++;
+				}
+				assertEquals(batch[i], expected.getRoot(), roots[i]);
+				assertEquals(batch[i], expected.getAffix(), affixes[i]);
+			}
+			assertEquals(expectedFound, found);
+		}
+
+		// without categories every rule is tried
+		String[] roots = new String[count];
+		dfa.analyse(batch, null, roots, null);
+		for (int i = 0; i < count; i++) {
+			dfa.analyse(batch[i], "*", expected);
+			assertEquals(batch[i], expected.getRoot(), roots[i]);
+		}
+	}
+
+	/**
+	 * A single compiled instance must give the reference results when it is
+	 * shared by several threads.
+	 */
+	public void testConcurrentAnalyse() throws Exception {
+		final Interpret shared = new Interpret();
+		shared.init(rulesURL);
+		assertTrue(shared.determinize());
+
+		final List<String[]> expected = new ArrayList<String[]>();
+		for (String word : words) {
+			for (String category : CATEGORIES) {
+				String root = reference.runMorpher(word, category);
+				expected.add(new String[] { word, category, root,
+						reference.getAffix() });
+			}
+		}
+
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					MorphResult result = new MorphResult();
+					try {
+						for (int i = 0; i < expected.size(); i++) {
+							String[] e = expected.get((i + offset * 997)
+									% expected.size());
+							shared.analyse(e[0], e[1], result);
+							assertEquals(e[0] + "/" + e[1], e[2], result.getRoot());
+							assertEquals(e[0] + "/" + e[1], e[3], result.getAffix());
+						}
+					} catch (Throwable ex) {
+						synchronized (failures) {
+							failures.add(ex);
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (!failures.isEmpty()) {
+			throw new AssertionError(failures.get(0));
+		}
+	}
+
+	/**
+	 * The analyses of all the categories at once must be those of the
+	 * categories one by one, whatever the automaton.
+	 */
+	public void testAnalyseAll() throws Exception {
+		Interpret dfa = new Interpret();
+		dfa.init(rulesURL);
+		assertTrue(dfa.determinize());
+		Interpret reverse = new Interpret();
+		reverse.init(rulesURL);
+		assertTrue(reverse.determinize(Interpret.DEFAULT_MAX_DFA_STATES, true));
+
+		MorphResult result = new MorphResult();
+		List<MorphAnalysis> analyses = new ArrayList<MorphAnalysis>();
+		for (String word : words) {
+			List<String> expected = new ArrayList<String>();
+			for (String category : new String[] { "*", "VB", "NN" }) {
+				if (reference.analyse(word, category, result)) {
+					String analysis = result + " " + result.getPatternIndex();
+					if (!expected.contains(analysis)) {
+						expected.add(analysis);
+					}
+				}
+			}
+			for (Interpret interpret : new Interpret[] { dfa, reverse, reference }) {
+				analyses.clear();
+				int added = interpret.analyseAll(word, false, analyses);
+				assertEquals(added, analyses.size());
+				List<String> actual = new ArrayList<String>();
+				for (MorphAnalysis analysis : analyses) {
+					actual.add(analysis.getRoot() + "+" + analysis.getAffix() + " "
+							+ analysis.getPatternIndex());
+				}
+				assertEquals(word, expected, actual);
+			}
+		}
+
+		// the root and affix of the own category come from the same analyses
+		MorphResult own = new MorphResult();
+		for (String word : words) {
+			String upper = word.toUpperCase();
+			for (String category : new String[] { "*", "VBD", "NNS", "JJ" }) {
+				for (Interpret interpret : new Interpret[] { dfa, reverse, reference }) {
+					boolean found = reference.analyse(word, category, result);
+					analyses.clear();
+					assertEquals(found, interpret.analyseAll(word, category, false,
+							analyses, own));
+					assertEquals(word + "/" + category, result + " "
+							+ result.getPatternIndex(), own + " " + own.getPatternIndex());
+					found = reference.analyseIgnoringCase(upper, category, result);
+					analyses.clear();
+					assertEquals(found, interpret.analyseAll(upper, category, true,
+							analyses, own));
+					assertEquals(upper + "/" + category, result + " "
+							+ result.getPatternIndex(), own + " " + own.getPatternIndex());
+				}
+			}
+		}
+
+		analyses.clear();
+		assertEquals(2, dfa.analyseAll("Analyses", true, analyses));
+		assertEquals("analysis+s/noun", analyses.get(0).toString());
+		assertEquals("analyse+s/*", analyses.get(1).toString());
+		analyses.clear();
+		assertEquals(1, dfa.analyseAll("walked", false, analyses));
+		assertEquals("walk+ed/verb", analyses.get(0).toString());
+	}
+
+	public static Test suite() {
+		return new TestSuite(TestInterpret.class);
+	}
+}
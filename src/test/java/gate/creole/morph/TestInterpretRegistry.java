@@ -0,0 +1,60 @@
+package gate.creole.morph;
+
+import java.io.File;
+import java.net.URL;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the {@link InterpretRegistry} of the loaded rules.
+ */
+public class TestInterpretRegistry extends MorphTestCase {
+
+	/**
+	 * The registry must find the rules of a file whatever the spelling of
+	 * its URL, load them again once the file changes, and forget them once
+	 * nothing uses them.
+	 */
+	public void testRegistry() throws Exception {
+		File rules = copyRules();
+		URL url = rules.toURI().toURL();
+		URL otherURL = new File(new File(tempDir(), "."), "default.rul").toURI()
+				.toURL();
+		String key = InterpretRegistry.key(url, true, false);
+		assertEquals(key, InterpretRegistry.key(otherURL, true, false));
+		assertFalse(key.equals(InterpretRegistry.key(url, true, true)));
+		assertNull(InterpretRegistry.get(key));
+
+		Interpret loaded = new Interpret();
+		loaded.init(url);
+		assertTrue(loaded.determinize());
+		assertSame(loaded, InterpretRegistry.register(key, loaded));
+		assertSame(loaded, InterpretRegistry.register(key, new Interpret()));
+
+		// a copy keeps the registered rules reachable
+		Interpret shared = new Interpret();
+		shared.init(InterpretRegistry.get(InterpretRegistry.key(otherURL, true,
+				false)));
+		assertSame(loaded.getAutomaton(), shared.getAutomaton());
+		loaded = null;
+		collectGarbage();
+		assertSame(shared.getAutomaton(), InterpretRegistry.get(key)
+				.getAutomaton());
+
+		append(rules, "\n// changed\n");
+		assertNull(InterpretRegistry.get(InterpretRegistry.key(url, true, false)));
+
+		int size = InterpretRegistry.size();
+		shared = null;
+		for (int i = 0; i < 20 && InterpretRegistry.get(key) != null; i++) {
+			collectGarbage();
+		}
+		assertNull(InterpretRegistry.get(key));
+		assertEquals(size - 1, InterpretRegistry.size());
+	}
+
+	public static Test suite() {
+		return new TestSuite(TestInterpretRegistry.class);
+	}
+}
@@ -0,0 +1,47 @@
+package gate.creole.morph;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the {@link LemmaCache} shared by the copies of the rules.
+ */
+public class TestLemmaCache extends MorphTestCase {
+
+	/**
+	 * Cached results must be the same as computed ones, and the cache must
+	 * stay within its bounds.
+	 */
+	public void testLemmaCache() throws Exception {
+		Interpret cached = new Interpret();
+		cached.init(rulesURL);
+		cached.setCacheSize(100);
+		LemmaCache cache = cached.getLemmaCache();
+		assertNotNull(cache);
+
+		// a duplicate shares the cache
+		Interpret duplicate = new Interpret();
+		duplicate.init(cached);
+		assertSame(cache, duplicate.getLemmaCache());
+
+		assertEquivalent(cached);
+		assertEquivalent(duplicate);
+		assertTrue(cache.size() <= 100);
+		assertTrue(cache.getMisses() > 0);
+
+		// the last words looked up are still in the cache
+		MorphResult result = new MorphResult();
+		long hits = cache.getHits();
+		String word = words.get(words.size() - 1);
+		duplicate.analyse(word, "NN", result);
+		assertEquals(hits + 1, cache.getHits());
+		assertEquals(reference.runMorpher(word, "NN"), result.getRoot());
+
+		cached.setCacheSize(0);
+		assertNull(cached.getLemmaCache());
+	}
+
+	public static Test suite() {
+		return new TestSuite(TestLemmaCache.class);
+	}
+}
@@ -3,12 +3,16 @@ package gate.creole.morph;
 import gate.Annotation;
 import gate.Document;
 import gate.Factory;
+import gate.FeatureMap;
 import gate.creole.ANNIEConstants;
 import gate.creole.ExecutionException;
+import gate.creole.ResourceInstantiationException;
+import gate.creole.ResourceReference;
 import gate.creole.tokeniser.DefaultTokeniser;
 import gate.test.GATEPluginTestCase;
 import gate.util.OffsetComparator;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
@@ -188,6 +192,72 @@ public class TestMorph extends GATEPluginTestCase {
 		}
 	}
 
+	/**
+	 * Test that the parallel mode sets the same features as the sequential one
+	 */
+	public void testParallelExecute() throws Exception {
+		tokeniser.setDocument(nounDocumentToTest);
+		tokeniser.setAnnotationSetName("TokeniserAS");
+		tokeniser.execute();
+
+		morpher.setDocument(nounDocumentToTest);
+		morpher.setAnnotationSetName("TokeniserAS");
+		morpher.setConsiderPOSTag(Boolean.FALSE);
+		morpher.setParallelism(1);
+		morpher.execute();
+
+		List<Annotation> tokens = new ArrayList<Annotation>(nounDocumentToTest
+				.getAnnotations("TokeniserAS").get("Token"));
+		Collections.sort(tokens, new OffsetComparator());
+		List<Object> roots = new ArrayList<Object>();
+		for (Annotation token : tokens) {
+			roots.add(token.getFeatures().remove("root"));
+		}
+
+		morpher.setParallelism(4);
+		morpher.execute();
+		for (int i = 0; i < tokens.size(); i++) {
+			assertEquals(roots.get(i), tokens.get(i).getFeatures().get("root"));
+		}
+	}
+
+	/**
+	 * Test that the cache of a morpher is not set on the rules it registers
+	 * for the other morphers
+	 */
+	public void testRegisteredRulesHaveNoCache() throws Exception {
+		FeatureMap params = Factory.newFeatureMap();
+		params.put("compileAutomaton", Boolean.TRUE);
+		params.put("cacheSize", Integer.valueOf(100));
+		Morph cached = (Morph) Factory.createResource(
+				"gate.creole.morph.Morph", params);
+		try {
+			assertNotNull(cached.getLemmaCache());
+			Interpret registered = InterpretRegistry.get(InterpretRegistry.key(
+					cached.getRulesFile().toURL(), true, false));
+			assertNotNull(registered);
+			assertNull(registered.getLemmaCache());
+		} finally {
+			Factory.deleteResource(cached);
+		}
+	}
+
+	/**
+	 * Test that a lexicon directory without word lists fails the creation of
+	 * the morpher rather than its first document
+	 */
+	public void testMissingLexicon() throws Exception {
+		FeatureMap params = Factory.newFeatureMap();
+		params.put("lexicon", new ResourceReference(new File("no such directory")
+				.toURI().toURL()));
+		try {
+			Factory.createResource("gate.creole.morph.Morph", params);
+			fail("no word list to read");
+		} catch (ResourceInstantiationException e) {
+			// expected
+		}
+	}
+
 	public static Test suite() {
 		return new TestSuite(TestMorph.class);
 	}
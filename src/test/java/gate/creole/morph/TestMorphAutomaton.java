@@ -0,0 +1,191 @@
+package gate.creole.morph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the {@link MorphAutomaton} the rules are compiled into.
+ */
+public class TestMorphAutomaton extends MorphTestCase {
+
+	/**
+	 * Every rule of the default rule file must be compiled into the exact
+	 * automaton, and rules that are not must still be validated with their
+	 * regular expression.
+	 */
+	public void testExactAutomaton() throws Exception {
+		Interpret dfa = new Interpret();
+		dfa.init(rulesURL);
+		assertTrue(dfa.determinize());
+		assertTrue(dfa.getAutomaton().isExact());
+		assertEquals(0, dfa.getAutomaton().getInexactRuleCount());
+
+		assertNull(PatternCompiler.parseRegularExpression("a.b"));
+		assertNull(PatternCompiler.parseRegularExpression("(ab"));
+		assertNotNull(PatternCompiler.parseRegularExpression("(a|b)*[cd-]+e?"));
+
+		// leave every third rule out of the automaton
+		PatternCompiler compiler = new PatternCompiler();
+		for (int i = 0; i < dfa.rules.size(); i++) {
+			if (i % 3 == 0) {
+				assertFalse(compiler.addRule((PatternNode) null, dfa.rules.get(i)));
+			} else {
+				assertTrue(compiler.addRule(dfa.patterns.get(i).pattern(),
+						dfa.rules.get(i)));
+			}
+		}
+		dfa.automaton = compiler.compile(Interpret.DEFAULT_MAX_DFA_STATES);
+		assertEquals((dfa.rules.size() + 2) / 3, dfa.getAutomaton()
+				.getInexactRuleCount());
+		assertEquivalent(dfa);
+	}
+
+	/**
+	 * The automaton of the reversed rules must give the same results.
+	 */
+	public void testReverseAutomaton() throws Exception {
+		Interpret reverse = new Interpret();
+		reverse.init(rulesURL);
+		assertTrue(reverse.determinize(Interpret.DEFAULT_MAX_DFA_STATES, true));
+		assertTrue(reverse.getAutomaton().isReverse());
+		assertEquivalent(reverse);
+
+		// a failed compilation keeps the current automaton
+		MorphAutomaton automaton = reverse.getAutomaton();
+		assertFalse(reverse.determinize(10));
+		assertSame(automaton, reverse.getAutomaton());
+	}
+
+	/**
+	 * Whole word exceptions must be kept out of the automaton and looked up in
+	 * its literal table.
+	 */
+	public void testLiteralTable() throws Exception {
+		Interpret dfa = new Interpret();
+		dfa.init(rulesURL);
+		assertTrue(dfa.determinize());
+		LiteralTable literals = dfa.getAutomaton().getLiterals();
+		assertTrue(literals.size() > 0);
+
+		int slot = literals.find("abode");
+		assertTrue(slot >= 0);
+		assertEquals(LiteralTable.NO_RULE, literals.getRule(slot,
+				Interpret.NOUN_CATEGORY));
+		assertEquals("abide", dfa.runMorpher("abode", "VBD"));
+		assertEquals("ed", dfa.getAffix());
+		assertEquals(literals.getRule(slot, Interpret.VERB_CATEGORY), dfa
+				.getPatternIndex());
+
+		// productive forms go through the automaton
+		assertEquals(-1, literals.find("walked"));
+		assertEquals("walk", dfa.runMorpher("walked", "VBD"));
+	}
+
+	/**
+	 * If the automaton would be too large the NFA is kept.
+	 */
+	public void testDeterministicStateLimit() throws Exception {
+		Interpret dfa = new Interpret();
+		dfa.init(rulesURL);
+		assertFalse(dfa.determinize(10));
+		assertFalse(dfa.isDeterministic());
+		assertEquivalent(dfa);
+	}
+
+	/**
+	 * Minimization must not change the RHSes of any word, and a minimal
+	 * automaton cannot be reduced any further.
+	 */
+	public void testMinimization() throws Exception {
+		Interpret dfa = new Interpret();
+		dfa.init(rulesURL);
+		assertNull(dfa.getMinimizationStatistics());
+		assertTrue(dfa.determinize());
+		MinimizationStatistics statistics = dfa.getMinimizationStatistics();
+		assertNotNull(statistics);
+		MorphAutomaton minimal = dfa.getAutomaton();
+		assertEquals(minimal.getStateCount(), statistics.getStatesAfter());
+		assertEquals(minimal.getTransitionCount(), statistics
+				.getTransitionsAfter());
+		assertTrue(statistics.getStatesAfter() <= statistics.getStatesBefore());
+		assertTrue(statistics.getBytesAfter() <= statistics.getBytesBefore());
+		assertEquals(minimal.getStateCount(), minimal.minimize().getStateCount());
+
+		// the automaton before its minimization lists the same rules
+		PatternCompiler compiler = new PatternCompiler();
+		for (int i = 0; i < reference.rules.size(); i++) {
+			compiler.addRule(reference.lhses.get(i), reference.rules.get(i));
+		}
+		MorphAutomaton compiled = compiler
+				.compile(Interpret.DEFAULT_MAX_DFA_STATES);
+		MorphAutomaton minimalCompiled = compiled.minimize();
+		assertTrue(minimalCompiled.getStateCount() < compiled.getStateCount());
+		for (String word : words) {
+			assertEquals(word, rhsList(compiled, word), rhsList(
+					minimalCompiled, word));
+		}
+	}
+
+	private List<RHS> rhsList(MorphAutomaton automaton, String word) {
+		List<RHS> rhses = new ArrayList<RHS>();
+		int state = automaton.walk(word);
+		if (state != MorphAutomaton.NO_STATE) {
+			for (int i = automaton.getRHSStart(state); i < automaton
+					.getRHSEnd(state); i++) {
+				rhses.add(automaton.getRHS(i));
+			}
+		}
+		return rhses;
+	}
+
+	/**
+	 * The RHSes of every state for a category class must be those of the
+	 * state that apply to the class, and walking for a class must only stop
+	 * early on words that no rule of the class can match.
+	 */
+	public void testCategoryPartition() throws Exception {
+		Interpret dfa = new Interpret();
+		dfa.init(rulesURL);
+		assertTrue(dfa.determinize(Interpret.DEFAULT_MAX_DFA_STATES, true));
+		MorphAutomaton automaton = dfa.getAutomaton();
+		int[] classes = { Interpret.ANY_CATEGORY, Interpret.VERB_CATEGORY,
+				Interpret.NOUN_CATEGORY };
+		for (int state = 0; state < automaton.getStateCount(); state++) {
+			for (int c : classes) {
+				List<RHS> expected = new ArrayList<RHS>();
+				for (int i = automaton.getRHSStart(state); i < automaton
+						.getRHSEnd(state); i++) {
+					if (Interpret.appliesTo(automaton.getRHS(i), c)) {
+						expected.add(automaton.getRHS(i));
+					}
+				}
+				List<RHS> actual = new ArrayList<RHS>();
+				for (int i = automaton.getRHSStart(state, c); i < automaton
+						.getRHSEnd(state, c); i++) {
+					actual.add(automaton.getRHS(i));
+				}
+				assertEquals(expected, actual);
+			}
+		}
+		for (String word : words) {
+			int state = automaton.walk(word);
+			for (int c : classes) {
+				int partial = automaton.walk(word, c);
+				if (partial == MorphAutomaton.NO_STATE) {
+					assertTrue(word, state == MorphAutomaton.NO_STATE
+							|| automaton.getRHSStart(state, c) == automaton
+									.getRHSEnd(state, c));
+				} else {
+					assertEquals(word, state, partial);
+				}
+			}
+		}
+	}
+
+	public static Test suite() {
+		return new TestSuite(TestMorphAutomaton.class);
+	}
+}
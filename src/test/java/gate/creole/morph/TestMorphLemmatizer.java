@@ -0,0 +1,58 @@
+package gate.creole.morph;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the command line {@link MorphLemmatizer}.
+ */
+public class TestMorphLemmatizer extends MorphTestCase {
+
+	/**
+	 * The command line lemmatizer must write the lines in the order they are
+	 * read, whatever the batches and the threads.
+	 */
+	public void testLemmatizer() throws Exception {
+		Interpret interpret = MorphLemmatizer.loadRules(rulesURL);
+		StringBuilder input = new StringBuilder();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < words.size(); i++) {
+			String word = words.get(i);
+			String category = CATEGORIES[i % CATEGORIES.length];
+			input.append(word).append('\t').append(category).append('\n');
+			String root = reference.runMorpher(word, category);
+			String affix = reference.getAffix();
+			expected.append(word).append('\t').append(category).append('\t')
+					.append(root).append('\t').append(affix == null ? "" : affix)
+					.append('\n');
+			if (i % 100 == 0) {
+				// a blank line is copied, a word without POS is of any category
+				input.append("\n").append(word).append('\n');
+				root = reference.runMorpher(word, "*");
+				affix = reference.getAffix();
+				expected.append("\n").append(word).append("\t\t").append(root)
+						.append('\t').append(affix == null ? "" : affix)
+						.append('\n');
+			}
+		}
+
+		MorphLemmatizer lemmatizer = new MorphLemmatizer(interpret, false, 3, 7);
+		StringWriter output = new StringWriter();
+		lemmatizer.run(new BufferedReader(new StringReader(input.toString())),
+				output);
+		assertEquals(expected.toString(), output.toString());
+		assertEquals(expected.toString().split("\n", -1).length - 1,
+				lemmatizer.getLines());
+		assertTrue(lemmatizer.getFound() > 0);
+		assertTrue(lemmatizer.getMaxLatencyMillis() >= lemmatizer
+				.getAverageLatencyMillis());
+	}
+
+	public static Test suite() {
+		return new TestSuite(TestMorphLemmatizer.class);
+	}
+}
@@ -0,0 +1,91 @@
+package gate.creole.morph;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the {@link MorphLexicon} looked up before the rules.
+ */
+public class TestMorphLexicon extends MorphTestCase {
+
+	/**
+	 * The forms of the word lists must be answered by the lexicon, for their
+	 * category only, with the affixes of the rules, and the other words by
+	 * the rules.
+	 */
+	public void testLexicon() throws Exception {
+		MorphLexicon lexicon = new MorphLexicon(this.getClass().getResource(
+				"/resources/morph/"));
+		Interpret interpret = new Interpret();
+		interpret.init(rulesURL);
+		assertTrue(interpret.determinize());
+		assertFalse(lexicon.isLoaded());
+		interpret.setLexicon(lexicon);
+		assertTrue(lexicon.isLoaded());
+
+		MorphResult result = new MorphResult();
+		MorphResult rule = new MorphResult();
+		// no rule applies to this form, found with its lemma alone
+		assertFalse(reference.analyse("airier", "*", rule));
+		assertTrue(interpret.analyse("airier", "*", result));
+		assertEquals("airy", result.getRoot());
+		assertNull(result.getAffix());
+		assertEquals(-1, result.getPatternIndex());
+		assertTrue(result.isFromLexicon());
+		assertTrue(result.isFound());
+		assertFalse(rule.isFromLexicon());
+		assertTrue(lexicon.size() > 5000);
+
+		assertTrue(interpret.analyse("abetted", "VBD", result));
+		assertEquals("abet+ed", result.toString());
+		assertTrue(interpret.analyse("leaves", "VBZ", result));
+		assertEquals("leave+s", result.toString());
+		assertTrue(interpret.analyse("leaves", "NNS", result));
+		assertEquals("leaf+s", result.toString());
+		// the irregular forms get the affix of the rules, not one guessed
+		assertTrue(reference.analyse("was", "VBD", rule));
+		assertTrue(interpret.analyse("was", "VBD", result));
+		assertEquals("be+" + rule.getAffix(), result.toString());
+		// adjectives are only known to the words of any category
+		assertEquals(reference.runMorpher("airier", "NN"),
+				interpret.runMorpher("airier", "NN"));
+		assertTrue(interpret.analyseIgnoringCase("Abetted", "VBD", result));
+		assertEquals("abet", result.getRoot());
+
+		// the duplicates share the lexicon, unknown words go to the rules
+		Interpret duplicate = new Interpret();
+		duplicate.init(interpret);
+		assertSame(lexicon, duplicate.getLexicon());
+		for (String word : words) {
+			for (String category : CATEGORIES) {
+				String lemma = lexicon.getLemma(word, category);
+				duplicate.analyse(word, category, result);
+				reference.analyse(word, category, rule);
+				assertEquals(word + " " + category,
+						lemma == null ? rule.getRoot() : lemma, result.getRoot());
+				assertEquals(word + " " + category, rule.getAffix(), result
+						.getAffix());
+				assertEquals(word + " " + category, rule.getPatternIndex(),
+						result.getPatternIndex());
+				assertEquals(word + " " + category, lemma != null, result
+						.isFromLexicon());
+			}
+		}
+
+		MorphLexicon missing = new MorphLexicon(new File("no such directory")
+				.toURI().toURL());
+		try {
+			missing.load();
+			fail("no word list to read");
+		} catch (IOException e) {
+			assertFalse(missing.isLoaded());
+		}
+	}
+
+	public static Test suite() {
+		return new TestSuite(TestMorphLexicon.class);
+	}
+}
@@ -0,0 +1,81 @@
+package gate.creole.morph;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the matchers written by {@link MorphMatcherGenerator}.
+ */
+public class TestMorphMatcherGenerator extends MorphTestCase {
+
+	/**
+	 * A generated matcher must give the same results as the rules it was
+	 * generated from.
+	 */
+	public void testGeneratedMatcher() throws Exception {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			// running on a JRE
+			return;
+		}
+		Interpret interpret = new Interpret();
+		interpret.init(rulesURL);
+		assertTrue(interpret.determinize(Interpret.DEFAULT_MAX_DFA_STATES, true));
+
+		File dir = tempDir();
+		File source = new File(dir, "DefaultMatcher.java");
+		Writer out = new OutputStreamWriter(new FileOutputStream(source), "UTF-8");
+		try {
+			MorphMatcherGenerator.generate(interpret,
+					"gate.creole.morph.generated.DefaultMatcher",
+					MorphSnapshot.sourceHash(rulesURL), out);
+		} finally {
+			out.close();
+		}
+		assertEquals(0, compiler.run(null, null, null, "-nowarn", "-encoding",
+				"UTF-8", "-cp", System.getProperty("java.class.path"), "-d",
+				dir.getPath(), source.getPath()));
+		URLClassLoader loader = new URLClassLoader(new URL[] { dir.toURI()
+				.toURL() }, getClass().getClassLoader());
+		MorphMatcher matcher = (MorphMatcher) loader.loadClass(
+				"gate.creole.morph.generated.DefaultMatcher")
+				.getDeclaredConstructor().newInstance();
+		assertTrue(matcher.isGeneratedFrom(rulesURL));
+
+		MorphResult expected = new MorphResult();
+		MorphResult result = new MorphResult();
+		for (String word : words) {
+			String upperCase = word.toUpperCase();
+			for (String category : CATEGORIES) {
+				assertEquals(interpret.analyse(word, category, expected), matcher
+						.analyse(word, category, result));
+				assertSameResult(word, expected, result);
+				assertEquals(interpret.analyseIgnoringCase(upperCase, category,
+						expected), matcher.analyseIgnoringCase(upperCase, category,
+						result));
+				assertSameResult(upperCase, expected, result);
+			}
+		}
+	}
+
+	private static void assertSameResult(String word, MorphResult expected,
+			MorphResult result) {
+		assertEquals(word, expected.getRoot(), result.getRoot());
+		assertEquals(word, expected.getAffix(), result.getAffix());
+		assertEquals(word, expected.getPatternIndex(), result.getPatternIndex());
+	}
+
+	public static Test suite() {
+		return new TestSuite(TestMorphMatcherGenerator.class);
+	}
+}
@@ -0,0 +1,71 @@
+package gate.creole.morph;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.ObjectName;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the {@link MorphProfiler}.
+ */
+public class TestMorphProfiler extends MorphTestCase {
+
+	/**
+	 * The profiler must count every word analysed and the rule applied to it.
+	 */
+	public void testProfiler() throws Exception {
+		Interpret dfa = new Interpret();
+		dfa.init(rulesURL);
+		assertTrue(dfa.determinize());
+		MorphProfiler profiler = new MorphProfiler(dfa.rules.size());
+		dfa.setProfiler(profiler);
+
+		MorphResult result = new MorphResult();
+		long[] expectedHits = new long[dfa.rules.size()];
+		int withoutRule = 0;
+		for (String word : words) {
+			if (dfa.analyse(word, "VB", result)) {
+				expectedHits[result.getPatternIndex()]++;
+			} else {
+				withoutRule++;
+			}
+		}
+		profiler.recordDocument(words.size(), 1000000000L);
+
+		assertEquals(words.size(), profiler.getWords());
+		assertEquals(withoutRule, profiler.getWordsWithoutRule());
+		assertTrue(Arrays.equals(expectedHits, profiler.getRuleHits()));
+		long histogramTotal = 0;
+		for (long count : profiler.getCandidateHistogram()) {
+			histogramTotal += count;
+		}
+		assertEquals(words.size(), histogramTotal);
+		assertEquals(1, profiler.getDocuments());
+		assertEquals(words.size(), profiler.getWordsPerSecond(), 1e-6);
+		assertTrue(profiler.getTraversalMillis() > 0);
+		assertTrue(profiler.dump().startsWith(words.size() + " words, "));
+
+		profiler.register("TestMorphProfiler");
+		try {
+			assertEquals(Long.valueOf(words.size()), ManagementFactory
+					.getPlatformMBeanServer().getAttribute(
+							new ObjectName("gate.creole.morph:type=MorphProfiler,"
+									+ "name=\"TestMorphProfiler\""), "Words"));
+		} finally {
+			profiler.unregister();
+		}
+
+		profiler.reset();
+		assertEquals(0, profiler.getWords());
+		dfa.setProfiler(null);
+		dfa.analyse("walked", "VB", result);
+		assertEquals(0, profiler.getWords());
+	}
+
+	public static Test suite() {
+		return new TestSuite(TestMorphProfiler.class);
+	}
+}
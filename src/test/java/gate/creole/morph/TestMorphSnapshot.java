@@ -0,0 +1,59 @@
+package gate.creole.morph;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the {@link MorphSnapshot}s of the compiled rules.
+ */
+public class TestMorphSnapshot extends MorphTestCase {
+
+	/**
+	 * A snapshot must give the same results as the rules it was written from,
+	 * and must be ignored once the rules have changed.
+	 */
+	public void testSnapshot() throws Exception {
+		File rules = copyRules();
+		File snapshot = new File(tempDir(), "default.rul" + MorphSnapshot.SUFFIX);
+		URL url = rules.toURI().toURL();
+
+		Interpret loaded = new Interpret();
+		assertFalse(loaded.initFromSnapshot(url));
+
+		Interpret dfa = new Interpret();
+		dfa.init(url);
+		assertTrue(dfa.determinize());
+		dfa.saveSnapshot(url, snapshot);
+
+		assertTrue(loaded.initFromSnapshot(url));
+		assertTrue(loaded.isDeterministic());
+		assertEquals(dfa.getAutomaton().getStateCount(), loaded.getAutomaton()
+				.getStateCount());
+		assertEquivalent(loaded);
+
+		// a stale snapshot is ignored
+		append(rules, "\n// changed\n");
+		assertFalse(new Interpret().initFromSnapshot(url));
+
+		// a truncated one is an error
+		dfa.saveSnapshot(url, snapshot);
+		RandomAccessFile file = new RandomAccessFile(snapshot, "rw");
+		file.setLength(file.length() / 2);
+		file.close();
+		try {
+			new Interpret().initFromSnapshot(url);
+			fail("truncated snapshot loaded");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public static Test suite() {
+		return new TestSuite(TestMorphSnapshot.class);
+	}
+}
@@ -0,0 +1,110 @@
+package gate.creole.morph;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the parsing of the rule files and of their character variables.
+ */
+public class TestRuleParser extends MorphTestCase {
+
+	/**
+	 * The character variables must hold the same characters whatever the
+	 * width of their ranges.
+	 */
+	public void testCharacterVariables() throws Exception {
+		CharacterRange range = new CharacterRange();
+		assertTrue(range.set("A", "[-a-zA-Z\u00e0-\u00ff\u0100-\uffff]"));
+		assertEquals("[A-Za-z\u00e0-\uffff]", range.getCharacters().toString());
+		assertEquals(52 + 32 + 0xff00, range.getCharacters().size());
+		assertTrue(range.contains("Zo\u00ebl\u4e00"));
+		assertFalse(range.contains("a-b"));
+		StringBuilder members = new StringBuilder();
+		while (range.hasNext()) {
+			members.append(range.next());
+		}
+		range.resetPointer();
+		assertEquals(range.getCharacters().size(), members.length());
+		assertEquals('A', members.charAt(0));
+		assertEquals('\uffff', members.charAt(members.length() - 1));
+		assertTrue(range.hasNext());
+
+		CharacterSet set = new CharacterSet();
+		assertTrue(set.set("V", "[uoiea\u0101]"));
+		assertEquals("[aeiou\u0101]", set.getCharacters().toString());
+		assertTrue(set.contains("aeu\u0101"));
+		assertFalse(set.contains("b"));
+		assertFalse(set.contains("\u0100"));
+		assertEquals("a", set.next());
+		assertEquals("e", set.next());
+
+		assertEquals(CharBitmap.of("abc"), CharBitmap.ofRanges(new char[] {
+				'c', 'a' }, new char[] { 'a', 'b' }, 2));
+		assertEquals(-1, CharBitmap.of("a").nextMember('b'));
+	}
+
+	/**
+	 * Malformed rules must be reported with the line and the column of the
+	 * problem.
+	 */
+	public void testRuleSyntaxErrors() throws Exception {
+		assertSyntaxError("<noun>\"ab  ==> null_stem()", 5, 7);
+		assertSyntaxError("  <*>(ab  ==> null_stem()", 5, 6);
+		assertSyntaxError("<*>ab)  ==> null_stem()", 5, 6);
+		assertSyntaxError("<*>*ab  ==> null_stem()", 5, 4);
+		assertSyntaxError("<*>a[]b  ==> null_stem()", 5, 5);
+	}
+
+	private void assertSyntaxError(String rule, int line, int column)
+			throws Exception {
+		File rules = writeRule(rule);
+		try {
+			new Interpret().init(rules.toURI().toURL());
+			fail("no error for " + rule);
+		} catch (RuleSyntaxException e) {
+			assertEquals(rule, line, e.getLine());
+			assertEquals(rule, column, e.getColumn());
+		}
+	}
+
+	/**
+	 * The text the rules accepted when they were run as regular expressions
+	 * must still load, undefined variables and regular expression characters
+	 * being matched as they are written.
+	 */
+	public void testLenientRules() throws Exception {
+		assertLiteralRule("<verb>abc{UNDEFINED}  ==> null_stem()", "abcUNDEFINED",
+				"abcd");
+		assertLiteralRule("<*>a.b  ==> null_stem()", "a.b", "axb");
+		assertLiteralRule("<*>^ab$  ==> null_stem()", "^ab$", "ab");
+		assertLiteralRule("<*>a\\b}  ==> null_stem()", "a\\b}", "ab}");
+		assertLiteralRule("<*>a[^b]  ==> null_stem()", "a^", "ac");
+	}
+
+	private void assertLiteralRule(String rule, String word, String other)
+			throws Exception {
+		Interpret interpret = new Interpret();
+		interpret.init(writeRule(rule).toURI().toURL());
+		MorphResult result = new MorphResult();
+		assertTrue(rule, interpret.analyse(word, "VB", result));
+		assertFalse(rule, interpret.analyse(other, "VB", result));
+		assertTrue(rule, interpret.determinize());
+		assertTrue(rule, interpret.analyse(word, "VB", result));
+		assertFalse(rule, interpret.analyse(other, "VB", result));
+	}
+
+	/**
+	 * @return a rule file declaring the variable A and the given rule on its
+	 *         fifth line
+	 */
+	private File writeRule(String rule) throws IOException {
+		return writeRules("defineVars\nA ==> [a-z]\n\ndefineRules\n" + rule + "\n");
+	}
+
+	public static Test suite() {
+		return new TestSuite(TestRuleParser.class);
+	}
+}
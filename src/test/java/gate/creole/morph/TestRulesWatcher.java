@@ -0,0 +1,62 @@
+package gate.creole.morph;
+
+import java.io.File;
+import java.net.URL;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the {@link RulesWatcher} reloading changed rules.
+ */
+public class TestRulesWatcher extends MorphTestCase {
+
+	/**
+	 * A watcher must publish the new rules once the rule file changes, and
+	 * keep the previous ones if the new rules cannot be loaded.
+	 */
+	public void testRulesWatcher() throws Exception {
+		File rules = copyRules();
+		URL url = rules.toURI().toURL();
+		Interpret loaded = new Interpret();
+		loaded.init(url);
+		assertTrue(loaded.determinize());
+		loaded.setCacheSize(100);
+		RulesWatcher watcher = new RulesWatcher(url, loaded, true, false, 60000);
+		try {
+			assertFalse(watcher.check());
+			assertSame(loaded, watcher.getInterpret());
+
+			append(rules, "\n<*>zzyzx  ==> irreg_stem(\"zyx\",\"s\")\n");
+			assertTrue(watcher.check());
+			assertEquals(1, watcher.getReloadCount());
+			assertNull(watcher.getLastError());
+			Interpret reloaded = watcher.getInterpret();
+			assertNotSame(loaded, reloaded);
+			assertEquals("zyx", reloaded.runMorpher("zzyzx", "*"));
+			assertEquals("zzyzx", loaded.runMorpher("zzyzx", "*"));
+
+			// the users of the watcher share one new cache
+			LemmaCache cache = reloaded.getLemmaCache();
+			assertNotNull(cache);
+			assertNotSame(loaded.getLemmaCache(), cache);
+			assertEquals(100, cache.getCapacity());
+			Interpret duplicate = new Interpret();
+			duplicate.init(watcher.getInterpret());
+			assertSame(cache, duplicate.getLemmaCache());
+
+			append(rules, "\n<*>\"unterminated  ==> null_stem()\n");
+			assertFalse(watcher.check());
+			assertTrue(watcher.getLastError() instanceof RuleSyntaxException);
+			assertSame(reloaded, watcher.getInterpret());
+			// the same content is not loaded again
+			assertFalse(watcher.check());
+		} finally {
+			watcher.release();
+		}
+	}
+
+	public static Test suite() {
+		return new TestSuite(TestRulesWatcher.class);
+	}
+}
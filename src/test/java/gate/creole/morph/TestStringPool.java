@@ -0,0 +1,54 @@
+package gate.creole.morph;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the {@link StringPool} of the roots.
+ */
+public class TestStringPool extends MorphTestCase {
+
+	/**
+	 * The roots of different words must come out of the pool as one string,
+	 * and the pool must not grow beyond its capacity.
+	 */
+	public void testStringPool() throws Exception {
+		Interpret dfa = new Interpret();
+		dfa.init(rulesURL);
+		assertTrue(dfa.determinize());
+		MorphResult result = new MorphResult();
+		assertTrue(dfa.analyse("walked", "VBD", result));
+		String walked = result.getRoot();
+		assertTrue(dfa.analyse("walking", "VBG", result));
+		String walking = result.getRoot();
+		assertEquals(walked, walking);
+		assertNotSame(walked, walking);
+
+		StringPool pool = new StringPool(100);
+		assertEquals(128, pool.getCapacity());
+		assertSame(walked, pool.canonicalize(walked));
+		assertSame(walked, pool.canonicalize(walking));
+		assertNull(pool.canonicalize(null));
+		assertEquals(1, pool.getHits());
+		assertEquals(1, pool.getMisses());
+		assertEquals(1, pool.size());
+
+		// the affixes are already the constants of the rules
+		assertTrue(dfa.analyse("jumped", "VBD", result));
+		String affix = result.getAffix();
+		assertTrue(dfa.analyse("walked", "VBD", result));
+		assertSame(affix, result.getAffix());
+
+		for (String word : words) {
+			pool.canonicalize(word);
+		}
+		assertTrue(pool.size() <= pool.getCapacity());
+		pool.clear();
+		assertEquals(0, pool.size());
+		assertEquals(0, pool.getHits());
+	}
+
+	public static Test suite() {
+		return new TestSuite(TestStringPool.class);
+	}
+}